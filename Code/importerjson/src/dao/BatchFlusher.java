@@ -0,0 +1,210 @@
+/**
+ * Background execution of batches on a separate connection.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An object that writes batches of a batched statement in a background thread
+ * using its own database connection, such that the importer can fill the next
+ * batch in the meantime. Batches are written in the order they are submitted.
+ * The number of batches that are submitted but not yet written is bounded,
+ * so that submitting a batch blocks while the database falls behind.
+ * Errors that occur while writing a batch are thrown on the thread of the
+ * importer when it submits another batch, waits for the batches to be written
+ * or closes the flusher.
+ * @author Leon Helwerda
+ */
+class BatchFlusher implements AutoCloseable {
+    /**
+     * A batch of records that is written to the database.
+     */
+    interface Batch {
+        /**
+         * Write the batch to the database.
+         * @param con The connection of the flusher
+         * @throws SQLException If a database access error occurs
+         */
+        void write(Connection con) throws SQLException;
+    }
+
+    private final Callable<Connection> source;
+    private final int maxBatches;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private Connection con = null;
+    private volatile SQLException error = null;
+
+    /**
+     * Create a flusher which uses a connection from the data source.
+     */
+    BatchFlusher() {
+        this(() -> DataSource.getInstance().getFlusherConnection());
+    }
+
+    /**
+     * Create a flusher which uses a connection from a provider.
+     * The number of batches in flight is configured by the
+     * "importer.async_batches" property.
+     * @param source Provider of the connection that the flusher uses
+     */
+    BatchFlusher(Callable<Connection> source) {
+        this(source, Integer.getInteger("importer.async_batches", 2));
+    }
+
+    /**
+     * Create a new flusher with the same connection provider and limit as
+     * another, possibly closed, flusher.
+     * @param other The flusher to copy the configuration from
+     */
+    BatchFlusher(BatchFlusher other) {
+        this(other.source, other.maxBatches);
+    }
+
+    /**
+     * Create a flusher which uses a connection from a provider.
+     * @param source Provider of the connection that the flusher uses
+     * @param maxBatches The number of batches that may be submitted while
+     * they are not yet written
+     */
+    BatchFlusher(Callable<Connection> source, int maxBatches) {
+        this.source = source;
+        this.maxBatches = Math.max(1, maxBatches);
+        this.permits = new Semaphore(this.maxBatches);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "batch-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void checkError() throws SQLException {
+        SQLException ex = error;
+        if (ex != null) {
+            error = null;
+            throw ex;
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        if (con == null) {
+            try {
+                con = source.call();
+            }
+            catch (SQLException ex) {
+                throw ex;
+            }
+            catch (Exception ex) {
+                throw new SQLException("Could not retrieve connection for flusher", ex);
+            }
+        }
+        return con;
+    }
+
+    /**
+     * Submit a batch to be written in the background. This blocks while the
+     * maximum number of batches is in flight.
+     * @param batch The batch to write
+     * @throws SQLException If an earlier batch could not be written, or the
+     * flusher is interrupted while waiting
+     */
+    void submit(Batch batch) throws SQLException {
+        checkError();
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for batch flusher", ex);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (error == null) {
+                        batch.write(getConnection());
+                    }
+                }
+                catch (SQLException ex) {
+                    error = ex;
+                }
+                catch (RuntimeException ex) {
+                    error = new SQLException("Unexpected error in batch flusher", ex);
+                }
+                finally {
+                    permits.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException ex) {
+            permits.release();
+            throw new SQLException("Batch flusher is closed", ex);
+        }
+    }
+
+    /**
+     * Wait until all submitted batches are written.
+     * @throws SQLException If a batch could not be written, or the flusher is
+     * interrupted while waiting
+     */
+    void await() throws SQLException {
+        try {
+            permits.acquire(maxBatches);
+            permits.release(maxBatches);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for batch flusher", ex);
+        }
+        checkError();
+    }
+
+    /**
+     * Wait for all submitted batches to be written, then stop the background
+     * thread and close the connection of the flusher.
+     * @throws SQLException If a batch could not be written or the connection
+     * could not be closed
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            await();
+        }
+        finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (con != null) {
+                con.close();
+                con = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Adaptive sizing of batches based on measured database performance.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.util.Collection;
+import java.util.Map;
+import util.ExportRecord;
+
+/**
+ * An object that determines the number of records to collect in a batch before
+ * it is sent to the database. The size adapts to the measured time that the
+ * database takes for each batch, such that the round-trip latency is amortized
+ * over enough records without making a single batch take too long. The size is
+ * also limited by the number of bytes that the records are estimated to take,
+ * so that batches of large records, such as commit messages or issue
+ * descriptions, remain small while those of tiny records can grow.
+ *
+ * The limits are configured with the "importer.batch_min", "importer.batch_max",
+ * "importer.batch_bytes" and "importer.batch_time" properties, the latter
+ * of which is the target time in milliseconds that a batch should take.
+ * The sizer can be updated from a background flusher thread.
+ * @author Leon Helwerda
+ */
+public class BatchSizer {
+    /**
+     * Initial number of records in a batch before any measurements are made.
+     */
+    public static final int DEFAULT_SIZE = 1000;
+    private static final int DEFAULT_MINIMUM = 50;
+    private static final int DEFAULT_MAXIMUM = 20000;
+    private static final long DEFAULT_BYTES = 8L * 1024 * 1024;
+    private static final long DEFAULT_TIME = 500;
+    /**
+     * Weight of a new measurement in the moving averages.
+     */
+    private static final double SMOOTHING = 0.3;
+    /**
+     * Maximum factor by which the size grows or shrinks after one batch.
+     */
+    private static final double MAX_FACTOR = 2.0;
+
+    private int minimum;
+    private int maximum;
+    private final long byteLimit;
+    private final long targetNanos;
+    private int size;
+
+    private double rowsPerNano = 0.0;
+    private double bytesPerRow = 0.0;
+    private long batches = 0;
+    private long totalRows = 0;
+    private long totalBytes = 0;
+    private long totalNanos = 0;
+
+    /**
+     * Create a batch sizer with the default initial size and configured limits.
+     */
+    public BatchSizer() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a batch sizer with an initial size and the configured limits.
+     * @param initial The number of records to use for the first batch
+     */
+    public BatchSizer(int initial) {
+        this(initial,
+            Integer.getInteger("importer.batch_min", DEFAULT_MINIMUM),
+            Integer.getInteger("importer.batch_max", DEFAULT_MAXIMUM),
+            Long.getLong("importer.batch_bytes", DEFAULT_BYTES),
+            Long.getLong("importer.batch_time", DEFAULT_TIME)
+        );
+    }
+
+    /**
+     * Create a batch sizer with explicit limits.
+     * @param initial The number of records to use for the first batch
+     * @param minimum The minimum number of records in a batch
+     * @param maximum The maximum number of records in a batch
+     * @param byteLimit The estimated number of bytes after which a batch is
+     * full, or 0 to not limit on the size of the records
+     * @param targetMillis The number of milliseconds that a batch should take
+     */
+    public BatchSizer(int initial, int minimum, int maximum, long byteLimit, long targetMillis) {
+        this.minimum = Math.max(1, minimum);
+        this.maximum = Math.max(this.minimum, maximum);
+        this.byteLimit = byteLimit;
+        this.targetNanos = targetMillis * 1000000L;
+        this.size = clamp(initial);
+    }
+
+    private int clamp(double value) {
+        return (int)Math.max(minimum, Math.min(maximum, value));
+    }
+
+    /**
+     * Retrieve the current number of records that a batch may contain.
+     * @return The batch size
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Fix the number of records in a batch, disabling the adaptive sizing.
+     * The byte limit still applies.
+     * @param size The batch size
+     */
+    public synchronized void setSize(int size) {
+        this.minimum = Math.max(1, size);
+        this.maximum = this.minimum;
+        this.size = this.minimum;
+    }
+
+    /**
+     * Check whether a batch should be sent to the database.
+     * @param count The number of records in the batch
+     * @param bytes The estimated size of the records in the batch in bytes
+     * @return Whether the batch is full
+     */
+    public synchronized boolean isFull(int count, long bytes) {
+        return count >= size || (byteLimit > 0 && bytes >= byteLimit);
+    }
+
+    /**
+     * Register the measurements of a batch that has been sent to the database
+     * and adapt the batch size accordingly. Only batches that were full are
+     * used to change the size, since the final partial batch of an import does
+     * not tell much about the throughput.
+     * @param count The number of records in the batch
+     * @param bytes The estimated size of the records in the batch in bytes,
+     * or 0 if this is unknown
+     * @param nanos The elapsed time of the round trip in nanoseconds
+     */
+    public synchronized void update(int count, long bytes, long nanos) {
+        if (count <= 0) {
+            return;
+        }
+        batches++;
+        totalRows += count;
+        totalBytes += bytes;
+        totalNanos += nanos;
+
+        if (bytes > 0) {
+            double rowBytes = (double)bytes / count;
+            bytesPerRow = bytesPerRow == 0.0 ? rowBytes : SMOOTHING * rowBytes + (1 - SMOOTHING) * bytesPerRow;
+        }
+        if (!isFull(count, bytes)) {
+            return;
+        }
+
+        double rate = (double)count / Math.max(nanos, 1);
+        rowsPerNano = rowsPerNano == 0.0 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * rowsPerNano;
+
+        double target = rowsPerNano * targetNanos;
+        target = Math.min(target, size * MAX_FACTOR);
+        target = Math.max(target, size / MAX_FACTOR);
+        if (byteLimit > 0 && bytesPerRow > 0.0) {
+            target = Math.min(target, byteLimit / bytesPerRow);
+        }
+        size = clamp(target);
+    }
+
+    /**
+     * Retrieve the number of records that the database processed per second
+     * on average in the batches so far.
+     * @return The throughput in rows per second
+     */
+    public synchronized double getRowsPerSecond() {
+        return totalNanos == 0 ? 0.0 : totalRows * 1e9 / totalNanos;
+    }
+
+    /**
+     * Retrieve the estimated average size of the records.
+     * @return The size in bytes per record, or 0 if this is unknown
+     */
+    public synchronized double getBytesPerRow() {
+        return bytesPerRow;
+    }
+
+    /**
+     * Retrieve the number of batches that were measured.
+     * @return The number of batches
+     */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Estimate the number of bytes that a value takes when it is sent to the
+     * database. Strings count their number of characters, maps, collections
+     * and arrays count their elements, and other values count as a fixed size.
+     * @param value The value to estimate, possibly null
+     * @return The estimated size in bytes
+     */
+    public static long estimate(Object value) {
+        if (value == null) {
+            return 1;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence)value).length() + 2;
+        }
+        if (value instanceof ExportRecord) {
+            return ((ExportRecord)value).estimateSize();
+        }
+        if (value instanceof Map) {
+            long bytes = 0;
+            for (Object item : ((Map<?, ?>)value).values()) {
+                bytes += estimate(item);
+            }
+            return bytes;
+        }
+        if (value instanceof Collection) {
+            long bytes = 0;
+            for (Object item : (Collection<?>)value) {
+                bytes += estimate(item);
+            }
+            return bytes;
+        }
+        if (value instanceof Object[]) {
+            long bytes = 0;
+            for (Object item : (Object[])value) {
+                bytes += estimate(item);
+            }
+            return bytes;
+        }
+        return 8;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d batches, size %d, %.0f rows/s, %.0f bytes/row",
+                batches, size, getRowsPerSecond(), bytesPerRow);
+    }
+}
@@ -24,12 +24,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +42,17 @@ import java.util.logging.Logger;
  * and in cases where large tables may take a lot of overhead for checking
  * existence before executing a batch. This ensures that the insert batch itself
  * can still add new rows even if existing rows appear in the input data.
+ * 
+ * The existence check loads the key tuples of a batch into a temporary table
+ * of the session and joins it with the table, such that the same prepared
+ * queries are reused for every batch. If the temporary table cannot be created,
+ * then the check falls back to a query with a condition for each key tuple.
+ * 
+ * For tables selected by the "importer.key_index_tables" property, the key
+ * tuples that exist in the table can be preloaded into an index before the
+ * import starts. Key tuples that the index proves to be absent are inserted
+ * without an existence check, and those that it proves to be present are
+ * handled as existing rows without an existence check.
  * @author Leon Helwerda
  */
 public abstract class BatchedCheckStatement implements AutoCloseable {
@@ -60,12 +72,36 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
      * The field types of the keys that are retrieved.
      */
     protected final int[] types;
-    private int batchSize;
+    /**
+     * The factory of key tuples for the types of the keys.
+     */
+    protected final Key.Factory keyFactory;
+    private static final AtomicInteger CHECK_TABLES = new AtomicInteger();
+    private final BatchSizer sizer;
+    private boolean setBased = true;
+    private String checkTable = null;
+    private PreparedStatement clearStmt = null;
+    private PreparedStatement fillStmt = null;
+    private PreparedStatement selectStmt = null;
+    private KeyIndex keyIndex = null;
+    /**
+     * Estimated number of bytes of the key values and data in the check batch.
+     */
+    private long checkBytes = 0;
+    /**
+     * Number of rows that were inserted.
+     */
+    private long inserted = 0;
     /**
      * A map of values of key fields to check for existing rows, and data fields
      * to insert in case the row is new.
      */
-    protected Map<List<Object>, Object> checkValues;
+    protected final KeyMap<Object> checkValues = new KeyMap<>();
+    /**
+     * A map of values of key fields that the key index proves to be absent
+     * from the table, and data fields to insert.
+     */
+    private final KeyMap<Object> newValues = new KeyMap<>();
     
     private static int[] makeDefaultTypes(int length) {
         int[] types = new int[length];
@@ -91,12 +127,24 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
      * @param types An array of SQL types of the keys.
      */
     public BatchedCheckStatement(String table, String insertSql, String[] keys, int[] types) {
-        this.insertStmt = new BatchedStatement(insertSql);
+        this(table, new BatchedStatement(insertSql), keys, types);
+    }
+    
+    /**
+     * Create a batched checked statement with a provided insert statement,
+     * for example a bulk load statement.
+     * @param table The fully qualified table name where the checks are applied to (with scheme).
+     * @param insertStmt The batched statement for inserting rows.
+     * @param keys An array of key names to request for checking unique and existing rows.
+     * @param types An array of SQL types of the keys.
+     */
+    public BatchedCheckStatement(String table, BatchedStatement insertStmt, String[] keys, int[] types) {
+        this.insertStmt = insertStmt;
         this.table = table;
         this.keys = Arrays.copyOf(keys, keys.length);
         this.types = types;
-        batchSize = this.insertStmt.getMaxBatchSize();
-        checkValues = new HashMap<>();
+        keyFactory = Key.forTypes(types);
+        sizer = new BatchSizer(this.insertStmt.getMaxBatchSize());
     }
     
     /**
@@ -108,12 +156,63 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
      * @throws PropertyVetoException If the database connection cannot be configured
      */
     public void batch(Object[] values, Object data) throws SQLException, PropertyVetoException {
-        checkValues.put(Collections.unmodifiableList(Arrays.asList(values)), data);
-        if (checkValues.size() >= batchSize) {
-            execute();
+        Key key = keyFactory.of(values);
+        KeyIndex.Result result = keyIndex == null ? KeyIndex.Result.UNKNOWN : keyIndex.check(key);
+        if (result == KeyIndex.Result.ABSENT) {
+            newValues.put(key, data);
+        }
+        else {
+            checkValues.put(key, data);
+            if (result == KeyIndex.Result.PRESENT) {
+                markExisting(key);
+            }
+        }
+        checkBytes += BatchSizer.estimate(values) + BatchSizer.estimate(data);
+        if (sizer.isFull(getPendingCount(), checkBytes)) {
+            perform(false);
         }
     }
     
+    /**
+     * Retrieve the number of key tuples that are batched for the next
+     * execution of the queries.
+     * @return The number of pending key tuples
+     */
+    protected int getPendingCount() {
+        return checkValues.size() + newValues.size();
+    }
+    
+    /**
+     * Load the key tuples that exist in the table into an index, if the table
+     * is selected by the "importer.key_index_tables" property. Batched key
+     * tuples are then looked up in the index before an existence check is
+     * performed for them. This should be called before any tuples are batched,
+     * typically with a condition that limits the index to the rows of the
+     * current project.
+     * @param condition The condition that the rows must match, which may
+     * contain parameters, or null to load all rows of the table
+     * @param parameters The values of the parameters in the condition
+     * @throws SQLException If a database access error occurs
+     * @throws PropertyVetoException If the database connection cannot be configured
+     */
+    public void preloadKeys(String condition, Object... parameters) throws SQLException, PropertyVetoException {
+        if (!BatchedStatement.isSelected("importer.key_index_tables", table)) {
+            return;
+        }
+        long start = System.nanoTime();
+        keyIndex = KeyIndex.load(insertStmt.getConnection(), table, keys, keyFactory, condition, parameters);
+        Logger.getLogger("importer").log(Level.FINE, "Preloaded {0} keys of {1} in {2} ms",
+                new Object[]{keyIndex.getSize(), table, (System.nanoTime() - start) / 1000000});
+    }
+    
+    /**
+     * Retrieve the index of key tuples that exist in the table.
+     * @return The key index, or null if the key tuples are not preloaded
+     */
+    public KeyIndex getKeyIndex() {
+        return keyIndex;
+    }
+    
     /**
      * Add a tuple with its associated data to the insert batch.
      * @param values The tuple of key values that belong to the data and do not
@@ -127,6 +226,84 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
      */
     protected abstract void addToBatch(Object[] values, Object data, PreparedStatement pstmt) throws SQLException, PropertyVetoException;
     
+    private boolean prepareCheckTable(Connection con) throws SQLException {
+        if (selectStmt != null) {
+            return true;
+        }
+        if (!setBased) {
+            return false;
+        }
+        
+        String name = "check_" + table.replaceAll("\\W", "_") + "_" + CHECK_TABLES.incrementAndGet();
+        String keyList = String.join(", ", keys);
+        Savepoint savepoint = con.getAutoCommit() ? null : con.setSavepoint();
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("create local temporary table " + name + " as select " + keyList + " from " + table + " with no data on commit preserve rows");
+        }
+        catch (SQLException ex) {
+            Logger.getLogger("importer").log(Level.WARNING, "Cannot create temporary table for checking {0}, falling back to conditional queries: {1}", new Object[]{table, ex.getMessage()});
+            setBased = false;
+            if (savepoint != null) {
+                con.rollback(savepoint);
+            }
+            return false;
+        }
+        if (savepoint != null) {
+            con.releaseSavepoint(savepoint);
+        }
+        checkTable = "tmp." + name;
+        
+        List<String> joinClauses = new ArrayList<>(keys.length);
+        List<String> selectFields = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            joinClauses.add("t." + key + " = c." + key);
+            selectFields.add("t." + key);
+        }
+        for (String field : getFetchFields()) {
+            selectFields.add("t." + field);
+        }
+        String parameters = String.join(",", Collections.nCopies(keys.length, "?"));
+        clearStmt = con.prepareStatement("delete from " + checkTable);
+        fillStmt = con.prepareStatement("insert into " + checkTable + "(" + keyList + ") values (" + parameters + ")");
+        selectStmt = con.prepareStatement("select " + String.join(", ", selectFields) + " from " + table + " t join " + checkTable + " c on " + String.join(" and ", joinClauses));
+        return true;
+    }
+    
+    private void closeCheckTable() throws SQLException {
+        try {
+            if (checkTable != null) {
+                try (Statement stmt = insertStmt.getConnection().createStatement()) {
+                    stmt.execute("drop table " + checkTable);
+                }
+                catch (PropertyVetoException ex) {
+                    throw new SQLException("Could not configure connection", ex);
+                }
+            }
+        }
+        finally {
+            for (PreparedStatement pstmt : new PreparedStatement[]{clearStmt, fillStmt, selectStmt}) {
+                if (pstmt != null) {
+                    pstmt.close();
+                }
+            }
+            checkTable = null;
+            clearStmt = null;
+            fillStmt = null;
+            selectStmt = null;
+        }
+    }
+    
+    private void markFound(ResultSet rs) throws SQLException {
+        // Determine which key tuples already exist in the table and remove the found ones from the checkValues.
+        while (rs.next()) {
+            Key foundValues = keyFactory.read(rs, keys);
+            if (!checkValues.containsKey(foundValues)) {
+                Logger.getLogger("importer").log(Level.WARNING, "Received result key tuple that is not in the check batch: {0}", foundValues);
+            }
+            markExisting(foundValues, rs);
+        }
+    }
+    
     private String buildQuery() {
         List<String> keyClauses = new ArrayList<>(keys.length);
         for (String key : keys) {
@@ -134,8 +311,10 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
         }
         String clause = "(" + String.join(" and ", keyClauses) + ")";
         List<String> clauses = Collections.nCopies(checkValues.size(), clause);
+        List<String> selectFields = new ArrayList<>(Arrays.asList(keys));
+        selectFields.addAll(Arrays.asList(getFetchFields()));
         
-        return "select " + String.join(", ", keys) + " from " + table + " where (" + String.join(" or ", clauses) + ")";
+        return "select " + String.join(", ", selectFields) + " from " + table + " where (" + String.join(" or ", clauses) + ")";
     }
     
     /**
@@ -145,50 +324,93 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
      * @return Whether any value was inserted
      */
     public boolean execute() throws SQLException, PropertyVetoException {
-        if (checkValues.isEmpty()) {
+        return perform(true);
+    }
+    
+    /**
+     * Perform the batched existence and insertion queries.
+     * If the insert statement writes its batches asynchronously, then the
+     * existence query waits until the inserts of the earlier batch are done,
+     * so that rows from that batch are found.
+     * @param wait Whether to wait until the inserts are written, rather than
+     * letting an asynchronous insert statement write them in the background
+     * @throws SQLException If a database access error occurs
+     * @throws PropertyVetoException If the database connection cannot be configured
+     * @return Whether any value was inserted
+     */
+    protected boolean perform(boolean wait) throws SQLException, PropertyVetoException {
+        insertStmt.execute();
+        if (checkValues.isEmpty() && newValues.isEmpty()) {
             return false;
         }
         
-        String selectSql = buildQuery();
-        
+        long start = System.nanoTime();
+        int count = getPendingCount();
+        long bytes = checkBytes;
+        checkBytes = 0;
         Connection con = insertStmt.getConnection();
-        try (PreparedStatement selectStmt = con.prepareStatement(selectSql)) {
-            int index = 1;
-            for (List<Object> values : checkValues.keySet()) {
-                for (int i = 0; i < types.length; i++) {
-                    selectStmt.setObject(index, values.get(i), types[i]);
-                    index++;
+        // Check the key tuples that the key index cannot determine
+        if (!checkValues.isEmpty()) {
+            if (prepareCheckTable(con)) {
+                clearStmt.executeUpdate();
+                for (int slot = checkValues.next(-1); slot >= 0; slot = checkValues.next(slot)) {
+                    Key values = checkValues.keyAt(slot);
+                    for (int i = 0; i < types.length; i++) {
+                        fillStmt.setObject(i + 1, values.get(i), types[i]);
+                    }
+                    fillStmt.addBatch();
+                }
+                fillStmt.executeBatch();
+                fillStmt.clearBatch();
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    markFound(rs);
                 }
             }
-        
-            // Determine which key tuples already exist in the table and remove the found ones from the checkValues.
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                while (rs.next()) {
-                    List<Object> foundValues = new ArrayList<>(keys.length);
-                    for (String key : keys) {
-                        foundValues.add(rs.getObject(key));
+            else {
+                try (PreparedStatement orStmt = con.prepareStatement(buildQuery())) {
+                    int index = 1;
+                    for (int slot = checkValues.next(-1); slot >= 0; slot = checkValues.next(slot)) {
+                        Key values = checkValues.keyAt(slot);
+                        for (int i = 0; i < types.length; i++) {
+                            orStmt.setObject(index, values.get(i), types[i]);
+                            index++;
+                        }
                     }
-                    if (!checkValues.containsKey(foundValues)) {
-                        Logger.getLogger("importer").log(Level.WARNING, "Received result key tuple that is not in the check batch: {0}", Arrays.toString(foundValues.toArray()));
+                    try (ResultSet rs = orStmt.executeQuery()) {
+                        markFound(rs);
                     }
-                    markExisting(foundValues);
                 }
             }
         }
         
+        if (keyIndex != null) {
+            keyIndex.countFalsePositives(checkValues.size());
+        }
+        checkValues.putAll(newValues);
+        newValues.clear();
+        
         // Insert the remaining values into the batch
         PreparedStatement pstmt = insertStmt.getPreparedStatement();
         Logger.getLogger("importer").log(Level.FINE, "Remaining key tuples to insert: {0}", checkValues.size());
         
-        for (HashMap.Entry<List<Object>, Object> entry : checkValues.entrySet()) {
-            List<Object> values = entry.getKey();
-            Object data = entry.getValue();
-            addToBatch(values.toArray(), data, pstmt);
+        for (int slot = checkValues.next(-1); slot >= 0; slot = checkValues.next(slot)) {
+            Key values = checkValues.keyAt(slot);
+            addToBatch(values.toArray(), checkValues.valueAt(slot), pstmt);
+            if (keyIndex != null) {
+                keyIndex.add(values);
+            }
         }
         
         boolean hasInserts = !checkValues.isEmpty();
+        inserted += checkValues.size();
         checkValues.clear();
-        insertStmt.execute();
+        if (wait) {
+            insertStmt.execute();
+        }
+        else {
+            insertStmt.flush();
+        }
+        sizer.update(count, bytes, System.nanoTime() - start);
         return hasInserts;
     }
 
@@ -196,12 +418,42 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
      * Denote that a combination of key values and data values that is already
      * queued for insertion is actually existing and should not be inserted.
      * @param foundValues The tuple of key values that belong to the data and
-	 * should not be inserted.
+     * should not be inserted.
      */
-    protected void markExisting(List<Object> foundValues) {
+    protected void markExisting(Key foundValues) {
         checkValues.remove(foundValues);
     }
 
+    /**
+     * Denote that a combination of key values and data values that is already
+     * queued for insertion is actually existing, based on a result of the
+     * existence query which also contains the fields from getFetchFields.
+     * @param foundValues The tuple of key values that belong to the data and
+     * should not be inserted.
+     * @param rs The result set, positioned at the row of the existing key tuple
+     * @throws SQLException If a database access error occurs
+     */
+    protected void markExisting(Key foundValues, ResultSet rs) throws SQLException {
+        markExisting(foundValues);
+    }
+
+    /**
+     * Retrieve the names of fields other than the keys that the existence
+     * query should retrieve for existing rows.
+     * @return The field names
+     */
+    protected String[] getFetchFields() {
+        return new String[0];
+    }
+
+    /**
+     * Retrieve the number of rows that the statement has inserted.
+     * @return The number of inserted rows
+     */
+    public long getInserted() {
+        return inserted;
+    }
+
     /**
      * Retrieve the connection that the batched statement uses.
      * @return Connection object
@@ -213,19 +465,28 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
     }
     
     /**
-     * Retrieve the batch size.
+     * Retrieve the batch size. The size adapts to the performance of earlier
+     * batches of the statement unless it is fixed with setBatchSize.
      * @return Size of the selection query batch
      */
     public final int getBatchSize() {
-        return batchSize;
+        return sizer.getSize();
     }
 
     /**
-     * Alter the batch size.
+     * Alter the batch size, fixing it to the provided size.
      * @param batchSize Size of the selection query batch
      */
     public final void setBatchSize(int batchSize) {
-        this.batchSize = batchSize;
+        sizer.setSize(batchSize);
+    }
+    
+    /**
+     * Retrieve the object that determines the size of the selection batches.
+     * @return The batch sizer
+     */
+    public final BatchSizer getSizer() {
+        return sizer;
     }
 
     /**
@@ -235,8 +496,22 @@ public abstract class BatchedCheckStatement implements AutoCloseable {
      */
     @Override
     public void close() throws SQLException {
-        insertStmt.close();
-        checkValues.clear();
+        if (sizer.getBatches() > 0) {
+            Logger.getLogger("importer").log(Level.FINE, "Check batches for {0}: {1}", new Object[]{table, sizer});
+        }
+        if (keyIndex != null) {
+            Logger.getLogger("importer").log(Level.FINE, "Key index for {0}: {1}", new Object[]{table, keyIndex});
+        }
+        try {
+            closeCheckTable();
+        }
+        finally {
+            insertStmt.close();
+            checkValues.clear();
+            newValues.clear();
+            checkBytes = 0;
+            keyIndex = null;
+        }
     }
     
 }
@@ -20,36 +20,128 @@
 package dao;
 
 import java.beans.PropertyVetoException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * An object that represents a precompiled SQL update statement that can be
  * batched to decrease communication overhead with the database. The updates are
  * batched and updates are automatically performed for memory management purposes.
+ * 
+ * The statement can perform the updates asynchronously, in which case a full
+ * batch is handed to a background flusher with its own connection while the
+ * caller fills the next batch. This is enabled for tables that are selected
+ * through the "importer.async_tables" property or with setAsync. In this mode,
+ * the parameters of the prepared statement are recorded rather than added to
+ * a batch of the connection of the statement, and errors from writing batches
+ * are thrown by later calls to batch, execute or close. Statements that are
+ * created during an import transaction are not asynchronous, since they write
+ * using the connection of the transaction.
  * @author Leon Helwerda
  */
 public class BatchedStatement implements AutoCloseable {
+    private static final Pattern TABLE_PATTERN = Pattern.compile("^\\s*(?:insert\\s+into|update|delete\\s+from)\\s+([\\w.]+)", Pattern.CASE_INSENSITIVE);
     private Connection con = null;
     private PreparedStatement pstmt = null;
+    private PreparedStatement flushPstmt = null;
     private String query = "";
+    private final String table;
     /**
      * Current number of update statements in the batch
      */
     private Integer batchSize;
-    private static final Integer MAX_BATCH_SIZE = 1000;
+    /**
+     * Estimated number of bytes of the update statements in the batch
+     */
+    private long batchBytes;
+    /**
+     * Estimated number of bytes of the parameters of the next record
+     */
+    private long rowBytes;
+    private final BatchSizer sizer = new BatchSizer();
+    private BatchFlusher flusher = null;
+    private PreparedStatement recorder = null;
+    private PreparedStatement measurer = null;
+    private Object[] row;
+    private List<Object[]> rows = new ArrayList<>();
+    private Predicate<Object[]> filter = null;
     
     /**
      * Create a batched statement object for the given SQL query.
      * @param sql The SQL update query to perform in batches
      */
     public BatchedStatement(String sql) {
+        this(sql, null);
+    }
+    
+    /**
+     * Create a batched statement object for the given SQL query which uses
+     * a provided connection.
+     * @param sql The SQL update query to perform in batches
+     * @param con The connection to use, or null to retrieve one when needed
+     */
+    BatchedStatement(String sql, Connection con) {
         query = sql;
+        this.con = con;
         batchSize = 0;
+        batchBytes = 0;
+        row = new Object[countParameters(sql)];
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        table = matcher.find() ? matcher.group(1) : null;
+        if (table != null && isSelected("importer.async_tables", table) && ImportTransaction.getCurrent() == null) {
+            flusher = new BatchFlusher();
+        }
+    }
+    
+    private static int countParameters(String sql) {
+        int count = 0;
+        boolean quoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            else if (c == '?' && !quoted) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Check whether a table is selected in a property which contains
+     * a comma-separated list of table names, or "all" to select every table.
+     * @param property The name of the system property
+     * @param table The table name, with or without scheme
+     * @return Whether the table is selected
+     */
+    protected static boolean isSelected(String property, String table) {
+        String tables = System.getProperty(property, "").trim();
+        if (tables.isEmpty()) {
+            return false;
+        }
+        String name = table.substring(table.lastIndexOf('.') + 1);
+        for (String selected : tables.split(",")) {
+            selected = selected.trim();
+            if (selected.equals(table) || selected.equals(name) || selected.equals("all")) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /**
@@ -64,22 +156,206 @@ public class BatchedStatement implements AutoCloseable {
         }
         return con;
     }
+    
+    private Connection getRecordConnection() throws SQLException {
+        try {
+            return getConnection();
+        }
+        catch (PropertyVetoException ex) {
+            throw new SQLException("Could not configure connection", ex);
+        }
+    }
+    
+    /**
+     * Check whether the batched statement should record the parameters of
+     * the prepared statement in order to write them later on.
+     * @return Whether the statement records parameters
+     */
+    protected boolean isRecording() {
+        return flusher != null || filter != null;
+    }
+    
+    /**
+     * Set a condition that the records must match in order to be added to the
+     * batch. Records that do not match are discarded when they are batched.
+     * The condition receives the values of the parameters of the record.
+     * The statement records the parameters while a filter is set, so this
+     * should be called before the prepared statement is retrieved.
+     * @param filter The condition, or null to add all records to the batch
+     */
+    public void setFilter(Predicate<Object[]> filter) {
+        this.filter = filter;
+    }
+    
+    /**
+     * Check whether the batched statement performs the updates asynchronously.
+     * @return Whether a background flusher writes the batches
+     */
+    public boolean isAsync() {
+        return flusher != null;
+    }
+    
+    /**
+     * Alter whether the batched statement performs the updates asynchronously.
+     * Pending batches are written before the mode changes.
+     * @param async Whether a background flusher should write the batches
+     * @throws SQLException If a database access error occurs
+     */
+    public void setAsync(boolean async) throws SQLException {
+        if (async) {
+            setAsync(() -> DataSource.getInstance().getFlusherConnection());
+        }
+        else if (flusher != null) {
+            execute();
+            flusher.close();
+            flusher = null;
+        }
+    }
+    
+    /**
+     * Make the batched statement perform the updates asynchronously, using
+     * a background flusher with a connection from the provider.
+     * @param source Provider of the connection of the flusher
+     * @throws SQLException If a database access error occurs
+     */
+    void setAsync(Callable<Connection> source) throws SQLException {
+        execute();
+        if (flusher != null) {
+            flusher.close();
+        }
+        flusher = new BatchFlusher(source);
+    }
+    
+    private class Recorder implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                int index = (Integer)args[0];
+                if (index < 1 || index > row.length) {
+                    throw new SQLException("Parameter index " + index + " is out of range for " + query);
+                }
+                row[index - 1] = name.equals("setNull") ? null : args[1];
+                return null;
+            }
+            switch (name) {
+                case "clearParameters" -> {
+                    Arrays.fill(row, null);
+                    return null;
+                }
+                case "close" -> {
+                    return null;
+                }
+                case "isClosed" -> {
+                    return recorder == null;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Recorder for " + query;
+                }
+                default -> {
+                    try {
+                        return method.invoke(prepare(getRecordConnection()), args);
+                    }
+                    catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                }
+            }
+        }
+    }
+
+    private class Measurer implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                rowBytes += BatchSizer.estimate(name.equals("setNull") ? null : args[1]);
+            }
+            switch (name) {
+                case "clearParameters" -> {
+                    rowBytes = 0;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Measurer for " + query;
+                }
+                default -> {
+                }
+            }
+            if (pstmt == null) {
+                throw new SQLException("Batched statement is closed");
+            }
+            try {
+                return method.invoke(pstmt, args);
+            }
+            catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
 
     /**
      * Retrieve the prepared statement.
      * Callers can perform the usual parameter filling on the prepared statement
-     * to fill a batch record.
+     * to fill a batch record. The parameters are measured in order to estimate
+     * the size of the batch. If the statement records parameters, then the
+     * returned object only registers the parameters for the next record.
+     * Once such a recorder is provided, it remains in use until the statement
+     * is closed.
      * @return The PreparedStatement object that the batched statement reuses
      * @throws SQLException If a database access error occurs or the connection is closed
      * @throws PropertyVetoException If the database connection cannot be configured
      */
     public PreparedStatement getPreparedStatement() throws SQLException, PropertyVetoException {
         getConnection();
+        if (recorder != null) {
+            return recorder;
+        }
+        if (isRecording()) {
+            execute();
+            recorder = (PreparedStatement)Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new Recorder()
+            );
+            return recorder;
+        }
         if (pstmt == null) {
             pstmt = con.prepareStatement(query);
             batchSize = 0;
         }
-        return pstmt;
+        if (measurer == null) {
+            measurer = (PreparedStatement)Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new Measurer()
+            );
+        }
+        return measurer;
+    }
+    
+    private PreparedStatement prepare(Connection target) throws SQLException {
+        if (target == con) {
+            if (pstmt == null) {
+                pstmt = con.prepareStatement(query);
+            }
+            return pstmt;
+        }
+        if (flushPstmt == null) {
+            flushPstmt = target.prepareStatement(query);
+        }
+        return flushPstmt;
     }
     
     /**
@@ -90,57 +366,194 @@ public class BatchedStatement implements AutoCloseable {
      * is closed, or the prepared statement is closed
      */
     public void batch() throws SQLException {
-        if (pstmt != null) {
+        batch(0);
+    }
+    
+    /**
+     * Add the current prepared statement parameters to the batch, with an
+     * estimate of the size of the parameters. The size is used to limit the
+     * number of bytes that are sent to the database in one batch.
+     * @param bytes The estimated size of the parameters in bytes, or 0 to
+     * estimate the size from the parameters that are set on the prepared
+     * statement
+     * @throws SQLException If a database access error occurs, or the connection
+     * is closed, or the prepared statement is closed
+     */
+    public void batch(long bytes) throws SQLException {
+        if (recorder != null) {
+            if (filter != null && !filter.test(row)) {
+                Arrays.fill(row, null);
+                return;
+            }
+            rows.add(row);
+            batchSize++;
+            batchBytes += bytes > 0 ? bytes : BatchSizer.estimate(row);
+            row = new Object[row.length];
+            if (sizer.isFull(batchSize, batchBytes)) {
+                flushRows(false);
+            }
+        }
+        else if (pstmt != null) {
             pstmt.addBatch();
             pstmt.clearParameters();
             batchSize++;
-            if (batchSize >= MAX_BATCH_SIZE) {
+            batchBytes += bytes > 0 ? bytes : rowBytes;
+            rowBytes = 0;
+            if (sizer.isFull(batchSize, batchBytes)) {
                 execute();
             }
         }
     }
     
+    /**
+     * Write recorded records to the database.
+     * @param target The connection to write the records with
+     * @param records The records, each with the values for the parameters
+     * @throws SQLException If a database access error occurs
+     */
+    protected void writeRows(Connection target, List<Object[]> records) throws SQLException {
+        PreparedStatement stmt = prepare(target);
+        for (Object[] values : records) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    stmt.setNull(i + 1, java.sql.Types.NULL);
+                }
+                else {
+                    stmt.setObject(i + 1, values[i]);
+                }
+            }
+            stmt.addBatch();
+        }
+        int[] counts = stmt.executeBatch();
+        Logger.getLogger("importer").log(Level.FINE, "Updates for {0}: {1}", new Object[]{query, Arrays.toString(counts)});
+        stmt.clearBatch();
+    }
+    
+    private void writeTimed(Connection target, List<Object[]> records, long bytes) throws SQLException {
+        long start = System.nanoTime();
+        writeRows(target, records);
+        sizer.update(records.size(), bytes, System.nanoTime() - start);
+        ImportTransaction.count(records.size());
+    }
+    
+    private void flushRows(boolean wait) throws SQLException {
+        if (!rows.isEmpty()) {
+            List<Object[]> pending = rows;
+            long bytes = batchBytes;
+            rows = new ArrayList<>();
+            batchSize = 0;
+            batchBytes = 0;
+            if (flusher != null) {
+                flusher.submit(target -> writeTimed(target, pending, bytes));
+            }
+            else {
+                writeTimed(getRecordConnection(), pending, bytes);
+            }
+        }
+        if (wait && flusher != null) {
+            flusher.await();
+        }
+    }
+    
+    /**
+     * Start performing the updates recorded in the current batch. If the
+     * statement performs updates asynchronously, then this hands the batch
+     * to the background flusher without waiting for it to be written.
+     * Otherwise, this is the same as execute.
+     * @throws SQLException If a database access error occurs, or the connection
+     * is closed, or the prepared statement is closed
+     */
+    public void flush() throws SQLException {
+        if (recorder != null) {
+            flushRows(false);
+        }
+        else {
+            execute();
+        }
+    }
+    
     /**
      * Immediately perform all updates recorded in the current batch.
      * Use this method to ensure the updates are flushed, for example when
      * successfully ending an import update. Callers can also use this to
      * "downgrade" the batched statement to a prepared statement
-     * that manages its own connection.
+     * that manages its own connection. If the statement performs updates
+     * asynchronously, then this waits until all batches are written.
      * @throws SQLException If a database access error occurs, or the connection
      * is closed, or the prepared statement is closed
      */
     public void execute() throws SQLException {
-        if (pstmt != null) {
+        if (recorder != null || flusher != null) {
+            flushRows(true);
+        }
+        if (recorder == null && pstmt != null && batchSize > 0) {
+            long start = System.nanoTime();
             int[] counts = pstmt.executeBatch();
+            sizer.update(batchSize, batchBytes, System.nanoTime() - start);
             Logger.getLogger("importer").log(Level.FINE, "Updates for {0}: {1}", new Object[]{query, Arrays.toString(counts)});
             pstmt.clearBatch();
+            ImportTransaction.count(batchSize);
             batchSize = 0;
+            batchBytes = 0;
         }
     }
 
     /**
      * Close the connections opened by the prepared statement and free resources.
-     * This does not flush the current batch.
+     * This does not flush the current batch, but does wait for batches that
+     * are already handed to the background flusher.
      * @throws SQLException If a database access error occurs
      */
     @Override
     public void close() throws SQLException {
-        if (con != null) {
-            con.close();
-            con = null;
+        if (sizer.getBatches() > 0) {
+            Logger.getLogger("importer").log(Level.FINE, "Batches for {0}: {1}", new Object[]{query, sizer});
         }
-        if (pstmt != null) {
-            pstmt.close();
-            pstmt = null;
+        try {
+            if (flusher != null) {
+                flusher.close();
+            }
+        }
+        finally {
+            if (con != null) {
+                con.close();
+                con = null;
+            }
+            if (pstmt != null) {
+                pstmt.close();
+                pstmt = null;
+            }
+            if (flushPstmt != null) {
+                flushPstmt.close();
+                flushPstmt = null;
+            }
+            if (flusher != null) {
+                flusher = new BatchFlusher(flusher);
+            }
+            recorder = null;
+            measurer = null;
+            rowBytes = 0;
+            rows.clear();
+            Arrays.fill(row, null);
+            batchSize = 0;
+            batchBytes = 0;
         }
-        batchSize = 0;
     }
 
     /**
-     * Retrieve the maximum batch size.
-     * @return The maximum size of batches for the batched statement
+     * Retrieve the maximum batch size. The size adapts to the performance of
+     * earlier batches of the statement.
+     * @return The current maximum size of batches for the batched statement
      */
     public int getMaxBatchSize() {
-        return MAX_BATCH_SIZE;
+        return sizer.getSize();
+    }
+    
+    /**
+     * Retrieve the object that determines the size of the batches.
+     * @return The batch sizer
+     */
+    public BatchSizer getSizer() {
+        return sizer;
     }
 }
@@ -20,21 +20,33 @@
 package dao;
 
 import java.beans.PropertyVetoException;
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * An object that represents an "insert or update if exists" update statement,
  * where the selection check and insertion and update queries are batched to
  * decrease communication overhead with the database.
+ * 
+ * If the update query only assigns parameters to fields, for example
+ * "update gros.table set a=?, b=? where id=?", then the existence query also
+ * retrieves the current values of these fields. Existing rows are then only
+ * updated if one of the parameters differs from the current value. Rows that
+ * are determined to exist by a preloaded key index are always updated.
  * @author Leon Helwerda
  */
 public abstract class BatchedUpdateStatement extends BatchedCheckStatement {
+    private static final Pattern UPDATE_PATTERN = Pattern.compile("^\\s*update\\s+[\\w.]+\\s+set\\s+(.+?)\\s+where\\s+.*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern ASSIGN_PATTERN = Pattern.compile("^\\s*(\\w+)\\s*=\\s*\\?\\s*$");
+    
     /**
      * The batched statement that is used for updates of existing rows.
      */
@@ -43,46 +55,183 @@ public abstract class BatchedUpdateStatement extends BatchedCheckStatement {
      * A map of values of key fields to select an existing row, and data fields
      * to replace existing values with.
      */
-    protected Map<List<Object>, Object> updateValues = new HashMap<>();
+    protected final KeyMap<Object> updateValues = new KeyMap<>();
+    /**
+     * The fields that are assigned in the update query, or an empty array if
+     * the current values of the fields are not compared.
+     */
+    private final String[] compareFields;
+    /**
+     * A map of values of key fields of existing rows and the current values of
+     * the compared fields.
+     */
+    private final KeyMap<Object[]> currentValues = new KeyMap<>();
+    private Object[] current = null;
+    private long updated = 0;
+    private long unchanged = 0;
 
     
     public BatchedUpdateStatement(String table, String insertSql, String updateSql, String[] keys) {
         super(table, insertSql, keys);
         this.updateStmt = new BatchedStatement(updateSql);
+        this.compareFields = parseFields(updateSql);
+        if (compareFields.length > 0) {
+            this.updateStmt.setFilter(this::isChanged);
+        }
+    }
+    
+    /**
+     * Determine the fields that are assigned a parameter in an update query.
+     * @param updateSql The SQL update query
+     * @return The field names in the order of their parameters, or an empty
+     * array if the query contains other assignments
+     */
+    static String[] parseFields(String updateSql) {
+        Matcher matcher = UPDATE_PATTERN.matcher(updateSql);
+        if (!matcher.matches()) {
+            return new String[0];
+        }
+        List<String> fields = new ArrayList<>();
+        for (String assignment : matcher.group(1).split(",")) {
+            Matcher assign = ASSIGN_PATTERN.matcher(assignment);
+            if (!assign.matches()) {
+                return new String[0];
+            }
+            fields.add(assign.group(1));
+        }
+        return fields.toArray(new String[fields.size()]);
     }
 
     protected abstract void addToUpdateBatch(Object[] values, Object data, PreparedStatement pstmt) throws SQLException, PropertyVetoException;    
     
     @Override
-    public boolean execute() throws SQLException, PropertyVetoException {
-        boolean hasInserts = super.execute();
+    protected boolean perform(boolean wait) throws SQLException, PropertyVetoException {
+        boolean hasInserts = super.perform(wait);
         boolean hasUpdates = !updateValues.isEmpty();
         
         // Insert the update values into the batch
         PreparedStatement pstmt = updateStmt.getPreparedStatement();
         Logger.getLogger("importer").log(Level.FINE, "Key tuples to update: {0}", updateValues.size());
         
-        for (HashMap.Entry<List<Object>, Object> entry : updateValues.entrySet()) {
-            List<Object> values = entry.getKey();
-            Object data = entry.getValue();
-            addToUpdateBatch(values.toArray(), data, pstmt);
+        for (int slot = updateValues.next(-1); slot >= 0; slot = updateValues.next(slot)) {
+            Key values = updateValues.keyAt(slot);
+            current = currentValues.get(values);
+            addToUpdateBatch(values.toArray(), updateValues.valueAt(slot), pstmt);
         }
 
+        current = null;
         updateValues.clear();
-        updateStmt.execute();
+        currentValues.clear();
+        if (wait) {
+            updateStmt.execute();
+        }
+        else {
+            updateStmt.flush();
+        }
         return hasInserts || hasUpdates;
     }
     
+    /**
+     * Check whether a record for the update query changes the existing row.
+     * @param parameters The values of the parameters of the update query
+     * @return Whether the record should be added to the update batch
+     */
+    private boolean isChanged(Object[] parameters) {
+        if (current != null) {
+            boolean same = true;
+            for (int i = 0; i < current.length && same; i++) {
+                same = isSame(current[i], parameters[i]);
+            }
+            if (same) {
+                unchanged++;
+                return false;
+            }
+        }
+        updated++;
+        return true;
+    }
+    
+    /**
+     * Check whether a value from the database is the same as a parameter.
+     * Numbers are compared by their decimal value, since the database may
+     * provide a different type than the parameter. Other values must be equal.
+     * @param value The current value in the database
+     * @param parameter The value of the parameter
+     * @return Whether the values are the same
+     */
+    static boolean isSame(Object value, Object parameter) {
+        if (value == null || parameter == null) {
+            return value == parameter;
+        }
+        if (value instanceof Number && parameter instanceof Number) {
+            try {
+                return new BigDecimal(value.toString()).compareTo(new BigDecimal(parameter.toString())) == 0;
+            }
+            catch (NumberFormatException ex) {
+                return value.equals(parameter);
+            }
+        }
+        return value.equals(parameter);
+    }
+    
+    @Override
+    protected String[] getFetchFields() {
+        return compareFields;
+    }
+    
+    @Override
+    protected int getPendingCount() {
+        return super.getPendingCount() + updateValues.size();
+    }
+    
     @Override
-    protected void markExisting(List<Object> foundValues) {
+    protected void markExisting(Key foundValues) {
         updateValues.put(foundValues, checkValues.get(foundValues));
         super.markExisting(foundValues);
     }
     
+    @Override
+    protected void markExisting(Key foundValues, ResultSet rs) throws SQLException {
+        if (compareFields.length > 0) {
+            Object[] fields = new Object[compareFields.length];
+            for (int i = 0; i < compareFields.length; i++) {
+                fields[i] = rs.getObject(compareFields[i]);
+            }
+            currentValues.put(foundValues, fields);
+        }
+        super.markExisting(foundValues, rs);
+    }
+    
+    /**
+     * Retrieve the number of existing rows that the statement has updated.
+     * @return The number of updated rows
+     */
+    public long getUpdated() {
+        return updated;
+    }
+    
+    /**
+     * Retrieve the number of existing rows that the statement has not updated
+     * because the row already has the same values.
+     * @return The number of unchanged rows
+     */
+    public long getUnchanged() {
+        return unchanged;
+    }
+    
     @Override
     public void close() throws SQLException {
-        super.close();
-        updateStmt.close();
-        updateValues.clear();
+        if (getInserted() + updated + unchanged > 0) {
+            Logger.getLogger("importer").log(Level.FINE, "Rows of {0}: {1} inserted, {2} updated, {3} unchanged",
+                    new Object[]{table, getInserted(), updated, unchanged});
+        }
+        try {
+            super.close();
+        }
+        finally {
+            updateStmt.close();
+            updateValues.clear();
+            currentValues.clear();
+        }
     }
 }
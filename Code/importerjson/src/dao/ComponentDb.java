@@ -26,8 +26,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import util.BaseLinkDb;
 
 /**
@@ -74,7 +75,7 @@ public class ComponentDb extends BaseLinkDb implements AutoCloseable {
         }
     }
     
-    private HashMap<Link, LinkDates> linkCache = null;
+    private Map<Link, LinkDates> linkCache = null;
     
     private BatchedStatement insertLinkStmt = null;
     private PreparedStatement checkLinkStmt = null;
@@ -112,7 +113,11 @@ public class ComponentDb extends BaseLinkDb implements AutoCloseable {
         if (linkCache != null) {
             return;
         }
-        linkCache = new HashMap<>();
+        linkCache = SharedCache.get("gros.issue_component", this::loadLinkCache);
+    }
+    
+    private Map<Link, LinkDates> loadLinkCache() throws SQLException, PropertyVetoException {
+        Map<Link, LinkDates> cache = new ConcurrentHashMap<>();
         
         Connection con = insertLinkStmt.getConnection();
         String sql = "SELECT issue_id, component_id, start_date, end_date FROM gros.issue_component";
@@ -123,11 +128,23 @@ public class ComponentDb extends BaseLinkDb implements AutoCloseable {
             while (rs.next()) {
                 Link link = new Link(rs.getInt("issue_id"), rs.getInt("component_id"));
                 LinkDates dates = new LinkDates(rs.getTimestamp("start_date"), rs.getTimestamp("end_date"));
-                linkCache.put(link, dates);
+                cache.put(link, dates);
             }
         }
+        return cache;
     }
 
+    /**
+     * Retrieve the cache of links if it is filled by this or another DAO.
+     * @return The cache, or null if it is not filled
+     */
+    private Map<Link, LinkDates> getLinkCache() {
+        if (linkCache != null) {
+            return linkCache;
+        }
+        return SharedCache.peek("gros.issue_component");
+    }
+    
     /**
      * Check whether a link between an issue and a component exists and it has
      * the same properties as the provided arguments.
@@ -189,10 +206,11 @@ public class ComponentDb extends BaseLinkDb implements AutoCloseable {
                              
         insertLinkStmt.batch();
         
-        if (linkCache != null) {
+        Map<Link, LinkDates> cache = getLinkCache();
+        if (cache != null) {
             Link link = new Link(issue_id, component_id);
             LinkDates dates = new LinkDates(start_date, end_date);
-            linkCache.put(link, dates);
+            cache.put(link, dates);
         }
     }
     
@@ -215,10 +233,11 @@ public class ComponentDb extends BaseLinkDb implements AutoCloseable {
 
         updateLinkStmt.batch();
         
-        if (linkCache != null) {
+        Map<Link, LinkDates> cache = getLinkCache();
+        if (cache != null) {
             Link link = new Link(issue_id, component_id);
             LinkDates dates = new LinkDates(start_date, end_date);
-            linkCache.put(link, dates);
+            cache.put(link, dates);
         }
     }
 
@@ -323,10 +342,8 @@ public class ComponentDb extends BaseLinkDb implements AutoCloseable {
             checkLinkStmt = null;
         }
         
-        if (linkCache != null) {
-            linkCache.clear();
-            linkCache = null;
-        }
+        // The cache may be shared with other DAOs, so only drop the reference
+        linkCache = null;
         
         insertComponentStmt.execute();
         insertComponentStmt.close();
@@ -0,0 +1,201 @@
+/**
+ * Shared connection for the statements of a thread.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+/**
+ * A scope in which all the DAOs and statements of the thread that opened it
+ * share one database connection. While the scope is open, the data source
+ * provides the same connection each time one is requested on the thread, and
+ * closing that connection has no effect. The connection is checked out of the
+ * pool when it is first needed, and returned to the pool once the scope closes.
+ *
+ * Opening a scope while the thread already has one joins the existing scope,
+ * which remains open until every party that opened it has closed it. Thus an
+ * importer can open a scope for its entire task, and a DAO can open a scope
+ * for its own statements in case it is used outside of such a task.
+ * Connections are shared in import tasks unless the
+ * "importer.shared_connection" property is set to false.
+ * @author Leon Helwerda
+ */
+public class ConnectionScope implements AutoCloseable {
+    private static final ThreadLocal<ConnectionScope> CURRENT = new ThreadLocal<>();
+
+    private Connection con = null;
+    private Connection shared = null;
+    private int depth = 1;
+
+    /**
+     * Create a connection scope. The scope must be entered in order to become
+     * active for the current thread.
+     */
+    protected ConnectionScope() {
+    }
+
+    /**
+     * Check whether import tasks should share connections.
+     * @return Whether the "importer.shared_connection" property is enabled,
+     * which is the default
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("importer.shared_connection", "true"));
+    }
+
+    /**
+     * Open a scope for the current thread, or join the scope that the thread
+     * already has.
+     * @return The active scope
+     */
+    public static ConnectionScope open() {
+        ConnectionScope scope = CURRENT.get();
+        if (scope != null) {
+            scope.depth++;
+            return scope;
+        }
+        return enter(new ConnectionScope());
+    }
+
+    /**
+     * Make a new scope active for the current thread.
+     * @param <T> The type of the scope
+     * @param scope The scope
+     * @return The provided scope
+     * @throws IllegalStateException If the thread already has a scope
+     */
+    protected static <T extends ConnectionScope> T enter(T scope) {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A connection scope is already active on this thread");
+        }
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * Retrieve the scope of the current thread.
+     * @return The active scope, or null if there is none
+     */
+    public static ConnectionScope getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Configure the connection once it is checked out of the pool.
+     * @param con The connection
+     * @throws SQLException If a database access error occurs
+     */
+    protected void prepare(Connection con) throws SQLException {
+    }
+
+    /**
+     * Restore the connection before it is returned to the pool.
+     * @param con The connection
+     * @throws SQLException If a database access error occurs
+     */
+    protected void release(Connection con) throws SQLException {
+    }
+
+    /**
+     * Retrieve the underlying connection of the scope.
+     * @return The connection, or null if none is checked out
+     */
+    protected final Connection getPooled() {
+        return con;
+    }
+
+    /**
+     * Retrieve the connection of the scope, checking it out of the pool
+     * of the data source if necessary.
+     * @param source Provider of a pooled connection
+     * @return The shared connection, which ignores attempts to close it
+     * @throws SQLException If a database access error occurs
+     */
+    Connection getConnection(Callable<Connection> source) throws SQLException {
+        if (shared == null) {
+            try {
+                con = source.call();
+            }
+            catch (SQLException ex) {
+                throw ex;
+            }
+            catch (Exception ex) {
+                throw new SQLException("Could not retrieve connection for scope", ex);
+            }
+            prepare(con);
+            shared = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "isClosed":
+                            return con == null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Shared connection " + con;
+                        default:
+                            if (con == null) {
+                                throw new SQLException("Connection scope is closed");
+                            }
+                            try {
+                                return method.invoke(con, args);
+                            }
+                            catch (InvocationTargetException ex) {
+                                throw ex.getCause();
+                            }
+                    }
+                }
+            );
+        }
+        return shared;
+    }
+
+    /**
+     * Leave the scope. Once every party that opened the scope has closed it,
+     * the scope is no longer active and the connection is returned to the pool.
+     * @throws SQLException If a database access error occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        if (--depth > 0) {
+            return;
+        }
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        if (con == null) {
+            return;
+        }
+        try {
+            release(con);
+        }
+        finally {
+            con.close();
+            con = null;
+        }
+    }
+}
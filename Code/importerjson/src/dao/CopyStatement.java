@@ -0,0 +1,191 @@
+/**
+ * A reusable SQL insert statement that performs bulk loads of rows.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A batched insert statement which loads the rows of a batch into the table
+ * using a single MonetDB "COPY INTO ... FROM STDIN" bulk load query.
+ * Callers fill the parameters of the prepared statement and batch the records
+ * in the same way as a normal batched statement. The parameters are recorded
+ * and formatted as CSV data that is sent along with the bulk load query.
+ * Bulk loading is only used for tables that are selected through the
+ * "importer.copy_tables" property, and the statement falls back to the
+ * batched insert queries if the table is not selected or if the bulk load
+ * query fails, for example because the database does not support it.
+ * @author Leon Helwerda
+ */
+public class CopyStatement extends BatchedStatement {
+    private static final Pattern INSERT_PATTERN = Pattern.compile("^\\s*insert\\s+into\\s+([\\w.]+)\\s*\\(([^)]*)\\)\\s*values\\s*\\(.*\\)\\s*;?\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final String NULL_VALUE = "";
+
+    private final String table;
+    private final String[] columns;
+    private volatile boolean copy;
+
+    /**
+     * Create a bulk load statement object for the given SQL insert query.
+     * @param sql The SQL insert query, with a list of column names and only
+     * parameters as values, for example "insert into gros.table(a,b) values (?,?)".
+     */
+    public CopyStatement(String sql) {
+        this(sql, null);
+    }
+
+    /**
+     * Create a bulk load statement object for the given SQL insert query
+     * which uses a provided connection.
+     * @param sql The SQL insert query
+     * @param con The connection to use, or null to retrieve one when needed
+     */
+    CopyStatement(String sql, Connection con) {
+        super(sql, con);
+        Matcher matcher = INSERT_PATTERN.matcher(sql);
+        if (matcher.matches()) {
+            table = matcher.group(1);
+            columns = matcher.group(2).replaceAll("\\s", "").split(",");
+            copy = isSelected(table);
+        }
+        else {
+            table = null;
+            columns = new String[0];
+            copy = false;
+        }
+    }
+
+    /**
+     * Check whether the given table is selected for bulk loading by the
+     * "importer.copy_tables" property.
+     * @param table The table name, with or without scheme
+     * @return Whether bulk loads should be performed for the table
+     */
+    public static boolean isSelected(String table) {
+        return isSelected("importer.copy_tables", table);
+    }
+
+    /**
+     * Check whether the statement currently performs bulk loads.
+     * @return Whether rows are loaded with a COPY INTO query rather than batched
+     * insert queries.
+     */
+    public boolean isCopy() {
+        return copy;
+    }
+
+    /**
+     * Alter whether the statement performs bulk loads. If bulk loading is
+     * disabled while rows are pending, then these are inserted using the
+     * batched insert query upon the next execution.
+     * @param copy Whether rows should be loaded with a COPY INTO query.
+     */
+    public void setCopy(boolean copy) {
+        this.copy = copy && table != null;
+    }
+
+    @Override
+    protected boolean isRecording() {
+        return copy || super.isRecording();
+    }
+
+    @Override
+    protected void writeRows(Connection target, List<Object[]> records) throws SQLException {
+        if (copy) {
+            // Within a transaction, a failed query would abort the transaction
+            Savepoint savepoint = target.getAutoCommit() ? null : target.setSavepoint();
+            try (Statement stmt = target.createStatement()) {
+                stmt.execute(buildQuery(records));
+                Logger.getLogger("importer").log(Level.FINE, "Bulk loaded {0} rows into {1}", new Object[]{records.size(), table});
+                if (savepoint != null) {
+                    target.releaseSavepoint(savepoint);
+                }
+                return;
+            }
+            catch (SQLException ex) {
+                Logger.getLogger("importer").log(Level.WARNING, "Bulk load into {0} failed, falling back to batched inserts: {1}", new Object[]{table, ex.getMessage()});
+                copy = false;
+                if (savepoint != null) {
+                    target.rollback(savepoint);
+                }
+            }
+        }
+        super.writeRows(target, records);
+    }
+
+    /**
+     * Build the bulk load query including the CSV data of the rows.
+     * @param values The rows to load, each with values for the columns
+     * @return The COPY INTO query
+     */
+    String buildQuery(List<Object[]> values) {
+        StringBuilder sql = new StringBuilder("COPY ");
+        sql.append(values.size()).append(" RECORDS INTO ").append(table);
+        sql.append(" (").append(String.join(",", columns)).append(")");
+        sql.append(" FROM STDIN USING DELIMITERS ',','\\n','\"' NULL AS '").append(NULL_VALUE).append("';\n");
+        for (Object[] values_row : values) {
+            for (int i = 0; i < values_row.length; i++) {
+                if (i > 0) {
+                    sql.append(',');
+                }
+                formatValue(sql, values_row[i]);
+            }
+            sql.append('\n');
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Format a value as a CSV field for the bulk load.
+     * @param sb The builder to append the field to
+     * @param value The value to format, possibly null
+     */
+    static void formatValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append(NULL_VALUE);
+        }
+        else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        }
+        else {
+            String text = value.toString();
+            sb.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '\\' -> sb.append("\\\\");
+                    case '"' -> sb.append("\\\"");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+    }
+}
@@ -22,6 +22,7 @@ package dao;
 import java.beans.PropertyVetoException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
 import util.BaseDb;
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
@@ -36,6 +37,27 @@ public class DataSource extends BaseDb {
      */
     private static DataSource datasource;
     private final ComboPooledDataSource cpds;
+    private final Semaphore permits;
+    /**
+     * Maximum pool size if every statement uses its own connection. This is
+     * also the minimum of a derived pool size, since statements outside of
+     * import tasks, such as those of special tasks, do not share connections.
+     */
+    private static final int STATEMENT_POOL_SIZE = 50;
+    /**
+     * Default time in milliseconds to wait for a connection from an exhausted
+     * pool before failing.
+     */
+    private static final int CHECKOUT_TIMEOUT = 300000;
+    /**
+     * Number of connections of a worker that shares its connection, namely
+     * one for its import task and the others for background flushers.
+     */
+    private static final int WORKER_CONNECTIONS = 4;
+    /**
+     * Number of connections for tasks outside of the workers.
+     */
+    private static final int RESERVE_CONNECTIONS = 2;
 
     /**
      * Create the database connection manager.
@@ -49,7 +71,61 @@ public class DataSource extends BaseDb {
         cpds.setUser(getUser());
         cpds.setPassword(getPassword());
         
-        cpds.setMaxPoolSize(50);
+        int poolSize = getPoolSize();
+        cpds.setMaxPoolSize(poolSize);
+        cpds.setCheckoutTimeout(Math.max(0, Integer.getInteger("importer.checkout_timeout", CHECKOUT_TIMEOUT)));
+        
+        Integer limit = getConnectionLimit(poolSize);
+        permits = limit == null ? null : new Semaphore(limit, true);
+    }
+    
+    /**
+     * Determine the maximum number of threads that check out connections from
+     * the pool concurrently. This is configured by the "importer.connections"
+     * property. If import tasks run on virtual threads, then the limit is the
+     * pool size by default, such that threads wait for a connection outside
+     * of the pool rather than blocking the carrier thread inside it. A thread,
+     * such as an import task, that holds a connection may check out more
+     * connections, for example for lookups outside of its transaction, and
+     * the background flushers of its statements use connections as well; these
+     * do not count toward the limit, so that they do not wait for permits that
+     * the tasks hold. The pool size bounds them instead.
+     * @param poolSize The maximum pool size
+     * @return The connection limit, or null if connections are not limited
+     */
+    static Integer getConnectionLimit(int poolSize) {
+        Integer limit = Integer.getInteger("importer.connections");
+        if (limit != null) {
+            return Math.max(1, Math.min(limit, poolSize));
+        }
+        if (Boolean.getBoolean("importer.virtual_threads")) {
+            return poolSize;
+        }
+        return null;
+    }
+    
+    /**
+     * Determine the maximum number of connections in the pool. This is
+     * configured by the "importer.pool_size" property, or otherwise derived
+     * from the number of import workers in the "importer.workers" property
+     * for each of the concurrently imported projects in the "importer.projects"
+     * property. If connections are shared, then each worker uses one
+     * connection for its import task along with connections for background
+     * flushers and lookups, but the pool is never smaller than if statements
+     * use their own connections, since some statements run outside of tasks.
+     * @return The maximum pool size
+     */
+    static int getPoolSize() {
+        Integer size = Integer.getInteger("importer.pool_size");
+        if (size != null) {
+            return Math.max(1, size);
+        }
+        if (!ConnectionScope.isEnabled()) {
+            return STATEMENT_POOL_SIZE;
+        }
+        int workers = Math.max(1, Integer.getInteger("importer.workers", 1));
+        workers *= Math.max(1, Integer.getInteger("importer.projects", 1));
+        return Math.max(STATEMENT_POOL_SIZE, workers * WORKER_CONNECTIONS + RESERVE_CONNECTIONS);
     }
 
     /**
@@ -58,7 +134,7 @@ public class DataSource extends BaseDb {
      * @return Instance of DataSource
      * @throws PropertyVetoException If the JDBC driver cannot be registered
      */
-    public static DataSource getInstance() throws PropertyVetoException {
+    public static synchronized DataSource getInstance() throws PropertyVetoException {
         if (datasource == null) {
             datasource = new DataSource();
             return datasource;
@@ -70,17 +146,49 @@ public class DataSource extends BaseDb {
     /**
      * Resets the singleton object.
      */
-    public static void reset() {
+    public static synchronized void reset() {
         datasource.cpds.close();
         datasource = null;
     }
 
     /**
-     * Returns the connection with the database. 
+     * Returns the connection with the database. If the current thread has
+     * a connection scope, such as an import transaction, then this is the
+     * shared connection of the scope.
      * @return Database connection
      * @throws SQLException If a database access error occurs
      */
     public final Connection getConnection() throws SQLException {
+        ConnectionScope scope = ConnectionScope.getCurrent();
+        if (scope != null) {
+            return scope.getConnection(this::getPooledConnection);
+        }
+        return getPooledConnection();
+    }
+    
+    /**
+     * Returns a connection from the pool, regardless of any connection scope.
+     * If connections are limited and the current thread has no other
+     * connection from the pool, then this waits until fewer threads than the
+     * limit have connections checked out.
+     * @return Database connection
+     * @throws SQLException If a database access error occurs
+     */
+    Connection getPooledConnection() throws SQLException {
+        if (permits != null) {
+            return LimitedConnection.acquire(permits, this.cpds::getConnection);
+        }
+        return this.cpds.getConnection();
+    }
+    
+    /**
+     * Returns a connection from the pool for a background flusher. This does
+     * not wait for the connection limit, since the thread that submits batches
+     * to the flusher and waits for them to be written already has a connection.
+     * @return Database connection
+     * @throws SQLException If a database access error occurs
+     */
+    Connection getFlusherConnection() throws SQLException {
         return this.cpds.getConnection();
     }
 
@@ -28,6 +28,9 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 import util.BaseDb;
 
 /**
@@ -36,7 +39,12 @@ import util.BaseDb;
  * @author Enrique, Thomas
  */
 public class DeveloperDb extends BaseDb implements AutoCloseable {
+    private static final String INSERT_DEVELOPER_SQL = "insert into gros.developer (name,display_name,email,local_domain) values (?,?,?,?);";
+    private static final String CHECK_DEVELOPER_SQL = "SELECT id FROM gros.developer WHERE ((encryption=? AND (UPPER(name) = ? OR UPPER(display_name) = ? OR UPPER(email) = ?)) OR (encryption=? AND (name=? OR display_name=? OR email=?)))";
+    private static final String INSERT_VCS_DEVELOPER_SQL = "insert into gros.vcs_developer (jira_dev_id, display_name, email, encryption) values (?,?,?,?);";
+    private static final String CHECK_VCS_DEVELOPER_SQL = "SELECT alias_id FROM gros.vcs_developer WHERE ((encryption=? AND UPPER(display_name) = ?) OR (encryption=? AND display_name=?))";
     private final String localDomain;
+    private final SaltDb saltDb = new SaltDb();
     private BatchedStatement insertDeveloperStmt = null;
     private PreparedStatement checkDeveloperStmt = null;
     
@@ -56,7 +64,7 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
     private BatchedStatement insertTfsDeveloperStmt = null;
     private PreparedStatement checkTfsDeveloperStmt = null;
     
-    private HashMap<String, Integer> vcsNameCache = null;
+    private Map<String, Integer> vcsNameCache = null;
     private HashMap<Integer, HashMap<String, Integer>> ldapNameCache = null;
 
     public static class Developer {
@@ -113,10 +121,9 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
     }
     
     public DeveloperDb() {
-        String sql = "insert into gros.developer (name,display_name,email,local_domain) values (?,?,?,?);";
-        insertDeveloperStmt = new BatchedStatement(sql);
-
-        sql = "insert into gros.project_developer (project_id, developer_id, name, display_name, email, encryption, team_id) values (?,?,?,?,?,?,?);";
+        insertDeveloperStmt = new BatchedStatement(INSERT_DEVELOPER_SQL);
+        
+        String sql = "insert into gros.project_developer (project_id, developer_id, name, display_name, email, encryption, team_id) values (?,?,?,?,?,?,?);";
         insertProjectDeveloperStmt = new BatchedStatement(sql);
         
         sql = "insert into gros.ldap_developer (project_id, name, display_name, email, jira_dev_id) values (?,?,?,?,?);";
@@ -137,22 +144,44 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
     }
     
     /**
-     * Inserts a developer in the developer table. 
+     * Inserts a developer in the developer table, unless it was already
+     * inserted by another import. Projects that are imported concurrently may
+     * encounter the same new developer, so the insertion is serialized and
+     * performed on a connection outside of any import transaction, such that
+     * the row is visible to the other imports immediately. This is deliberate:
+     * if the import is rolled back, then the developer remains, like the
+     * encryption salts, and a later import uses it again.
      * @param dev Developer object with at least name and display name.
+     * @return The developer ID of the new or existing developer
      * @throws SQLException If a database access error occurs
      * @throws PropertyVetoException If the database connection cannot be configured
      */
-    public void insert_developer(Developer dev) throws SQLException, PropertyVetoException {
-        PreparedStatement pstmt = insertDeveloperStmt.getPreparedStatement();
-        
-        pstmt.setString(1, dev.getName());
-        pstmt.setString(2, dev.getDisplayName());
-        setString(pstmt, 3, dev.getEmail());
-        pstmt.setBoolean(4, dev.matchEmailDomain(localDomain));
-        
-        // Insert immediately because we need to have the developer ID available
-        // in the ImpDeveloper importer.
-        pstmt.execute();
+    public int insert_developer(Developer dev) throws SQLException, PropertyVetoException {
+        Lock lock = SharedCache.getLock("gros.developer");
+        lock.lock();
+        try (
+            Connection con = DataSource.getInstance().getPooledConnection();
+            PreparedStatement checkStmt = con.prepareStatement(CHECK_DEVELOPER_SQL)
+        ) {
+            int idDeveloper = query_developer(checkStmt, dev);
+            if (idDeveloper == 0) {
+                try (PreparedStatement pstmt = con.prepareStatement(INSERT_DEVELOPER_SQL)) {
+                    pstmt.setString(1, dev.getName());
+                    pstmt.setString(2, dev.getDisplayName());
+                    setString(pstmt, 3, dev.getEmail());
+                    pstmt.setBoolean(4, dev.matchEmailDomain(localDomain));
+
+                    // Insert immediately because we need to have the developer ID available
+                    // in the ImpDeveloper importer.
+                    pstmt.execute();
+                }
+                idDeveloper = query_developer(checkStmt, dev);
+            }
+            return idDeveloper;
+        }
+        finally {
+            lock.unlock();
+        }
     }
     
     /**
@@ -176,10 +205,8 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
         linkVcsDeveloperStmt.execute();
         linkVcsDeveloperStmt.close();
         
-        if (vcsNameCache != null) {
-            vcsNameCache.clear();
-            vcsNameCache = null;
-        }
+        // The cache may be shared with other DAOs, so only drop the reference
+        vcsNameCache = null;
 
         insertProjectDeveloperStmt.execute();
         insertProjectDeveloperStmt.close();
@@ -201,6 +228,8 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
         checkTfsDeveloperStmt = null;
         insertTfsDeveloperStmt.execute();
         insertTfsDeveloperStmt.close();
+        
+        saltDb.close();
     }
     
     /**
@@ -219,8 +248,7 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
     private void getCheckDeveloperStmt() throws SQLException, PropertyVetoException {
         if (checkDeveloperStmt == null) {
             Connection con = insertDeveloperStmt.getConnection();
-            String sql = "SELECT id FROM gros.developer WHERE ((encryption=? AND (UPPER(name) = ? OR UPPER(display_name) = ? OR UPPER(email) = ?)) OR (encryption=? AND (name=? OR display_name=? OR email=?)))";
-            checkDeveloperStmt = con.prepareStatement(sql);
+            checkDeveloperStmt = con.prepareStatement(CHECK_DEVELOPER_SQL);
         }
     }
     
@@ -233,9 +261,12 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
      * @throws PropertyVetoException If the database connection cannot be configured
      */
     public int check_developer(Developer dev) throws SQLException, PropertyVetoException {
-        int idDeveloper = 0;
         getCheckDeveloperStmt();
-        
+        return query_developer(checkDeveloperStmt, dev);
+    }
+    
+    private int query_developer(PreparedStatement checkStmt, Developer dev) throws SQLException, PropertyVetoException {
+        int idDeveloper = 0;
         String name = dev.getName();
         String display_name = dev.getDisplayName();
         String email = dev.getEmail();
@@ -243,20 +274,18 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
             email = name;
         }
         
-        checkDeveloperStmt.setInt(1, SaltDb.Encryption.NONE);
-        setString(checkDeveloperStmt, 2, caseFold(name));
-        setString(checkDeveloperStmt, 3, caseFold(display_name));
-        setString(checkDeveloperStmt, 4, caseFold(email));
+        checkStmt.setInt(1, SaltDb.Encryption.NONE);
+        setString(checkStmt, 2, caseFold(name));
+        setString(checkStmt, 3, caseFold(display_name));
+        setString(checkStmt, 4, caseFold(email));
         
-        checkDeveloperStmt.setInt(5, SaltDb.Encryption.GLOBAL);
-        try (SaltDb saltDb = new SaltDb()) {
-            SaltDb.SaltPair pair = saltDb.get_salt(0);
-            setString(checkDeveloperStmt, 6, saltDb.hash(name, pair));
-            setString(checkDeveloperStmt, 7, saltDb.hash(display_name, pair));
-            setString(checkDeveloperStmt, 8, saltDb.hash(email, pair));
-        }
+        checkStmt.setInt(5, SaltDb.Encryption.GLOBAL);
+        SaltDb.SaltPair pair = saltDb.get_salt(0);
+        setString(checkStmt, 6, saltDb.hash(name, pair));
+        setString(checkStmt, 7, saltDb.hash(display_name, pair));
+        setString(checkStmt, 8, saltDb.hash(email, pair));
         
-        try (ResultSet rs = checkDeveloperStmt.executeQuery()) {
+        try (ResultSet rs = checkStmt.executeQuery()) {
             while (rs.next()) {
                 idDeveloper = rs.getInt("id");
             }
@@ -268,16 +297,14 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
     private void getInsertVcsDeveloperStmt() throws SQLException, PropertyVetoException {
         if (insertVcsDeveloperStmt == null) {
             Connection con = insertDeveloperStmt.getConnection();
-            String sql = "insert into gros.vcs_developer (jira_dev_id, display_name, email, encryption) values (?,?,?,?);";
-            insertVcsDeveloperStmt = con.prepareStatement(sql);
+            insertVcsDeveloperStmt = con.prepareStatement(INSERT_VCS_DEVELOPER_SQL);
         } 
     }
     
     private void getCheckVcsDeveloperStmt() throws SQLException, PropertyVetoException {
         if (checkVcsDeveloperStmt == null) {
             Connection con = insertDeveloperStmt.getConnection();
-            String sql = "SELECT alias_id FROM gros.vcs_developer WHERE ((encryption=? AND UPPER(display_name) = ?) OR (encryption=? AND display_name=?))";
-            checkVcsDeveloperStmt = con.prepareStatement(sql);
+            checkVcsDeveloperStmt = con.prepareStatement(CHECK_VCS_DEVELOPER_SQL);
         }
     }
     
@@ -285,7 +312,11 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
         if (vcsNameCache != null) {
             return;
         }
-        vcsNameCache = new HashMap<>();
+        vcsNameCache = SharedCache.get("gros.vcs_developer", this::loadVcsNameCache);
+    }
+    
+    private Map<String, Integer> loadVcsNameCache() throws SQLException, PropertyVetoException {
+        Map<String, Integer> cache = new ConcurrentHashMap<>();
         
         Connection con = insertDeveloperStmt.getConnection();
         String sql = "SELECT display_name, alias_id, encryption FROM gros.vcs_developer";
@@ -300,9 +331,10 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
                 if (encryption == SaltDb.Encryption.NONE) {
                     display_name = caseFold(display_name);
                 }
-                vcsNameCache.put(display_name, id);
+                cache.put(display_name, id);
             }
         }
+        return cache;
     }
     
     private void getSearchVcsDeveloperStmt() throws SQLException, PropertyVetoException {
@@ -353,52 +385,59 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
     public int check_vcs_developer(String display_name, int encryption) throws SQLException, PropertyVetoException {
         fillVcsNameCache();
         
-        String plain_name;
-        String encrypted_name;
-        if (encryption == SaltDb.Encryption.NONE) {
-            plain_name = caseFold(display_name);
-            try (SaltDb saltDb = new SaltDb()) {
-                SaltDb.SaltPair pair = saltDb.get_salt(0);
-                encrypted_name = saltDb.hash(display_name, pair);
-                encryption = SaltDb.Encryption.GLOBAL;
-            }
-        }
-        else {
-            // Cannot decrypt the display name at this point
-            plain_name = display_name;
-            encrypted_name = display_name;
-        }
-        
-        Integer cacheId = vcsNameCache.get(plain_name);
+        String[] names = getVcsNames(display_name, encryption);
+        Integer cacheId = vcsNameCache.get(names[0]);
         if (cacheId != null) {
             return cacheId;
         }
-        cacheId = vcsNameCache.get(encrypted_name);
+        cacheId = vcsNameCache.get(names[1]);
         if (cacheId != null) {
             return cacheId;
         }
         
-        Integer idDeveloper = null;
         getCheckVcsDeveloperStmt();
+        return query_vcs_developer(checkVcsDeveloperStmt, names, encryption);
+    }
+    
+    /**
+     * Determine the names to match a VCS developer display name with.
+     * @param display_name The display name
+     * @param encryption The encryption level of the display name
+     * @return The case-folded plain name and the encrypted name, which are
+     * the same if the display name is already encrypted
+     * @throws SQLException If a database access error occurs
+     * @throws PropertyVetoException If the database connection cannot be configured
+     */
+    private String[] getVcsNames(String display_name, int encryption) throws SQLException, PropertyVetoException {
+        if (encryption == SaltDb.Encryption.NONE) {
+            SaltDb.SaltPair pair = saltDb.get_salt(0);
+            return new String[]{caseFold(display_name), saltDb.hash(display_name, pair)};
+        }
+        // Cannot decrypt the display name at this point
+        return new String[]{display_name, display_name};
+    }
+    
+    private int query_vcs_developer(PreparedStatement checkStmt, String[] names, int encryption) throws SQLException {
+        Integer idDeveloper = null;
         
-        checkVcsDeveloperStmt.setInt(1, SaltDb.Encryption.NONE);
-        checkVcsDeveloperStmt.setString(2, plain_name);
-        checkVcsDeveloperStmt.setInt(3, encryption);
-        checkVcsDeveloperStmt.setString(4, encrypted_name);
+        checkStmt.setInt(1, SaltDb.Encryption.NONE);
+        checkStmt.setString(2, names[0]);
+        checkStmt.setInt(3, encryption == SaltDb.Encryption.NONE ? SaltDb.Encryption.GLOBAL : encryption);
+        checkStmt.setString(4, names[1]);
         
-        try (ResultSet rs = checkVcsDeveloperStmt.executeQuery()) {
+        try (ResultSet rs = checkStmt.executeQuery()) {
             while (rs.next()) {
                 idDeveloper = rs.getInt("alias_id");
             }
         }
         
-        vcsNameCache.put(plain_name, idDeveloper);
-        vcsNameCache.put(encrypted_name, idDeveloper);
-        
         if (idDeveloper == null) {
             return 0;
         }
         
+        vcsNameCache.put(names[0], idDeveloper);
+        vcsNameCache.put(names[1], idDeveloper);
+        
         return idDeveloper;
     }
     
@@ -410,6 +449,11 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
      * this method inserts the developer in the VCS developer table, linking it
      * with the global developer if a match can be made via the project developer
      * table (using the encryption level or higher levels of encryption).
+     * Projects that are imported concurrently may encounter the same new
+     * developer, so the insertion is serialized, checks the table again and
+     * is performed on a connection outside of any import transaction, such
+     * that the row is visible to the other imports immediately. The developer
+     * remains if the import is rolled back, and a later import uses it again.
      * @param project_id The project that the developer works on.
      * @param dev The developer to check and possibly insert
      * @param encryption The encryption level of the provided developer properties
@@ -421,14 +465,36 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
     public int update_vcs_developer(int project_id, Developer dev, int encryption) throws SQLException, PropertyVetoException {
         String display_name = dev.getDisplayName();
         int vcs_developer_id = check_vcs_developer(display_name, encryption);
-        if (vcs_developer_id == 0) {
-            // If the VCS developer does not exist, create a new VCS developer
-            // Check if JIRA developer exists with the same (short) name or email
-            // This may return 0, which indicates that it should be linked (manually) later.
-            int jira_developer_id = check_project_developer(project_id, dev, encryption);
-            insert_vcs_developer(jira_developer_id, dev, encryption);
-            // Retrieve new VCS developer ID
-            vcs_developer_id = check_vcs_developer(display_name, encryption);
+        if (vcs_developer_id != 0) {
+            return vcs_developer_id;
+        }
+        
+        String[] names = getVcsNames(display_name, encryption);
+        Lock lock = SharedCache.getLock("gros.vcs_developer");
+        lock.lock();
+        try (
+            Connection con = DataSource.getInstance().getPooledConnection();
+            PreparedStatement checkStmt = con.prepareStatement(CHECK_VCS_DEVELOPER_SQL)
+        ) {
+            vcs_developer_id = query_vcs_developer(checkStmt, names, encryption);
+            if (vcs_developer_id == 0) {
+                // If the VCS developer does not exist, create a new VCS developer
+                // Check if JIRA developer exists with the same (short) name or email
+                // This may return 0, which indicates that it should be linked (manually) later.
+                int jira_developer_id = check_project_developer(project_id, dev, encryption);
+                try (PreparedStatement pstmt = con.prepareStatement(INSERT_VCS_DEVELOPER_SQL)) {
+                    pstmt.setInt(1, jira_developer_id);
+                    pstmt.setString(2, dev.getDisplayName());
+                    setString(pstmt, 3, dev.getEmail());
+                    pstmt.setInt(4, encryption);
+                    pstmt.execute();
+                }
+                // Retrieve new VCS developer ID
+                vcs_developer_id = query_vcs_developer(checkStmt, names, encryption);
+            }
+        }
+        finally {
+            lock.unlock();
         }
 
         return vcs_developer_id;
@@ -485,12 +551,10 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
         setString(pstmt, 3, dev.getDisplayName());
         setString(pstmt, 4, dev.getEmail());
 
-        try (SaltDb saltDb = new SaltDb()) {
-            SaltDb.SaltPair pair = saltDb.get_salt(project_id);
-            pstmt.setInt(5, project_id == 0 ? SaltDb.Encryption.GLOBAL : SaltDb.Encryption.PROJECT);
-            setString(pstmt, 6, saltDb.hash(dev.getDisplayName(), pair));
-            setString(pstmt, 7, saltDb.hash(dev.getEmail(), pair));
-        }
+        SaltDb.SaltPair pair = saltDb.get_salt(project_id);
+        pstmt.setInt(5, project_id == 0 ? SaltDb.Encryption.GLOBAL : SaltDb.Encryption.PROJECT);
+        setString(pstmt, 6, saltDb.hash(dev.getDisplayName(), pair));
+        setString(pstmt, 7, saltDb.hash(dev.getEmail(), pair));
         
         linkVcsDeveloperStmt.batch();
         return true;
@@ -551,20 +615,18 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
         
         PreparedStatement pstmt = insertProjectDeveloperStmt.getPreparedStatement();
         
-        try (SaltDb saltDb = new SaltDb()) {
-            SaltDb.SaltPair pair = saltDb.get_salt(project_id);
-            
-            pstmt.setInt(1, project_id);
-            pstmt.setInt(2, dev_id);
-            pstmt.setString(3, saltDb.hash(dev.getName(), pair));
-            setString(pstmt, 4, saltDb.hash(dev.getDisplayName(), pair));
-            setString(pstmt, 5, saltDb.hash(dev.getEmail(), pair));
-            pstmt.setInt(6, SaltDb.Encryption.PROJECT);
-            setInteger(pstmt, 7, team_id);
+        SaltDb.SaltPair pair = saltDb.get_salt(project_id);
+        
+        pstmt.setInt(1, project_id);
+        pstmt.setInt(2, dev_id);
+        pstmt.setString(3, saltDb.hash(dev.getName(), pair));
+        setString(pstmt, 4, saltDb.hash(dev.getDisplayName(), pair));
+        setString(pstmt, 5, saltDb.hash(dev.getEmail(), pair));
+        pstmt.setInt(6, SaltDb.Encryption.PROJECT);
+        setInteger(pstmt, 7, team_id);
     
-            // Execute immediately to avoid primary key constraint violations
-            pstmt.execute();
-        }
+        // Execute immediately to avoid primary key constraint violations
+        pstmt.execute();
     }
 
     /**
@@ -615,13 +677,11 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
         String display_name = dev.getDisplayName();
         String email = dev.getEmail();
         if (encryption == SaltDb.Encryption.NONE) {
-            try (SaltDb saltDb = new SaltDb()) {
-                SaltDb.SaltPair pair = saltDb.get_salt(project_id);
-                name = saltDb.hash(name, pair);
-                display_name = saltDb.hash(display_name, pair);
-                email = saltDb.hash(email, pair);
-                encryption = SaltDb.Encryption.PROJECT;
-            }
+            SaltDb.SaltPair pair = saltDb.get_salt(project_id);
+            name = saltDb.hash(name, pair);
+            display_name = saltDb.hash(display_name, pair);
+            email = saltDb.hash(email, pair);
+            encryption = SaltDb.Encryption.PROJECT;
         }
         
         checkProjectDeveloperStmt.setInt(1, project_id);
@@ -729,11 +789,9 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
         String encrypted_name;
         if (encryption == SaltDb.Encryption.NONE) {
             plain_name = dev.getName();
-            try (SaltDb saltDb = new SaltDb()) {
-                SaltDb.SaltPair pair = saltDb.get_salt(project_id);
-                encrypted_name = saltDb.hash(dev.getName(), pair);
-                encryption = SaltDb.Encryption.PROJECT;
-            }
+            SaltDb.SaltPair pair = saltDb.get_salt(project_id);
+            encrypted_name = saltDb.hash(dev.getName(), pair);
+            encryption = SaltDb.Encryption.PROJECT;
         }
         else {
             // Cannot decrypt the display name at this point
@@ -799,12 +857,10 @@ public class DeveloperDb extends BaseDb implements AutoCloseable {
         setString(pstmt, 3, dev.getDisplayName());
         setString(pstmt, 4, dev.getEmail());
 
-        try (SaltDb saltDb = new SaltDb()) {
-            SaltDb.SaltPair pair = saltDb.get_salt(project_id);
-            pstmt.setInt(5, SaltDb.Encryption.PROJECT);
-            setString(pstmt, 6, saltDb.hash(dev.getDisplayName(), pair));
-            setString(pstmt, 7, saltDb.hash(dev.getEmail(), pair));
-        }
+        SaltDb.SaltPair pair = saltDb.get_salt(project_id);
+        pstmt.setInt(5, SaltDb.Encryption.PROJECT);
+        setString(pstmt, 6, saltDb.hash(dev.getDisplayName(), pair));
+        setString(pstmt, 7, saltDb.hash(dev.getEmail(), pair));
         
         linkLdapDeveloperStmt.batch();
         return true;
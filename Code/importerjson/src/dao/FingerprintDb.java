@@ -0,0 +1,145 @@
+/**
+ * Fingerprint table.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.beans.PropertyVetoException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import util.BaseDb;
+import util.FileFingerprint;
+
+/**
+ * Database access management for the fingerprints of imported export files.
+ * @author Leon Helwerda
+ */
+public class FingerprintDb extends BaseDb implements AutoCloseable {
+    private BatchedStatement insertStmt = null;
+    private PreparedStatement checkStmt = null;
+    private BatchedStatement updateStmt = null;
+    
+    public FingerprintDb() {
+        insertStmt = new BatchedStatement("insert into gros.import_fingerprint(project_id,import_name,filename,size,update_date,hash) values (?,?,?,?,?,?);");
+        updateStmt = new BatchedStatement("update gros.import_fingerprint set size=?, update_date=?, hash=? where project_id=? and import_name=? and filename=?");
+    }
+    
+    private void getCheckStmt() throws SQLException, PropertyVetoException {
+        if (checkStmt == null) {
+            Connection con = insertStmt.getConnection();
+            checkStmt = con.prepareStatement("select filename, size, update_date, hash from gros.import_fingerprint where project_id=? and import_name=?");
+        }
+    }
+    
+    /**
+     * Retrieve the fingerprints of the files of an import task for a project
+     * from its latest successful import.
+     * @param project_id Identifier of the project
+     * @param import_name The name of the import task
+     * @return The fingerprints of the files, keyed by the name of the file
+     * (without path)
+     * @throws SQLException If a database access error occurs
+     * @throws PropertyVetoException If the database connection cannot be configured
+     */
+    public Map<String, FileFingerprint> get_fingerprints(int project_id, String import_name) throws SQLException, PropertyVetoException {
+        getCheckStmt();
+        
+        Map<String, FileFingerprint> fingerprints = new HashMap<>();
+        checkStmt.setInt(1, project_id);
+        checkStmt.setString(2, import_name);
+        try (ResultSet rs = checkStmt.executeQuery()) {
+            while (rs.next()) {
+                Timestamp update_date = rs.getTimestamp("update_date");
+                fingerprints.put(rs.getString("filename"), new FileFingerprint(rs.getLong("size"),
+                        update_date == null ? 0 : update_date.getTime(), rs.getLong("hash")));
+            }
+        }
+        
+        return fingerprints;
+    }
+    
+    /**
+     * Insert a new fingerprint of a file of an import task in the database.
+     * @param project_id Identifier of the project
+     * @param import_name The name of the import task
+     * @param filename The name of the file (without path)
+     * @param fingerprint The fingerprint of the file
+     * @throws SQLException If a database access error occurs
+     * @throws PropertyVetoException If the database connection cannot be configured
+     */
+    public void insert_fingerprint(int project_id, String import_name, String filename, FileFingerprint fingerprint) throws SQLException, PropertyVetoException {
+        PreparedStatement pstmt = insertStmt.getPreparedStatement();
+        
+        pstmt.setInt(1, project_id);
+        pstmt.setString(2, import_name);
+        pstmt.setString(3, filename);
+        pstmt.setLong(4, fingerprint.getSize());
+        setModified(pstmt, 5, fingerprint);
+        pstmt.setLong(6, fingerprint.getHash());
+        
+        insertStmt.batch();
+    }
+    
+    /**
+     * Update an existing fingerprint of a file of an import task in the database.
+     * @param project_id Identifier of the project
+     * @param import_name The name of the import task
+     * @param filename The name of the file (without path)
+     * @param fingerprint The fingerprint of the file
+     * @throws SQLException If a database access error occurs
+     * @throws PropertyVetoException If the database connection cannot be configured
+     */
+    public void update_fingerprint(int project_id, String import_name, String filename, FileFingerprint fingerprint) throws SQLException, PropertyVetoException {
+        PreparedStatement pstmt = updateStmt.getPreparedStatement();
+        
+        pstmt.setLong(1, fingerprint.getSize());
+        setModified(pstmt, 2, fingerprint);
+        pstmt.setLong(3, fingerprint.getHash());
+
+        pstmt.setInt(4, project_id);
+        pstmt.setString(5, import_name);
+        pstmt.setString(6, filename);
+        
+        updateStmt.batch();
+    }
+    
+    private void setModified(PreparedStatement pstmt, int index, FileFingerprint fingerprint) throws SQLException {
+        Timestamp update_date = fingerprint.getModified() == 0 ? null : new Timestamp(fingerprint.getModified());
+        setTimestamp(pstmt, index, update_date);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        insertStmt.execute();
+        insertStmt.close();
+        
+        updateStmt.execute();
+        updateStmt.close();
+        
+        if (checkStmt != null) {
+            checkStmt.close();
+            checkStmt = null;
+        }
+    }
+    
+}
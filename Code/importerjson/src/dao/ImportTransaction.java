@@ -0,0 +1,180 @@
+/**
+ * Transaction scope of an import task.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A database transaction that spans all the statements of an import task
+ * which run on the thread that started the transaction. The transaction is
+ * a connection scope, so the data source provides the same connection to
+ * every DAO and batched statement of the thread, but with automatic commits
+ * disabled. Closing that connection does not end the transaction.
+ *
+ * The transaction is committed when the task succeeds, and rolled back when
+ * it is closed without a commit. Large imports can commit in between, after
+ * a number of rows configured by the "importer.commit_rows" property or
+ * a number of seconds configured by the "importer.commit_seconds" property
+ * have passed since the previous commit. Such commits are only rolled back
+ * up to the previous commit. Transactions are used when the
+ * "importer.transactions" property is set to true. A rollback drops the
+ * shared caches of global tables, since they may contain rolled back rows.
+ * @author Leon Helwerda
+ */
+public final class ImportTransaction extends ConnectionScope {
+    private final long commitRows;
+    private final long commitMillis;
+    private long pendingRows = 0;
+    private long lastCommit;
+    private int commits = 0;
+    private boolean committed = false;
+
+    private ImportTransaction(long commitRows, long commitMillis) {
+        this.commitRows = commitRows;
+        this.commitMillis = commitMillis;
+        this.lastCommit = System.currentTimeMillis();
+    }
+
+    /**
+     * Check whether import tasks should run in transactions.
+     * @return Whether the "importer.transactions" property is enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("importer.transactions");
+    }
+
+    /**
+     * Start a transaction for the current thread, with the commit interval
+     * from the configuration.
+     * @return The transaction
+     * @throws IllegalStateException If the thread already has a transaction
+     * or another connection scope
+     */
+    public static ImportTransaction begin() {
+        return begin(Long.getLong("importer.commit_rows", 0), Long.getLong("importer.commit_seconds", 0) * 1000);
+    }
+
+    /**
+     * Start a transaction for the current thread.
+     * @param commitRows The number of written rows after which the transaction
+     * commits in between, or 0 to not commit based on rows
+     * @param commitMillis The number of milliseconds after which the
+     * transaction commits in between, or 0 to not commit based on time
+     * @return The transaction
+     * @throws IllegalStateException If the thread already has a transaction
+     * or another connection scope
+     */
+    public static ImportTransaction begin(long commitRows, long commitMillis) {
+        return enter(new ImportTransaction(commitRows, commitMillis));
+    }
+
+    /**
+     * Retrieve the transaction of the current thread.
+     * @return The active transaction, or null if there is none
+     */
+    public static ImportTransaction getCurrent() {
+        ConnectionScope scope = ConnectionScope.getCurrent();
+        return scope instanceof ImportTransaction ? (ImportTransaction)scope : null;
+    }
+
+    /**
+     * Register rows that a statement has written on the current thread.
+     * If the thread has a transaction and the commit interval has passed,
+     * then the transaction is committed.
+     * @param rows The number of rows
+     * @throws SQLException If a database access error occurs
+     */
+    public static void count(int rows) throws SQLException {
+        ImportTransaction transaction = getCurrent();
+        if (transaction != null) {
+            transaction.register(rows);
+        }
+    }
+
+    private void register(int rows) throws SQLException {
+        pendingRows += rows;
+        committed = false;
+        if ((commitRows > 0 && pendingRows >= commitRows) ||
+                (commitMillis > 0 && System.currentTimeMillis() - lastCommit >= commitMillis)) {
+            commit();
+        }
+    }
+
+    @Override
+    protected void prepare(Connection con) throws SQLException {
+        con.setAutoCommit(false);
+    }
+
+    /**
+     * Commit the changes made so far in the transaction.
+     * @throws SQLException If a database access error occurs
+     */
+    public void commit() throws SQLException {
+        Connection con = getPooled();
+        if (con != null) {
+            con.commit();
+            commits++;
+            Logger.getLogger("importer").log(Level.FINE, "Committed {0} rows in transaction", pendingRows);
+        }
+        pendingRows = 0;
+        lastCommit = System.currentTimeMillis();
+        committed = true;
+    }
+
+    /**
+     * Undo the changes made since the previous commit of the transaction.
+     * @throws SQLException If a database access error occurs
+     */
+    public void rollback() throws SQLException {
+        Connection con = getPooled();
+        if (con != null) {
+            con.rollback();
+            Logger.getLogger("importer").log(Level.WARNING, "Rolled back {0} rows in transaction", pendingRows);
+            // Shared caches may refer to rows that no longer exist
+            SharedCache.clear();
+        }
+        pendingRows = 0;
+    }
+
+    /**
+     * Retrieve the number of commits that the transaction has made.
+     * @return The number of commits
+     */
+    public int getCommits() {
+        return commits;
+    }
+
+    /**
+     * Roll back the changes since the previous commit, unless no rows were
+     * written since then, before the connection is returned to the pool.
+     * @param con The connection
+     * @throws SQLException If a database access error occurs
+     */
+    @Override
+    protected void release(Connection con) throws SQLException {
+        if (!committed) {
+            rollback();
+        }
+        con.setAutoCommit(true);
+    }
+}
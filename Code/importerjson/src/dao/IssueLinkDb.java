@@ -26,8 +26,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import util.BaseLinkDb;
 
 /**
@@ -95,7 +96,7 @@ public class IssueLinkDb extends BaseLinkDb implements AutoCloseable {
         }
     }
     
-    private HashMap<Link, LinkDates> linkCache = null;
+    private Map<Link, LinkDates> linkCache = null;
     
     private BatchedStatement insertStmt = null;
     private PreparedStatement checkStmt = null;
@@ -120,7 +121,11 @@ public class IssueLinkDb extends BaseLinkDb implements AutoCloseable {
         if (linkCache != null) {
             return;
         }
-        linkCache = new HashMap<>();
+        linkCache = SharedCache.get("gros.issuelink", this::loadLinkCache);
+    }
+    
+    private Map<Link, LinkDates> loadLinkCache() throws SQLException, PropertyVetoException {
+        Map<Link, LinkDates> cache = new ConcurrentHashMap<>();
         
         Connection con = insertStmt.getConnection();
         String sql = "SELECT from_key, to_key, relationship_type, outward, start_date,end_date FROM gros.issuelink";
@@ -131,9 +136,21 @@ public class IssueLinkDb extends BaseLinkDb implements AutoCloseable {
             while (rs.next()) {
                 Link link = new Link(rs.getString("from_key"), rs.getString("to_key"), rs.getInt("relationship_type"), rs.getBoolean("outward"));
                 LinkDates dates = new LinkDates(rs.getTimestamp("start_date"), rs.getTimestamp("end_date"));
-                linkCache.put(link, dates);
+                cache.put(link, dates);
             }
         }
+        return cache;
+    }
+    
+    /**
+     * Retrieve the cache of links if it is filled by this or another DAO.
+     * @return The cache, or null if it is not filled
+     */
+    private Map<Link, LinkDates> getLinkCache() {
+        if (linkCache != null) {
+            return linkCache;
+        }
+        return SharedCache.peek("gros.issuelink");
     }
     
     /**
@@ -208,10 +225,11 @@ public class IssueLinkDb extends BaseLinkDb implements AutoCloseable {
                              
         insertStmt.batch();
         
-        if (linkCache != null) {
+        Map<Link, LinkDates> cache = getLinkCache();
+        if (cache != null) {
             Link link = new Link(from_key, to_key, relationship_type, outward);
             LinkDates dates = new LinkDates(start_date, end_date);
-            linkCache.put(link, dates);
+            cache.put(link, dates);
         }
     }
     
@@ -239,10 +257,11 @@ public class IssueLinkDb extends BaseLinkDb implements AutoCloseable {
 
         updateStmt.batch();
         
-        if (linkCache != null) {
+        Map<Link, LinkDates> cache = getLinkCache();
+        if (cache != null) {
             Link link = new Link(from_key, to_key, relationship_type, outward);
             LinkDates dates = new LinkDates(start_date, end_date);
-            linkCache.put(link, dates);
+            cache.put(link, dates);
         }
     }
     
@@ -259,9 +278,7 @@ public class IssueLinkDb extends BaseLinkDb implements AutoCloseable {
             checkStmt = null;
         }
         
-        if (linkCache != null) {
-            linkCache.clear();
-            linkCache = null;
-        }
+        // The cache may be shared with other DAOs, so only drop the reference
+        linkCache = null;
     }
 }
@@ -0,0 +1,328 @@
+/**
+ * Tuple of key values of a table row.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An immutable tuple of values of the key fields of a row, which is used to
+ * look up the row in batches of check statements and key indexes. The hash
+ * code is computed once. Tuples of one integer, two integers, or an integer
+ * and a string store the integers without boxing. Tuples are only comparable
+ * with tuples created by a factory for the same field types.
+ * @author Leon Helwerda
+ */
+public abstract class Key {
+    /**
+     * A creator of key tuples for fields with certain types.
+     */
+    public interface Factory {
+        /**
+         * Create a key tuple from values.
+         * @param values The values of the key fields
+         * @return The key tuple
+         */
+        Key of(Object[] values);
+
+        /**
+         * Create a key tuple from the current row of a result set.
+         * @param rs The result set
+         * @param names The names of the key fields in the result set
+         * @return The key tuple
+         * @throws SQLException If a database access error occurs
+         */
+        Key read(ResultSet rs, String[] names) throws SQLException;
+    }
+
+    private final int hash;
+
+    /**
+     * Create a key tuple.
+     * @param hash The hash code of the tuple
+     */
+    protected Key(int hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * Retrieve a factory for key tuples with fields of the provided SQL types.
+     * @param types The SQL types of the key fields
+     * @return The factory
+     */
+    public static Factory forTypes(int[] types) {
+        if (types.length == 1 && types[0] == Types.INTEGER) {
+            return new Factory() {
+                @Override
+                public Key of(Object[] values) {
+                    return new IntKey(toInt(values[0]));
+                }
+
+                @Override
+                public Key read(ResultSet rs, String[] names) throws SQLException {
+                    return new IntKey(rs.getInt(names[0]));
+                }
+            };
+        }
+        if (types.length == 2 && types[0] == Types.INTEGER && types[1] == Types.INTEGER) {
+            return new Factory() {
+                @Override
+                public Key of(Object[] values) {
+                    return new IntPairKey(toInt(values[0]), toInt(values[1]));
+                }
+
+                @Override
+                public Key read(ResultSet rs, String[] names) throws SQLException {
+                    return new IntPairKey(rs.getInt(names[0]), rs.getInt(names[1]));
+                }
+            };
+        }
+        if (types.length == 2 && (types[0] == Types.INTEGER) != (types[1] == Types.INTEGER) &&
+                isString(types[0]) != isString(types[1])) {
+            final int position = types[0] == Types.INTEGER ? 0 : 1;
+            return new Factory() {
+                @Override
+                public Key of(Object[] values) {
+                    return new IntStringKey(position, toInt(values[position]), (String)values[1 - position]);
+                }
+
+                @Override
+                public Key read(ResultSet rs, String[] names) throws SQLException {
+                    return new IntStringKey(position, rs.getInt(names[position]), rs.getString(names[1 - position]));
+                }
+            };
+        }
+        return new Factory() {
+            @Override
+            public Key of(Object[] values) {
+                return new ObjectKey(Arrays.copyOf(values, values.length));
+            }
+
+            @Override
+            public Key read(ResultSet rs, String[] names) throws SQLException {
+                Object[] values = new Object[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    values[i] = rs.getObject(names[i]);
+                }
+                return new ObjectKey(values);
+            }
+        };
+    }
+
+    private static boolean isString(int type) {
+        return type == Types.VARCHAR || type == Types.CHAR || type == Types.LONGVARCHAR;
+    }
+
+    private static int toInt(Object value) {
+        return ((Number)value).intValue();
+    }
+
+    /**
+     * Mix the bits of a hash code.
+     * @param z The value to mix
+     * @return The mixed value
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Retrieve the number of values in the tuple.
+     * @return The number of key fields
+     */
+    public abstract int size();
+
+    /**
+     * Retrieve a value of the tuple.
+     * @param index The index of the key field
+     * @return The value
+     */
+    public abstract Object get(int index);
+
+    /**
+     * Retrieve the values of the tuple.
+     * @return A new array with the values of the key fields
+     */
+    public Object[] toArray() {
+        Object[] values = new Object[size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Compute a 64-bit hash of the tuple for probabilistic filters.
+     * @return The hash
+     */
+    public long longHash() {
+        long value = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < size(); i++) {
+            Object item = get(i);
+            value = mix(value ^ (item == null ? 0 : item.hashCode()));
+        }
+        return value;
+    }
+
+    @Override
+    public final int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private static final class IntKey extends Key {
+        private final int value;
+
+        IntKey(int value) {
+            super((int)mix(value));
+            this.value = value;
+        }
+
+        @Override
+        public int size() {
+            return 1;
+        }
+
+        @Override
+        public Object get(int index) {
+            return value;
+        }
+
+        @Override
+        public long longHash() {
+            return mix(value + 0x9E3779B97F4A7C15L);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IntKey && ((IntKey)other).value == value;
+        }
+    }
+
+    private static final class IntPairKey extends Key {
+        private final int first;
+        private final int second;
+
+        IntPairKey(int first, int second) {
+            super((int)mix(((long)first << 32) | (second & 0xFFFFFFFFL)));
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int size() {
+            return 2;
+        }
+
+        @Override
+        public Object get(int index) {
+            return index == 0 ? first : second;
+        }
+
+        @Override
+        public long longHash() {
+            return mix(mix(first + 0x9E3779B97F4A7C15L) ^ second);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof IntPairKey)) {
+                return false;
+            }
+            IntPairKey key = (IntPairKey)other;
+            return key.first == first && key.second == second;
+        }
+    }
+
+    private static final class IntStringKey extends Key {
+        private final int position;
+        private final int number;
+        private final String text;
+
+        IntStringKey(int position, int number, String text) {
+            super((int)mix(((long)number << 32) ^ Objects.hashCode(text)));
+            this.position = position;
+            this.number = number;
+            this.text = text;
+        }
+
+        @Override
+        public int size() {
+            return 2;
+        }
+
+        @Override
+        public Object get(int index) {
+            return index == position ? number : text;
+        }
+
+        @Override
+        public long longHash() {
+            return mix(mix(number + 0x9E3779B97F4A7C15L) ^ Objects.hashCode(text));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof IntStringKey)) {
+                return false;
+            }
+            IntStringKey key = (IntStringKey)other;
+            return key.number == number && key.position == position && Objects.equals(key.text, text);
+        }
+    }
+
+    private static final class ObjectKey extends Key {
+        private final Object[] values;
+
+        ObjectKey(Object[] values) {
+            super((int)mix(Arrays.hashCode(values)));
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public Object[] toArray() {
+            return Arrays.copyOf(values, values.length);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ObjectKey && Arrays.equals(((ObjectKey)other).values, values);
+        }
+    }
+}
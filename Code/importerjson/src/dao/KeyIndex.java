@@ -0,0 +1,261 @@
+/**
+ * Preloaded index of key tuples that exist in a table.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * An index of key tuples that exist in a table, which is loaded once before
+ * an import starts and kept up to date with the rows that the import inserts.
+ * When the table holds few enough key tuples, the index is an exact set that
+ * determines whether a key tuple is present or absent. Otherwise, the index is
+ * a Bloom filter, which determines that a key tuple is absent, but for other
+ * key tuples the table must still be queried to know if they exist.
+ *
+ * The number of key tuples up to which the index is exact is configured with
+ * the "importer.key_index_exact" property.
+ * @author Leon Helwerda
+ */
+public class KeyIndex {
+    /**
+     * The outcome of looking up a key tuple in the index.
+     */
+    public enum Result {
+        /** The key tuple exists in the table. */
+        PRESENT,
+        /** The key tuple does not exist in the table. */
+        ABSENT,
+        /** The key tuple may exist in the table. */
+        UNKNOWN
+    }
+
+    private static final int DEFAULT_EXACT = 1000000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * Factor of the number of loaded key tuples to reserve in a Bloom filter
+     * for key tuples that are inserted during the import.
+     */
+    private static final double GROWTH = 1.5;
+
+    private final KeyMap<Boolean> exact;
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+
+    private long size = 0;
+    private long present = 0;
+    private long absent = 0;
+    private long unknown = 0;
+    private long falsePositives = 0;
+
+    /**
+     * Create an exact index.
+     */
+    public KeyIndex() {
+        exact = new KeyMap<>();
+        bits = null;
+        numBits = 0;
+        numHashes = 0;
+    }
+
+    /**
+     * Create an index backed by a Bloom filter.
+     * @param expected The number of key tuples that are expected to be added
+     * @param rate The probability that an absent key tuple is reported as
+     * possibly existing when the expected number of key tuples is added
+     */
+    public KeyIndex(long expected, double rate) {
+        double n = Math.max(expected, 1);
+        long m = (long)Math.ceil(-n * Math.log(rate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, Math.min(m, 64L * Integer.MAX_VALUE));
+        exact = null;
+        bits = new long[(int)((m + 63) / 64)];
+        numBits = bits.length * 64L;
+        numHashes = (int)Math.max(1, Math.min(16, Math.round(numBits / n * Math.log(2))));
+    }
+
+    /**
+     * Load the key tuples of rows in a table that match a condition.
+     * @param con The connection to query the table with
+     * @param table The fully qualified table name (with scheme)
+     * @param keys The names of the key fields
+     * @param keyFactory The factory of key tuples for the types of the keys
+     * @param condition The condition that the rows must match, which may
+     * contain parameters, or null to load all rows of the table
+     * @param parameters The values of the parameters in the condition
+     * @return The loaded index
+     * @throws SQLException If a database access error occurs
+     */
+    public static KeyIndex load(Connection con, String table, String[] keys, Key.Factory keyFactory, String condition, Object... parameters) throws SQLException {
+        String where = condition == null ? "" : " where " + condition;
+        long count;
+        try (PreparedStatement pstmt = con.prepareStatement("select count(*) from " + table + where)) {
+            setParameters(pstmt, parameters);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                count = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        KeyIndex index;
+        if (count <= Integer.getInteger("importer.key_index_exact", DEFAULT_EXACT)) {
+            index = new KeyIndex();
+        }
+        else {
+            index = new KeyIndex((long)(count * GROWTH), FALSE_POSITIVE_RATE);
+        }
+
+        try (PreparedStatement pstmt = con.prepareStatement("select " + String.join(", ", keys) + " from " + table + where)) {
+            setParameters(pstmt, parameters);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    index.add(keyFactory.read(rs, keys));
+                }
+            }
+        }
+        return index;
+    }
+
+    private static void setParameters(PreparedStatement pstmt, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            pstmt.setObject(i + 1, parameters[i]);
+        }
+    }
+
+    /**
+     * Check whether the index is exact rather than a Bloom filter.
+     * @return Whether lookups are either present or absent
+     */
+    public boolean isExact() {
+        return exact != null;
+    }
+
+    /**
+     * Add a key tuple that exists in the table.
+     * @param values The key values
+     */
+    public void add(Key values) {
+        if (exact != null) {
+            if (!exact.containsKey(values)) {
+                exact.put(values, Boolean.TRUE);
+                size++;
+            }
+            return;
+        }
+        long hash = values.longHash();
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + (long)i * h2, numBits);
+            bits[(int)(bit >>> 6)] |= 1L << bit;
+        }
+        size++;
+    }
+
+    /**
+     * Look up a key tuple in the index. The outcome is counted.
+     * @param values The key values
+     * @return Whether the key tuple is present, absent or possibly present
+     */
+    public Result check(Key values) {
+        Result result = lookup(values);
+        switch (result) {
+            case PRESENT -> present++;
+            case ABSENT -> absent++;
+            default -> unknown++;
+        }
+        return result;
+    }
+
+    private Result lookup(Key values) {
+        if (exact != null) {
+            return exact.containsKey(values) ? Result.PRESENT : Result.ABSENT;
+        }
+        long hash = values.longHash();
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + (long)i * h2, numBits);
+            if ((bits[(int)(bit >>> 6)] & (1L << bit)) == 0) {
+                return Result.ABSENT;
+            }
+        }
+        return Result.UNKNOWN;
+    }
+
+    /**
+     * Count key tuples that the index reported as possibly present, but which
+     * turned out to be absent from the table.
+     * @param count The number of absent key tuples
+     */
+    public void countFalsePositives(int count) {
+        falsePositives += count;
+    }
+
+    /**
+     * Retrieve the number of key tuples that were added to the index.
+     * @return The number of key tuples
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Retrieve the number of lookups of key tuples that were present.
+     * @return The number of lookups that skipped both the existence check and
+     * the insert
+     */
+    public long getPresent() {
+        return present;
+    }
+
+    /**
+     * Retrieve the number of lookups of key tuples that were absent.
+     * @return The number of lookups that skipped the existence check
+     */
+    public long getAbsent() {
+        return absent;
+    }
+
+    /**
+     * Retrieve the number of lookups of key tuples that were possibly present.
+     * @return The number of lookups that needed an existence check
+     */
+    public long getUnknown() {
+        return unknown;
+    }
+
+    /**
+     * Retrieve the number of lookups of key tuples that were reported as
+     * possibly present, but were absent after the existence check.
+     * @return The number of false positives
+     */
+    public long getFalsePositives() {
+        return falsePositives;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s index of %d keys, %d present, %d absent, %d checked, %d false positives",
+                exact != null ? "exact" : "filter", size, present, absent, unknown, falsePositives);
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Map of key tuples with open addressing.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.util.Arrays;
+
+/**
+ * A map from key tuples to values which stores the entries in arrays using
+ * linear probing, rather than allocating a node for each entry. The arrays
+ * are kept when the map is cleared, so that a map that is filled with a batch
+ * and cleared afterward does not allocate memory for the next batch.
+ *
+ * The entries can be iterated by slot:
+ * {@code for (int slot = map.next(-1); slot >= 0; slot = map.next(slot))}.
+ * The map must not be altered during such an iteration.
+ * @author Leon Helwerda
+ * @param <V> The type of the values
+ */
+public class KeyMap<V> {
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private Key[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    /**
+     * Create an empty map.
+     */
+    public KeyMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create an empty map with space for an expected number of entries.
+     * @param expected The number of entries
+     */
+    public KeyMap(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expected) {
+            capacity <<= 1;
+        }
+        keys = new Key[capacity];
+        values = new Object[capacity];
+    }
+
+    private int find(Key key) {
+        int mask = keys.length - 1;
+        int slot = key.hashCode() & mask;
+        while (keys[slot] != null && !keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Retrieve the number of entries in the map.
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the map is empty.
+     * @return Whether there are no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Check whether the map has an entry for a key tuple.
+     * @param key The key tuple
+     * @return Whether the key tuple is in the map
+     */
+    public boolean containsKey(Key key) {
+        return keys[find(key)] != null;
+    }
+
+    /**
+     * Retrieve the value of a key tuple.
+     * @param key The key tuple
+     * @return The value, or null if the key tuple is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Key key) {
+        return (V)values[find(key)];
+    }
+
+    /**
+     * Add or replace the value of a key tuple.
+     * @param key The key tuple
+     * @param value The value
+     */
+    public void put(Key key, V value) {
+        int slot = find(key);
+        if (keys[slot] == null) {
+            if ((size + 1) > keys.length * LOAD_FACTOR) {
+                resize(keys.length << 1);
+                slot = find(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Add or replace the entries of another map.
+     * @param other The other map
+     */
+    public void putAll(KeyMap<? extends V> other) {
+        for (int slot = other.next(-1); slot >= 0; slot = other.next(slot)) {
+            put(other.keyAt(slot), other.valueAt(slot));
+        }
+    }
+
+    /**
+     * Remove the entry of a key tuple.
+     * @param key The key tuple
+     * @return The removed value, or null if the key tuple was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Key key) {
+        int slot = find(key);
+        if (keys[slot] == null) {
+            return null;
+        }
+        V value = (V)values[slot];
+        size--;
+
+        // Shift later entries of the probe sequence back into the free slot
+        int mask = keys.length - 1;
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (keys[next] != null) {
+            int home = keys[next].hashCode() & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = null;
+        values[free] = null;
+        return value;
+    }
+
+    /**
+     * Remove all entries, keeping the allocated space.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    private void resize(int capacity) {
+        Key[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new Key[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Find the next slot that holds an entry.
+     * @param slot The previous slot, or -1 to find the first slot
+     * @return The next slot, or -1 if there are no more entries
+     */
+    public int next(int slot) {
+        for (int i = slot + 1; i < keys.length; i++) {
+            if (keys[i] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieve the key tuple of an entry in a slot.
+     * @param slot The slot
+     * @return The key tuple
+     */
+    public Key keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Retrieve the value of an entry in a slot.
+     * @param slot The slot
+     * @return The value
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V)values[slot];
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Database connection that holds a permit of a connection limit.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A wrapper of a pooled database connection that holds a permit from
+ * a semaphore until the connection is closed. This limits the number of
+ * threads, such as import tasks, that use connections concurrently, such that
+ * virtual threads wait for a permit instead of blocking their carrier thread
+ * inside the connection pool.
+ *
+ * A thread holds at most one permit. Further connections that the thread
+ * checks out while it holds a permit, for example for lookups outside of its
+ * connection scope, do not wait for another permit, since the thread would
+ * otherwise wait for itself or for other threads that do the same.
+ * @author Leon Helwerda
+ */
+final class LimitedConnection implements InvocationHandler {
+    private static final ThreadLocal<AtomicInteger> HELD = ThreadLocal.withInitial(AtomicInteger::new);
+
+    private final Connection connection;
+    private final Semaphore permits;
+    private final AtomicInteger held;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private LimitedConnection(Connection connection, Semaphore permits, AtomicInteger held) {
+        this.connection = connection;
+        this.permits = permits;
+        this.held = held;
+    }
+
+    /**
+     * Check out a connection while holding a permit. If the current thread
+     * already holds a permit, then the connection shares it.
+     * @param permits The semaphore of the connection limit
+     * @param source Provider of a pooled connection
+     * @return The connection, which releases the permit once it and the other
+     * connections of the thread are closed
+     * @throws SQLException If a database access error occurs or the thread is
+     * interrupted while waiting for a permit
+     */
+    static Connection acquire(Semaphore permits, Callable<Connection> source) throws SQLException {
+        AtomicInteger held = HELD.get();
+        if (held.getAndIncrement() > 0) {
+            return wrap(source, permits, held);
+        }
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException ex) {
+            held.decrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+        return wrap(source, permits, held);
+    }
+
+    private static Connection wrap(Callable<Connection> source, Semaphore permits, AtomicInteger held) throws SQLException {
+        Connection connection;
+        try {
+            connection = source.call();
+        }
+        catch (Exception ex) {
+            release(permits, held);
+            if (ex instanceof SQLException) {
+                throw (SQLException)ex;
+            }
+            throw new SQLException("Could not retrieve connection from pool", ex);
+        }
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new LimitedConnection(connection, permits, held));
+    }
+
+    private static void release(Semaphore permits, AtomicInteger held) {
+        if (held.decrementAndGet() == 0) {
+            permits.release();
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close" -> {
+                try {
+                    connection.close();
+                }
+                finally {
+                    if (closed.compareAndSet(false, true)) {
+                        release(permits, held);
+                    }
+                }
+                return null;
+            }
+            case "equals" -> {
+                return proxy == args[0];
+            }
+            case "hashCode" -> {
+                return System.identityHashCode(proxy);
+            }
+            case "toString" -> {
+                return "Limited connection " + connection;
+            }
+            default -> {
+                try {
+                    return method.invoke(connection, args);
+                }
+                catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        }
+    }
+}
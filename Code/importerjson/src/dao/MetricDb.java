@@ -28,9 +28,11 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,8 +41,9 @@ import java.util.regex.Pattern;
  * @author Enrique, Leon Helwerda
  */
 public class MetricDb extends BaseDb implements AutoCloseable {
+    private static final String INSERT_METRIC_SQL = "insert into gros.metric(name,base_name,domain_name) values (?,?,?)";
+    private static final String CHECK_METRIC_SQL = "SELECT metric_id, name, base_name, domain_name, domain_type FROM gros.metric WHERE UPPER(name) = ?";
     private PreparedStatement checkMetricStmt = null;
-    private PreparedStatement insertMetricStmt = null;
     private BatchedStatement updateMetricStmt = null;
     private BatchedStatement deleteMetricStmt = null;
     private BatchedStatement insertMetricValueStmt = null;
@@ -54,8 +57,13 @@ public class MetricDb extends BaseDb implements AutoCloseable {
     private BatchedStatement updateSourceIdStmt = null;
     private PreparedStatement checkDefaultTargetStmt = null;
     private BatchedStatement insertDefaultTargetStmt = null;
-    private HashMap<String, MetricName> nameCache = null;
-    private HashSet<String> baseNameCache = null;
+    private static final class NameCache {
+        private final Map<String, MetricName> names = new ConcurrentHashMap<>();
+        private final Set<String> baseNames = ConcurrentHashMap.newKeySet();
+    }
+    
+    private Map<String, MetricName> nameCache = null;
+    private Set<String> baseNameCache = null;
     
     public enum CheckResult {
         MISSING, DIFFERS, EXISTS
@@ -173,7 +181,7 @@ public class MetricDb extends BaseDb implements AutoCloseable {
         sql = "DELETE FROM gros.metric WHERE metric_id = ?";
         deleteMetricStmt = new BatchedStatement(sql);
         sql = "insert into gros.metric_value(metric_id,value,category,date,sprint_id,since_date,project_id) values (?,?,?,?,?,?,?);";
-        insertMetricValueStmt = new BatchedStatement(sql);
+        insertMetricValueStmt = new CopyStatement(sql);
         sql = "update gros.metric_value set metric_id = ? where metric_id = ?";
         updateMetricValueStmt = new BatchedStatement(sql);
         sql = "insert into gros.metric_version(project_id,version_id,developer,message,commit_date,sprint_id) values (?,?,?,?,?,?);";
@@ -188,35 +196,64 @@ public class MetricDb extends BaseDb implements AutoCloseable {
         insertDefaultTargetStmt = new BatchedStatement(sql);
     }
     
-    private void getInsertMetricStmt() throws SQLException, PropertyVetoException {
-        if (insertMetricStmt == null) {
-            Connection con = insertMetricValueStmt.getConnection();
-            String sql = "insert into gros.metric(name,base_name,domain_name) values (?,?,?)";
-            insertMetricStmt = con.prepareStatement(sql);
-        }
-    }
-    
     /**
-     * Insert a metric name into the metrics table.
+     * Insert a metric name into the metrics table, unless it was already
+     * inserted by another import. Projects that are imported concurrently may
+     * encounter the same new metric name, so the insertion is serialized and
+     * performed on a connection outside of any import transaction, such that
+     * the row is visible to the other imports immediately. The metric name
+     * remains if the import is rolled back, and a later import uses it again.
+     * The metric name with its identifier is available from
+     * {@link #check_metric} afterward.
      * @param name Object describing the name of the metric, and possibly the
      * components in the name.
      * @throws SQLException If a database access error occurs
      * @throws PropertyVetoException If the database connection cannot be configured
      */
     public void insert_metric(MetricName name) throws SQLException, PropertyVetoException {
-        getInsertMetricStmt();
-        
-        insertMetricStmt.setString(1, name.getName());
-        setString(insertMetricStmt, 2, name.getBaseName());
-        setString(insertMetricStmt, 3, name.getDomainName());
+        fillNameCache();
+        String key = caseFold(name.getName());
         
-        // Insert immediately because we need to have the row available for the identifier.
-        insertMetricStmt.execute();
+        Lock lock = SharedCache.getLock("gros.metric");
+        lock.lock();
+        try (
+            Connection con = DataSource.getInstance().getPooledConnection();
+            PreparedStatement checkStmt = con.prepareStatement(CHECK_METRIC_SQL)
+        ) {
+            MetricName found = query_metric(checkStmt, key);
+            if (found == null) {
+                try (PreparedStatement pstmt = con.prepareStatement(INSERT_METRIC_SQL)) {
+                    pstmt.setString(1, name.getName());
+                    setString(pstmt, 2, name.getBaseName());
+                    setString(pstmt, 3, name.getDomainName());
+
+                    // Insert immediately because we need to have the row available for the identifier.
+                    pstmt.execute();
+                }
+                found = query_metric(checkStmt, key);
+            }
+            if (found != null) {
+                nameCache.put(key, found);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
         if (name.getBaseName() != null) {
             baseNameCache.add(name.getBaseName());
         }
     }
     
+    private static MetricName query_metric(PreparedStatement checkStmt, String key) throws SQLException {
+        checkStmt.setString(1, key);
+        try (ResultSet rs = checkStmt.executeQuery()) {
+            if (rs.next()) {
+                return new MetricName(rs.getString("name"), rs.getString("base_name"), rs.getString("domain_name"), rs.getString("domain_type"), rs.getInt("metric_id"));
+            }
+        }
+        return null;
+    }
+    
     /**
      * Insert a metric measurement into the metric values table.
      * @param metric_id Identifier of the metric name
@@ -285,10 +322,6 @@ public class MetricDb extends BaseDb implements AutoCloseable {
             checkMetricStmt = null;
         }
         
-        if (insertMetricStmt != null) {
-            insertMetricStmt.close();
-            insertMetricStmt = null;
-        }
 
         updateMetricStmt.execute();
         updateMetricStmt.close();
@@ -331,20 +364,14 @@ public class MetricDb extends BaseDb implements AutoCloseable {
     private void getCheckMetricStmt() throws SQLException, PropertyVetoException {
         if (checkMetricStmt == null) {
             Connection con = insertMetricValueStmt.getConnection();
-            String sql = "SELECT metric_id, name, base_name, domain_name, domain_type FROM gros.metric WHERE UPPER(name) = ?";
-            checkMetricStmt = con.prepareStatement(sql);
+            checkMetricStmt = con.prepareStatement(CHECK_METRIC_SQL);
         }
     }
     
     private void clearCaches() {
-        if (nameCache != null) {
-            nameCache.clear();
-            nameCache = null;
-        }
-        if (baseNameCache != null) {
-            baseNameCache.clear();
-            baseNameCache = null;
-        }
+        // The caches may be shared with other DAOs, so only drop the references
+        nameCache = null;
+        baseNameCache = null;
     }
 
     private static String caseFold(String name) {
@@ -355,8 +382,13 @@ public class MetricDb extends BaseDb implements AutoCloseable {
         if (nameCache != null) {
             return;
         }
-        nameCache = new HashMap<>();
-        baseNameCache = new HashSet<>();
+        NameCache cache = SharedCache.get("gros.metric", this::loadNameCache);
+        nameCache = cache.names;
+        baseNameCache = cache.baseNames;
+    }
+    
+    private NameCache loadNameCache() throws SQLException, PropertyVetoException {
+        NameCache cache = new NameCache();
         
         Connection con = insertMetricValueStmt.getConnection();
         String sql = "SELECT name, base_name, domain_name, domain_type, metric_id FROM gros.metric";
@@ -371,12 +403,25 @@ public class MetricDb extends BaseDb implements AutoCloseable {
                 String domain_name = rs.getString("domain_name");
                 String domain_type = rs.getString("domain_type");
                 Integer id = Integer.parseInt(rs.getString("metric_id"));
-                nameCache.put(caseFold(name), new MetricName(name, base_name, domain_name, domain_type, id));
+                cache.names.put(caseFold(name), new MetricName(name, base_name, domain_name, domain_type, id));
                 if (base_name != null) {
-                    baseNameCache.add(base_name);
+                    cache.baseNames.add(base_name);
                 }
             }
         }
+        return cache;
+    }
+    
+    /**
+     * Retrieve the cache of metric names if it is filled by this or another DAO.
+     * @return The cache, or null if it is not filled
+     */
+    private Map<String, MetricName> getNameCache() {
+        if (nameCache != null) {
+            return nameCache;
+        }
+        NameCache cache = SharedCache.peek("gros.metric");
+        return cache == null ? null : cache.names;
     }
     
     /**
@@ -432,15 +477,11 @@ public class MetricDb extends BaseDb implements AutoCloseable {
 
         if (recache) {
             getCheckMetricStmt();
+            found = query_metric(checkMetricStmt, key);
 
-            checkMetricStmt.setString(1, key);
-            try (ResultSet rs = checkMetricStmt.executeQuery()) {
-                if (rs.next()) {
-                    found = new MetricName(rs.getString("name"), rs.getString("base_name"), rs.getString("domain_name"), rs.getString("domain_type"), rs.getInt("metric_id"));
-                }
+            if (found != null) {
+                nameCache.put(key, found);
             }
-
-            nameCache.put(key, found);
         }
         
         return found;
@@ -456,16 +497,17 @@ public class MetricDb extends BaseDb implements AutoCloseable {
      * @throws PropertyVetoException If the database connection cannot be configured
      */
     public void update_metric(int metric_id, String old_name, MetricName name) throws SQLException, PropertyVetoException {
-        if (nameCache != null) {
+        Map<String, MetricName> cache = getNameCache();
+        if (cache != null) {
             // Safety check based on cache
             String key = caseFold(old_name);
-            MetricName cacheName = nameCache.get(key);
+            MetricName cacheName = cache.get(key);
             if (cacheName != null && cacheName.getId() != metric_id) {
                 throw new IllegalArgumentException("Incorrect metric ID provided");
             }
             // Update the name cache to use the new name to refer to the metric ID
-            nameCache.put(key, null);
-            nameCache.put(caseFold(name.getName()), new MetricName(name.getName(), name.getBaseName(), name.getDomainName(), name.getDomainType(), metric_id));
+            cache.remove(key);
+            cache.put(caseFold(name.getName()), new MetricName(name.getName(), name.getBaseName(), name.getDomainName(), name.getDomainType(), metric_id));
         }
         
         PreparedStatement pstmt = updateMetricStmt.getPreparedStatement();
@@ -488,11 +530,13 @@ public class MetricDb extends BaseDb implements AutoCloseable {
      * @throws PropertyVetoException If the database connection cannot be configured
      */
     public void delete_metric(int metric_id, String old_name, int other_id) throws SQLException, PropertyVetoException {
-        if (nameCache != null) {
+        Map<String, MetricName> cache = getNameCache();
+        if (cache != null) {
             // Mark the name as removed in the cache, but only if it refers to this metric ID
             String key = caseFold(old_name);
-            if (!nameCache.containsKey(key) || nameCache.get(key).getId() == metric_id) {
-                nameCache.put(key, null);
+            MetricName cacheName = cache.get(key);
+            if (cacheName == null || cacheName.getId() == metric_id) {
+                cache.remove(key);
             }
         }
         
@@ -21,7 +21,7 @@ package dao;
 
 import java.beans.PropertyVetoException;
 import java.io.File;
-import java.io.FileReader;
+import java.io.Reader;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -34,11 +34,15 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import util.BaseDb;
+import util.ExportInput;
 
 /**
  * Database access management for the repository table.
@@ -76,7 +80,7 @@ public class RepositoryDb extends BaseDb implements AutoCloseable {
     
     private BatchedStatement insertRepoStmt = null;
     private PreparedStatement checkRepoStmt = null;
-    private HashMap<Integer, HashMap<String, Integer>> nameCache = null;
+    private Map<Integer, Map<String, Integer>> nameCache = null;
     private HashMap<Integer, HashMap<String, Source>> sourceCache = null;
     private BatchedStatement insertGitLabRepoStmt = null;
     private PreparedStatement checkGitLabRepoStmt = null;
@@ -86,16 +90,21 @@ public class RepositoryDb extends BaseDb implements AutoCloseable {
     private BatchedStatement updateGitHubRepoStmt = null;
     private final ProjectDb pDB;
     private static final Set<String> VCS_SOURCES = new TreeSet<>(Arrays.asList("svn", "git", "github", "gitlab", "tfs"));
+    private static final String INSERT_REPO_SQL = "insert into gros.repo (repo_name,project_id,type,url) values (?,?,?,?);";
+    private static final String CHECK_REPO_SQL = "SELECT id FROM gros.repo WHERE UPPER(repo_name) = ? AND project_id = ?";
+    /**
+     * Locks that serialize the insertion of repositories per project.
+     */
+    private static final Map<Integer, Lock> INSERT_LOCKS = new ConcurrentHashMap<>();
 
     public enum CheckResult {
         MISSING, DIFFERS, EXISTS
     }
     
     public RepositoryDb() {
-        String sql = "insert into gros.repo (repo_name,project_id,type,url) values (?,?,?,?);";
-        insertRepoStmt = new BatchedStatement(sql);
+        insertRepoStmt = new BatchedStatement(INSERT_REPO_SQL);
         
-        sql = "insert into gros.gitlab_repo (repo_id,gitlab_id,description,create_date,archived,has_avatar,star_count) values (?,?,?,?,?,?,?);";
+        String sql = "insert into gros.gitlab_repo (repo_id,gitlab_id,description,create_date,archived,has_avatar,star_count) values (?,?,?,?,?,?,?);";
         insertGitLabRepoStmt = new BatchedStatement(sql);
         
         sql = "update gros.gitlab_repo set description=?, create_date=?, archived=?, has_avatar=?, star_count=? where repo_id=? AND gitlab_id=?;";
@@ -120,10 +129,8 @@ public class RepositoryDb extends BaseDb implements AutoCloseable {
             checkRepoStmt = null;
         }
         
-        if (nameCache != null) {
-            nameCache.clear();
-            nameCache = null;
-        }
+        // The cache may be shared with other DAOs, so only drop the reference
+        nameCache = null;
         
         insertGitLabRepoStmt.execute();
         insertGitLabRepoStmt.close();
@@ -151,7 +158,13 @@ public class RepositoryDb extends BaseDb implements AutoCloseable {
     }
     
     /**
-     * Inserts repository in the repo table. 
+     * Inserts repository in the repo table, unless it was already inserted
+     * by another import task. Tasks that run concurrently may encounter the
+     * same new repository, so the insertion is serialized per project and
+     * performed on a connection outside of any import transaction, such that
+     * the row is visible to the other tasks immediately. The repository
+     * remains if the import is rolled back, and a later import uses it again.
+     * The new repository ID is available from {@link #check_repo} afterward.
      * @param name The complete name of the repository.
      * @param project_id The project in which the repository is used.
      * @throws SQLException If a database access error occurs
@@ -159,48 +172,80 @@ public class RepositoryDb extends BaseDb implements AutoCloseable {
      */
     public void insert_repo(String name, int project_id) throws SQLException, PropertyVetoException {
         fillSourceCache(project_id);
-        PreparedStatement pstmt = insertRepoStmt.getPreparedStatement();
-        
-        pstmt.setString(1, name);
-        pstmt.setInt(2, project_id);
+        fillNameCache();
+        String key = name.toUpperCase().trim();
         
-        Source source = null;
-        if (sourceCache.containsKey(project_id)) {
-            source = sourceCache.get(project_id).get(name);
+        Lock lock = INSERT_LOCKS.computeIfAbsent(project_id, k -> new ReentrantLock());
+        lock.lock();
+        try (
+            Connection con = DataSource.getInstance().getPooledConnection();
+            PreparedStatement checkStmt = con.prepareStatement(CHECK_REPO_SQL)
+        ) {
+            Integer id = query_repo(checkStmt, key, project_id);
+            if (id == null) {
+                try (PreparedStatement pstmt = con.prepareStatement(INSERT_REPO_SQL)) {
+                    pstmt.setString(1, name);
+                    pstmt.setInt(2, project_id);
+
+                    Source source = null;
+                    if (sourceCache.containsKey(project_id)) {
+                        source = sourceCache.get(project_id).get(name);
+                    }
+                    if (source != null) {
+                        pstmt.setString(3, source.getType());
+                        pstmt.setString(4, source.getURL());
+                    }
+                    else {
+                        pstmt.setNull(3, java.sql.Types.VARCHAR);
+                        pstmt.setNull(4, java.sql.Types.VARCHAR);
+                    }
+
+                    // Insert immediately because we need to have the row available
+                    pstmt.execute();
+                }
+                id = query_repo(checkStmt, key, project_id);
+            }
+            insertNameCache(nameCache, key, project_id, id);
         }
-        if (source != null) {
-            pstmt.setString(3, source.getType());
-            pstmt.setString(4, source.getURL());
+        finally {
+            lock.unlock();
         }
-        else {
-            pstmt.setNull(3, java.sql.Types.VARCHAR);
-            pstmt.setNull(4, java.sql.Types.VARCHAR);
+    }
+    
+    private static Integer query_repo(PreparedStatement pstmt, String key, int project_id) throws SQLException {
+        Integer idRepo = null;
+        pstmt.setString(1, key);
+        pstmt.setInt(2, project_id);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                idRepo = rs.getInt("id");
+            }
         }
-        
-        // Insert immediately because we need to have the row available
-        pstmt.execute();
+        return idRepo;
     }
     
     private void getCheckRepoStmt() throws SQLException, PropertyVetoException {
         if (checkRepoStmt == null) {
             Connection con = insertRepoStmt.getConnection();
-            String sql = "SELECT id FROM gros.repo WHERE UPPER(repo_name) = ? AND project_id = ?";
-            checkRepoStmt = con.prepareStatement(sql);
+            checkRepoStmt = con.prepareStatement(CHECK_REPO_SQL);
         }
     }
     
-    private void insertNameCache(String key, Integer project_id, Integer id) {
-        if (!nameCache.containsKey(project_id)) {
-            nameCache.put(project_id, new HashMap<String, Integer>());
+    private static void insertNameCache(Map<Integer, Map<String, Integer>> cache, String key, Integer project_id, Integer id) {
+        if (id != null) {
+            cache.computeIfAbsent(project_id, k -> new ConcurrentHashMap<>()).put(key, id);
         }
-        nameCache.get(project_id).put(key, id);
     }
     
     private void fillNameCache() throws SQLException, PropertyVetoException {
         if (nameCache != null) {
             return;
         }
-        nameCache = new HashMap<>();
+        nameCache = SharedCache.get("gros.repo", this::loadNameCache);
+    }
+    
+    private Map<Integer, Map<String, Integer>> loadNameCache() throws SQLException, PropertyVetoException {
+        Map<Integer, Map<String, Integer>> cache = new ConcurrentHashMap<>();
         
         Connection con = insertRepoStmt.getConnection();
         String sql = "SELECT UPPER(repo_name) AS repo_key, project_id, id FROM gros.repo";
@@ -210,9 +255,10 @@ public class RepositoryDb extends BaseDb implements AutoCloseable {
                 String key = rs.getString("repo_key");
                 Integer project_id = rs.getInt("project_id");
                 Integer id = rs.getInt("id");
-                insertNameCache(key, project_id, id);
+                insertNameCache(cache, key, project_id, id);
             }
         }
+        return cache;
     }
     
     private void insertSourceCache(Integer project_id, String name, String type, String url) {
@@ -238,7 +284,7 @@ public class RepositoryDb extends BaseDb implements AutoCloseable {
         }
         
         try (
-            FileReader fr = new FileReader(new File(getProjectPath(project), "data_sources.json"))
+            Reader fr = ExportInput.open(new File(getProjectPath(project), "data_sources.json"))
         ) {
             JSONParser parser = new JSONParser();
             JSONArray a = (JSONArray) parser.parse(fr);
@@ -305,25 +351,18 @@ public class RepositoryDb extends BaseDb implements AutoCloseable {
         fillNameCache();
         
         String key = name.toUpperCase().trim();
-        if (nameCache.containsKey(project_id)) {
-            Integer cacheId = nameCache.get(project_id).get(key);
+        Map<String, Integer> projectCache = nameCache.get(project_id);
+        if (projectCache != null) {
+            Integer cacheId = projectCache.get(key);
             if (cacheId != null) {
                 return cacheId;
             }
         }
         
-        Integer idRepo = null;
         getCheckRepoStmt();
+        Integer idRepo = query_repo(checkRepoStmt, key, project_id);
         
-        checkRepoStmt.setString(1, key);
-        checkRepoStmt.setInt(2, project_id);
-        try (ResultSet rs = checkRepoStmt.executeQuery()) {
-            while (rs.next()) {
-                idRepo = rs.getInt("id");
-            }
-        }
-        
-        insertNameCache(key, project_id, idRepo);
+        insertNameCache(nameCache, key, project_id, idRepo);
         if (idRepo == null) {
             return 0;
         }
@@ -20,7 +20,7 @@
 package dao;
 
 import java.beans.PropertyVetoException;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -29,16 +29,34 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import util.BaseDb;
 
 /**
  * Management of project-specific and global encryption salts.
+ * 
+ * The salt pairs are cached for the entire process once they are retrieved
+ * or created, so that objects of this class are cheap to create and use from
+ * multiple threads. The results of recent one-way encryptions are also cached,
+ * since the same names occur in many rows. The number of cached results is
+ * configured with the "importer.hash_cache" property.
  * @author Leon Helwerda
  */
 public class SaltDb extends BaseDb implements AutoCloseable {
-    private BatchedStatement insertStmt = null;
-    private PreparedStatement checkStmt = null;
+    private static final int DEFAULT_HASH_CACHE = 10000;
+    private static final Map<Integer, SaltPair> PAIRS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<>();
+    private static final Map<String, String> HASHES = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private final int maxSize = Integer.getInteger("importer.hash_cache", DEFAULT_HASH_CACHE);
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    };
     
     public final static class Encryption {
         public final static int NONE = 0;
@@ -85,7 +103,7 @@ public class SaltDb extends BaseDb implements AutoCloseable {
         }
     }
 
-    public class SaltPair {
+    public static final class SaltPair {
         private final String salt;
         private final String pepper;
         
@@ -104,14 +122,16 @@ public class SaltDb extends BaseDb implements AutoCloseable {
     }
     
     public SaltDb() {
-        String sql = "insert into gros.project_salt(project_id,salt,pepper) values (?,?,?);";
-        insertStmt = new BatchedStatement(sql);
     }
     
-    private void getCheckStmt() throws SQLException, PropertyVetoException {
-        if (checkStmt == null) {
-            Connection con = insertStmt.getConnection();
-            checkStmt = con.prepareStatement("select salt, pepper from gros.project_salt where project_id=?;");
+    /**
+     * Clear the cached salt pairs and encryption results, for example after
+     * the salts in the database have been altered.
+     */
+    public static void reset() {
+        PAIRS.clear();
+        synchronized (HASHES) {
+            HASHES.clear();
         }
     }
     
@@ -137,18 +157,38 @@ public class SaltDb extends BaseDb implements AutoCloseable {
      * @throws PropertyVetoException If the database connection cannot be configured
      */
     public SaltPair get_salt(int project_id) throws SQLException, PropertyVetoException {
-        getCheckStmt();
+        SaltPair pair = PAIRS.get(project_id);
+        if (pair != null) {
+            return pair;
+        }
         
-        checkStmt.setInt(1, project_id);
-        try (ResultSet rs = checkStmt.executeQuery()) {
-            if (rs.next()) {
-                return new SaltPair(rs.getString("salt"), rs.getString("pepper"));
+        // Only one thread may create a missing pair
+        synchronized (PAIRS) {
+            pair = PAIRS.get(project_id);
+            if (pair != null) {
+                return pair;
+            }
+            
+            // Use a connection outside of any import transaction, since a pair
+            // that is used for encryption must never be rolled back.
+            try (
+                Connection con = DataSource.getInstance().getPooledConnection();
+                PreparedStatement checkStmt = con.prepareStatement("select salt, pepper from gros.project_salt where project_id=?;")
+            ) {
+                checkStmt.setInt(1, project_id);
+                try (ResultSet rs = checkStmt.executeQuery()) {
+                    if (rs.next()) {
+                        pair = new SaltPair(rs.getString("salt"), rs.getString("pepper"));
+                        PAIRS.put(project_id, pair);
+                        return pair;
+                    }
+                }
             }
-        }
 
-        SaltPair pair = createPair();
-        insert_salt(project_id, pair);
-        return pair;
+            pair = createPair();
+            insert_salt(project_id, pair);
+            return pair;
+        }
     }
     
     /**
@@ -160,18 +200,30 @@ public class SaltDb extends BaseDb implements AutoCloseable {
      * @throws PropertyVetoException If the database connection cannot be configured
      */
     public void insert_salt(int project_id, SaltPair pair) throws SQLException, PropertyVetoException {
-        PreparedStatement pstmt = insertStmt.getPreparedStatement();
-        
-        pstmt.setInt(1, project_id);
-        pstmt.setString(2, pair.getSalt());
-        pstmt.setString(3, pair.getPepper());
-        
-        insertStmt.batch();
+        String sql = "insert into gros.project_salt(project_id,salt,pepper) values (?,?,?);";
+        try (
+            Connection con = DataSource.getInstance().getPooledConnection();
+            PreparedStatement pstmt = con.prepareStatement(sql)
+        ) {
+            pstmt.setInt(1, project_id);
+            pstmt.setString(2, pair.getSalt());
+            pstmt.setString(3, pair.getPepper());
+            pstmt.execute();
+        }
+        PAIRS.put(project_id, pair);
     }
 
-    private static String sha256(String base) throws UnsupportedEncodingException, NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(base.getBytes("UTF-8"));
+    private static MessageDigest getDigest() throws NoSuchAlgorithmException {
+        MessageDigest digest = DIGEST.get();
+        if (digest == null) {
+            digest = MessageDigest.getInstance("SHA-256");
+            DIGEST.set(digest);
+        }
+        return digest;
+    }
+
+    private static String sha256(String base) throws NoSuchAlgorithmException {
+        byte[] hash = getDigest().digest(base.getBytes(StandardCharsets.UTF_8));
         StringBuilder hexString = new StringBuilder();
 
         for (int i = 0; i < hash.length; i++) {
@@ -194,24 +246,33 @@ public class SaltDb extends BaseDb implements AutoCloseable {
         if (value == null) {
             return null;
         }
+        String base = pair.getSalt() + value + pair.getPepper();
+        synchronized (HASHES) {
+            String hash = HASHES.get(base);
+            if (hash != null) {
+                return hash;
+            }
+        }
         try {
-            return sha256(pair.getSalt() + value + pair.getPepper());
+            String hash = sha256(base);
+            synchronized (HASHES) {
+                HASHES.put(base, hash);
+            }
+            return hash;
         }
-        catch (UnsupportedEncodingException | NoSuchAlgorithmException ex) {
+        catch (NoSuchAlgorithmException ex) {
             logException(ex);
             return null;
         }
     }
 
+    /**
+     * Close the salt management object. Salt pairs are inserted immediately
+     * and remain cached for the process, so nothing needs to be written.
+     * @throws SQLException If a database access error occurs
+     */
     @Override
     public void close() throws SQLException {
-        insertStmt.execute();
-        insertStmt.close();
-        
-        if (checkStmt != null) {
-            checkStmt.close();
-            checkStmt = null;
-        }
     }
     
 }
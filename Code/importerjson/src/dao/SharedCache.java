@@ -0,0 +1,164 @@
+/**
+ * Process-wide caches of global tables.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.beans.PropertyVetoException;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A registry of caches over global tables, such as repositories, developers
+ * and metric names, which are shared by all the DAOs of the process instead
+ * of being filled by each DAO. This avoids loading the same tables again for
+ * every import task and project when multiple projects are imported in one
+ * process. The DAOs keep the caches coherent by adding the rows that they
+ * write, so the caches must be thread-safe collections.
+ *
+ * Sharing is enabled with the "importer.shared_caches" property, or by the
+ * importer when it imports multiple projects. Otherwise, each DAO fills its
+ * own cache as before. The shared caches are dropped when a transaction is
+ * rolled back or an import task has problems, since they may contain rows
+ * that were never committed or that were written by a failed import.
+ * 
+ * Tasks of concurrently imported projects may miss the same row in a global
+ * table. The DAOs therefore insert such rows while holding the lock of the
+ * cache, after checking the table again.
+ * @author Leon Helwerda
+ */
+public final class SharedCache {
+    /**
+     * A function that fills a new cache from the database.
+     * @param <T> The type of the cache
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        /**
+         * Create and fill the cache.
+         * @return The cache
+         * @throws SQLException If a database access error occurs
+         * @throws PropertyVetoException If the database connection cannot be configured
+         */
+        T load() throws SQLException, PropertyVetoException;
+    }
+
+    private static final class Holder {
+        private Object cache = null;
+
+        synchronized Object get(String name, Loader<?> loader) throws SQLException, PropertyVetoException {
+            if (cache == null) {
+                long startTime = System.currentTimeMillis();
+                cache = loader.load();
+                Logger.getLogger("importer").log(Level.FINE, "Filled shared cache {0} in {1} ms",
+                        new Object[]{name, System.currentTimeMillis() - startTime});
+            }
+            return cache;
+        }
+    }
+
+    private static final Map<String, Holder> CACHES = new ConcurrentHashMap<>();
+    private static final Map<String, Lock> LOCKS = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = Boolean.getBoolean("importer.shared_caches");
+
+    private SharedCache() {
+    }
+
+    /**
+     * Check whether caches of global tables are shared.
+     * @return Whether the caches are shared
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable sharing caches of global tables. Disabling drops the
+     * shared caches.
+     * @param enabled Whether to share the caches
+     */
+    public static void setEnabled(boolean enabled) {
+        SharedCache.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Retrieve a cache. If caches are shared, then the cache is filled by the
+     * first caller and returned to all later callers until it is dropped.
+     * Otherwise, a new cache is filled for the caller.
+     * @param <T> The type of the cache
+     * @param name The name of the cache, usually the table that it is about
+     * @param loader The function that creates and fills the cache
+     * @return The cache
+     * @throws SQLException If a database access error occurs
+     * @throws PropertyVetoException If the database connection cannot be configured
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(String name, Loader<T> loader) throws SQLException, PropertyVetoException {
+        if (!enabled) {
+            return loader.load();
+        }
+        return (T)CACHES.computeIfAbsent(name, key -> new Holder()).get(name, loader);
+    }
+
+    /**
+     * Retrieve a shared cache without filling it.
+     * @param <T> The type of the cache
+     * @param name The name of the cache
+     * @return The cache, or null if caches are not shared or the cache has
+     * not been filled yet
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T peek(String name) {
+        Holder holder = CACHES.get(name);
+        if (holder == null) {
+            return null;
+        }
+        synchronized (holder) {
+            return (T)holder.cache;
+        }
+    }
+
+    /**
+     * Retrieve the lock of a cache, which serializes checking for and inserting
+     * missing rows into the table of the cache. The lock is available whether
+     * or not the caches are shared, and remains the same when the caches are
+     * dropped. Unlike a monitor, the lock does not pin the carrier thread of
+     * a virtual thread that waits for the database while holding it.
+     * @param name The name of the cache
+     * @return The lock
+     */
+    public static Lock getLock(String name) {
+        return LOCKS.computeIfAbsent(name, key -> new ReentrantLock());
+    }
+
+    /**
+     * Drop all shared caches, such that they are filled again when they are
+     * used next.
+     */
+    public static void clear() {
+        CACHES.clear();
+    }
+}
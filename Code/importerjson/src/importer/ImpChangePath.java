@@ -20,35 +20,50 @@
 package importer;
 
 import dao.BatchedCheckStatement;
+import dao.CopyStatement;
 import dao.RepositoryDb;
 import java.beans.PropertyVetoException;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.logging.Level;
-import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 import util.BaseImport;
-import util.BufferedJSONReader;
+import util.ExportRecord;
+import util.JSONReader;
+import util.RecordSpec;
+import util.StringPool;
 
 /**
  * Importer for the VCS changed paths.
  * @author Leon Helwerda
  */
 public class ImpChangePath extends BaseImport {
+    private static final RecordSpec SPEC = new RecordSpec();
+    private static final RecordSpec.Field VERSION_ID = SPEC.add("version_id", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field REPO_NAME = SPEC.add("repo_name", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field FILE = SPEC.add("file", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field INSERTIONS = SPEC.add("insertions", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field DELETIONS = SPEC.add("deletions", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field CHANGE_TYPE = SPEC.add("change_type", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field SIZE = SPEC.add("size", RecordSpec.Type.INTEGER);
+
+    // Fields whose values repeat across many changes
+    private static final String[] POOLED_FIELDS = {
+        "repo_name", "file", "change_type"
+    };
     
     @Override
     public void parser() {
         int projectID = getProjectID();
+        StringPool pool = new StringPool(POOLED_FIELDS);
         String sql = "insert into gros.change_path(repo_id,version_id,file,insertions,deletions,type,size) values (?,?,?,?,?,?,?);";
  
         try (
             RepositoryDb repoDb = new RepositoryDb();
-            FileReader fr = new FileReader(getMainImportPath());
-            BufferedJSONReader br = new BufferedJSONReader(fr);
-            BatchedCheckStatement cstmt = new BatchedCheckStatement("gros.change_path", sql,
+            JSONReader br = JSONReader.open(getMainImportPath(), pool);
+            BatchedCheckStatement cstmt = new BatchedCheckStatement("gros.change_path", new CopyStatement(sql),
                     new String[]{"repo_id", "version_id", "file"},
                     new int[]{java.sql.Types.INTEGER, java.sql.Types.VARCHAR, java.sql.Types.VARCHAR}
             ) {
@@ -57,35 +72,30 @@ public class ImpChangePath extends BaseImport {
                     int repo_id = (int)values[0];
                     String version_id = (String)values[1];
                     String file = (String)values[2];
-                    JSONObject jsonObject = (JSONObject) data;
-                    String insertions = (String) jsonObject.get("insertions");
-                    String deletions = (String) jsonObject.get("deletions");
-                    String change_type = (String) jsonObject.get("change_type");
-                    String size = (String) jsonObject.get("size");
+                    ExportRecord record = (ExportRecord) data;
                     int file_size = 0;
-                    if (size != null) {
-                        file_size = Integer.parseInt(size);
+                    if (!record.isNull(SIZE)) {
+                        file_size = record.getInt(SIZE);
                     }
 
                     pstmt.setInt(1, repo_id);
                     pstmt.setString(2, version_id);
                     pstmt.setString(3, file);
-                    pstmt.setInt(4, Integer.parseInt(insertions));
-                    pstmt.setInt(5, Integer.parseInt(deletions));
-                    pstmt.setString(6, change_type);
+                    pstmt.setInt(4, record.getInt(INSERTIONS));
+                    pstmt.setInt(5, record.getInt(DELETIONS));
+                    pstmt.setString(6, record.getString(CHANGE_TYPE));
                     pstmt.setInt(7, file_size);
 
                     insertStmt.batch();
                 }
             }
         ) {
-            Object o;
-            while ((o = br.readObject()) != null) {
-                JSONObject jsonObject = (JSONObject) o;
-                
-                String version_id = (String) jsonObject.get("version_id");
-                String repo_name = (String) jsonObject.get("repo_name");
-                String file = (String) jsonObject.get("file");
+            cstmt.preloadKeys("repo_id in (select id from gros.repo where project_id = ?)", projectID);
+            ExportRecord record = new ExportRecord(SPEC);
+            while (br.readRecord(record)) {
+                String version_id = record.getString(VERSION_ID);
+                String repo_name = record.getString(REPO_NAME);
+                String file = record.getString(FILE);
                 
                 int repo_id = repoDb.check_repo(repo_name, projectID);
                 
@@ -95,10 +105,13 @@ public class ImpChangePath extends BaseImport {
                 }
                 
                 Object[] values = new Object[]{repo_id, version_id, file};
-                cstmt.batch(values, o);
+                // The batch keeps the record until it is executed
+                cstmt.batch(values, record);
+                record = new ExportRecord(SPEC);
             }
             
             cstmt.execute();
+            getLogger().log(Level.FINE, "String pool for {0}: {1}", new Object[]{getImportName(), pool});
         }
         catch (FileNotFoundException ex) {
             getLogger().log(Level.WARNING, "Cannot import {0}: {1}", new Object[]{getImportName(), ex.getMessage()});
@@ -21,10 +21,9 @@ package importer;
 
 import util.BaseImport;
 import dao.CommentDb;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import org.json.simple.JSONObject;
-import util.BufferedJSONReader;
+import util.JSONReader;
 
 /**
  * Importer for the JIRA comments.
@@ -36,8 +35,7 @@ public class ImpComment extends BaseImport {
     public void parser() {
         try (
             CommentDb commentDb = new CommentDb();
-            FileReader fr = new FileReader(getMainImportPath());
-            BufferedJSONReader br = new BufferedJSONReader(fr)
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
             Object o;
             while ((o = br.readObject()) != null) {
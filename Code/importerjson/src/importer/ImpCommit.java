@@ -21,6 +21,7 @@ package importer;
 
 import dao.BatchedCheckStatement;
 import dao.BatchedStatement;
+import dao.CopyStatement;
 import dao.DataSource;
 import dao.DeveloperDb;
 import dao.DeveloperDb.Developer;
@@ -31,7 +32,6 @@ import dao.SprintDb;
 import java.beans.PropertyVetoException;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -40,9 +40,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import util.BaseImport;
 import java.util.HashMap;
@@ -50,7 +48,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
-import util.BufferedJSONReader;
+import util.ExportRecord;
+import util.RecordSpec;
+import util.JSONReader;
+import util.StringPool;
 
 /**
  * Importer for VCS commit versions and some global special tasks.
@@ -97,6 +98,31 @@ public class ImpCommit extends BaseImport {
         return fields;
     }
     
+    // Fields of the objects in the commit export file
+    private static final RecordSpec SPEC = new RecordSpec();
+    private static final RecordSpec.Field VERSION_ID = SPEC.add("version_id", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field REPO_NAME = SPEC.add("repo_name", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field COMMIT_DATE = SPEC.add("commit_date", RecordSpec.Type.TIMESTAMP);
+    private static final RecordSpec.Field AUTHOR_DATE = SPEC.add("author_date", RecordSpec.Type.TIMESTAMP, true);
+    private static final RecordSpec.Field SPRINT_ID = SPEC.add("sprint_id", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field DEVELOPER = SPEC.add("developer", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field DEVELOPER_USERNAME = SPEC.add("developer_username", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field DEVELOPER_EMAIL = SPEC.add("developer_email", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field MESSAGE = SPEC.add("message", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field SIZE = SPEC.add("size", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field INSERTIONS = SPEC.add("insertions", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field DELETIONS = SPEC.add("deletions", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field NUMBER_OF_FILES = SPEC.add("number_of_files", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field NUMBER_OF_LINES = SPEC.add("number_of_lines", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field TYPE = SPEC.add("type", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field BRANCH = SPEC.add("branch", RecordSpec.Type.STRING, true);
+    private static final RecordSpec.Field ENCRYPTED = SPEC.add("encrypted", RecordSpec.Type.STRING);
+    // Fields whose values repeat across many commits
+    private static final String[] POOLED_FIELDS = {
+        "repo_name", "developer", "developer_username", "developer_email",
+        "branch", "type"
+    };
+
     /**
      * Batched check statement for inserting new commits into the database.
      */
@@ -108,7 +134,7 @@ public class ImpCommit extends BaseImport {
         private final SprintDb sprintDb = new SprintDb();
 
         public BatchedCommitStatement() {
-            super("gros.commits", INSERT_SQL, new String[]{"version_id", "repo_id"}, new int[]{java.sql.Types.VARCHAR, java.sql.Types.INTEGER});
+            super("gros.commits", new CopyStatement(INSERT_SQL), new String[]{"version_id", "repo_id"}, new int[]{java.sql.Types.VARCHAR, java.sql.Types.INTEGER});
         }
 
         @Override
@@ -116,22 +142,10 @@ public class ImpCommit extends BaseImport {
             String version_id = (String)values[0];
             int repo_id = (int)values[1];
 
-            JSONObject jsonObject = (JSONObject) data;
-            String commit_date = (String) jsonObject.get("commit_date");
-            String author_date = (String) jsonObject.get("author_date");
-            String sprint = (String) jsonObject.get("sprint_id");
-            String developer = (String) jsonObject.get("developer");
-            String developer_username = (String) jsonObject.get("developer_username");
-            String developer_email = (String) jsonObject.get("developer_email");
-            String message = (String) jsonObject.get("message");
-            String size_of_commit = (String) jsonObject.get("size");
-            String insertions = (String) jsonObject.get("insertions");
-            String deletions = (String) jsonObject.get("deletions");
-            String number_of_files = (String) jsonObject.get("number_of_files");
-            String number_of_lines = (String) jsonObject.get("number_of_lines");
-            String type = (String) jsonObject.get("type");
-            String branch = (String) jsonObject.get("branch");
-            String encrypted = (String) jsonObject.get("encrypted");
+            ExportRecord record = (ExportRecord) data;
+            String sprint = record.getString(SPRINT_ID);
+            String developer = record.getString(DEVELOPER);
+            String developer_email = record.getString(DEVELOPER_EMAIL);
 
             int sprint_id;
             if ((sprint.trim()).equals("null")) { // In case not in between dates of sprint
@@ -147,15 +161,15 @@ public class ImpCommit extends BaseImport {
             if (developer_email.equals("0")) {
                 developer_email = null;
             }
-            int encryption = Encryption.parseInt(encrypted);
+            int encryption = Encryption.parseInt(record.getString(ENCRYPTED));
 
-            Developer dev = new Developer(developer_username, developer, developer_email);
+            Developer dev = new Developer(record.getString(DEVELOPER_USERNAME), developer, developer_email);
             int developer_id = devDb.update_vcs_developer(projectID, dev, encryption);
 
             pstmt.setString(1, version_id);
             pstmt.setInt(2, projectID);
 
-            Timestamp ts_created = Timestamp.valueOf(commit_date); 
+            Timestamp ts_created = record.getTimestamp(COMMIT_DATE);
             pstmt.setTimestamp(3, ts_created);
 
             if (sprint_id == 0) {
@@ -165,8 +179,8 @@ public class ImpCommit extends BaseImport {
             pstmt.setInt(4, sprint_id);
 
             pstmt.setInt(5, developer_id);
-            pstmt.setString(6, message);
-            if (size_of_commit == null) {
+            record.bind(pstmt, 6, MESSAGE);
+            if (record.isNull(SIZE)) {
                 pstmt.setNull(7, java.sql.Types.INTEGER);
                 pstmt.setNull(8, java.sql.Types.INTEGER);
                 pstmt.setNull(9, java.sql.Types.INTEGER);
@@ -174,29 +188,16 @@ public class ImpCommit extends BaseImport {
                 pstmt.setNull(11, java.sql.Types.INTEGER);
             }
             else {
-                pstmt.setInt(7, Integer.parseInt(size_of_commit));
-                pstmt.setInt(8, Integer.parseInt(insertions));
-                pstmt.setInt(9, Integer.parseInt(deletions));
-                pstmt.setInt(10, Integer.parseInt(number_of_files));
-                pstmt.setInt(11, Integer.parseInt(number_of_lines));
+                pstmt.setInt(7, record.getInt(SIZE));
+                pstmt.setInt(8, record.getInt(INSERTIONS));
+                pstmt.setInt(9, record.getInt(DELETIONS));
+                pstmt.setInt(10, record.getInt(NUMBER_OF_FILES));
+                pstmt.setInt(11, record.getInt(NUMBER_OF_LINES));
             }
-            pstmt.setString(12, type);
+            record.bind(pstmt, 12, TYPE);
             pstmt.setInt(13, repo_id);
-
-            if (author_date == null || author_date.equals("0")) {
-                pstmt.setNull(14, java.sql.Types.TIMESTAMP);
-            }
-            else {
-                Timestamp authored = Timestamp.valueOf(author_date);
-                pstmt.setTimestamp(14, authored);
-            }
-
-            if (branch == null || branch.equals("0")) {
-                pstmt.setNull(15, java.sql.Types.VARCHAR);
-            }
-            else {
-                pstmt.setString(15, branch);
-            }
+            record.bind(pstmt, 14, AUTHOR_DATE);
+            record.bind(pstmt, 15, BRANCH);
 
             insertStmt.batch();
         }
@@ -212,20 +213,18 @@ public class ImpCommit extends BaseImport {
     @Override
     public void parser() {
         int projectID = getProjectID();
+        StringPool pool = new StringPool(POOLED_FIELDS);
  
         try (
             RepositoryDb repoDb = new RepositoryDb();
-            FileReader fr = new FileReader(getMainImportPath());
-            BufferedJSONReader br = new BufferedJSONReader(fr);
+            JSONReader br = JSONReader.open(getMainImportPath(), pool);
             BatchedCheckStatement cstmt = new BatchedCommitStatement();
         ) {
-            cstmt.setBatchSize(100);
-            Object o;
-            while ((o = br.readObject()) != null) {
-                JSONObject jsonObject = (JSONObject) o;
-                
-                String version_id = (String) jsonObject.get("version_id");
-                String repo_name = (String) jsonObject.get("repo_name");
+            cstmt.preloadKeys("project_id = ?", projectID);
+            ExportRecord record = new ExportRecord(SPEC);
+            while (br.readRecord(record)) {
+                String version_id = record.getString(VERSION_ID);
+                String repo_name = record.getString(REPO_NAME);
                 
                 // Check if repo ID exists or create repo with new ID
                 int repo_id = repoDb.check_repo(repo_name, projectID);
@@ -235,10 +234,12 @@ public class ImpCommit extends BaseImport {
                 }
                 
                 Object values[] = new Object[]{version_id, repo_id};
-                cstmt.batch(values, o);
+                cstmt.batch(values, record);
+                record = new ExportRecord(SPEC);
             }
             
             cstmt.execute();
+            getLogger().log(Level.FINE, "String pool for {0}: {1}", new Object[]{getImportName(), pool});
             
             //Used for creating Project if it didn't exist
             this.setProjectID(projectID);
@@ -300,17 +301,16 @@ public class ImpCommit extends BaseImport {
      * Best is to do this after collecting all the records of all the projects.
      */
     public void updateJiraID() {
-        JSONParser parser = new JSONParser();
         int projectID = this.getProjectID();
         int successes = 0;
  
         try (
-            FileReader fr = new FileReader(new File(getRootPath().toFile(), "data_vcsdev_to_dev.json"));
+            JSONReader br = JSONReader.open(new File(getRootPath().toFile(), "data_vcsdev_to_dev.json"));
             DeveloperDb devDb = new DeveloperDb();
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a)
+            while ((o = br.readObject()) != null)
             {
                 JSONObject jsonObject = (JSONObject) o;
                 
@@ -25,13 +25,11 @@ import dao.NoteDb;
 import dao.RepositoryDb;
 import dao.SaltDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for GitLab commit comments or Team Foundation Server commit review comments.
@@ -41,18 +39,17 @@ public class ImpCommitComment extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project_id = this.getProjectID();
  
         try (
             RepositoryDb repoDb = new RepositoryDb();
             DeveloperDb devDb = new DeveloperDb();
             NoteDb noteDb = new NoteDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a)
+            while ((o = br.readObject()) != null)
             {
                 JSONObject jsonObject = (JSONObject) o;
                 
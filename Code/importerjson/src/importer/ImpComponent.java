@@ -19,15 +19,13 @@
  */
 package importer;
 
-import java.io.FileReader;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import dao.ComponentDb;
 import java.io.File;
 import java.sql.Timestamp;
 import util.BaseImport;
 import util.BaseLinkDb.CheckResult;
+import util.JSONReader;
 
 /**
  * Importer for JIRA issue component links and the components themselves.
@@ -37,19 +35,16 @@ public class ImpComponent extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
- 
         int project = getProjectID();
         File path = getExportPath();
         try (
-            FileReader cmpFile = new FileReader(new File(path, "data_component.json"));
-            FileReader linkFile = new FileReader(new File(path, "data_issue_component.json"));
+            JSONReader cmpReader = JSONReader.open(new File(path, "data_component.json"));
+            JSONReader linkReader = JSONReader.open(new File(path, "data_issue_component.json"));
             ComponentDb cmpDb = new ComponentDb()
         ) {
-            JSONArray a;
+            Object o;
             
-            a = (JSONArray) parser.parse(cmpFile);
-            for (Object o : a) {
+            while ((o = cmpReader.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String component_id = (String) jsonObject.get("id");
@@ -70,9 +65,7 @@ public class ImpComponent extends BaseImport {
                 }
             }
             
-            a = (JSONArray) parser.parse(linkFile);
-            
-            for (Object o : a) {
+            while ((o = linkReader.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String issue_id = (String) jsonObject.get("issue_id");
@@ -21,14 +21,12 @@ package importer;
 
 import dao.FixVersionDb;
 import util.BaseImport;
-import java.io.FileReader;
 import java.sql.Date;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import util.JSONReader;
 
 /**
  * Importer for JIRA fix versions.
@@ -38,17 +36,16 @@ public class ImpDataFixVersion extends BaseImport {
     
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project = getProjectID();
          
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             FixVersionDb versionDb = new FixVersionDb()
         ) {            
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             Set<String> identifiers = new HashSet<>();
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String id = (String) jsonObject.get("id");
@@ -26,19 +26,17 @@ import dao.ProjectDb;
 import dao.SaltDb;
 import java.beans.PropertyVetoException;
 import util.BaseImport;
-import java.io.FileReader;
 import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.logging.Level;
-import org.json.simple.JSONObject;
-import util.BufferedJSONReader;
+import util.ExportRecord;
+import util.RecordSpec;
+import util.JSONReader;
 
 /**
  * Import for JIRA issues.
@@ -59,6 +57,53 @@ public class ImpDataIssue extends BaseImport {
     };
 
     private static final BigDecimal MAX_POINTS = BigDecimal.valueOf(999.0);
+
+    // Fields of the objects in the export file, where "0" is converted to null
+    // for fields that do not have it as a valid value.
+    private static final RecordSpec SPEC = new RecordSpec();
+    private static final RecordSpec.Field ISSUE_ID = SPEC.add("issue_id", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field CHANGELOG_ID = SPEC.add("changelog_id", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field KEY = SPEC.add("key", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field TITLE = SPEC.add("title", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field ISSUETYPE = SPEC.add("issuetype", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field PRIORITY = SPEC.add("priority", RecordSpec.Type.INTEGER, true);
+    private static final RecordSpec.Field RESOLUTION = SPEC.add("resolution", RecordSpec.Type.INTEGER, true);
+    private static final RecordSpec.Field FIX_VERSIONS = SPEC.add("fixVersions", RecordSpec.Type.INTEGER, true);
+    private static final RecordSpec.Field BUGFIX = SPEC.add("bugfix", RecordSpec.Type.FLAG);
+    private static final RecordSpec.Field WATCHERS = SPEC.add("watchers", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field CREATED = SPEC.add("created", RecordSpec.Type.TIMESTAMP, true);
+    private static final RecordSpec.Field UPDATED = SPEC.add("updated", RecordSpec.Type.TIMESTAMP, true);
+    private static final RecordSpec.Field DESCRIPTION = SPEC.add("description", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field DUEDATE = SPEC.add("duedate", RecordSpec.Type.DATE, true);
+    private static final RecordSpec.Field PROJECT = SPEC.add("project", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field STATUS = SPEC.add("status", RecordSpec.Type.INTEGER, true);
+    private static final RecordSpec.Field REPORTER = SPEC.add("reporter", RecordSpec.Type.STRING, true);
+    private static final RecordSpec.Field ASSIGNEE = SPEC.add("assignee", RecordSpec.Type.STRING, true);
+    private static final RecordSpec.Field ATTACHMENT = SPEC.add("attachment", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field ADDITIONAL_INFORMATION = SPEC.add("additional_information", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field REVIEW_COMMENTS = SPEC.add("review_comments", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field STORYPOINT = SPEC.add("storypoint", RecordSpec.Type.DOUBLE, true);
+    private static final RecordSpec.Field RESOLUTION_DATE = SPEC.add("resolution_date", RecordSpec.Type.TIMESTAMP, true);
+    private static final RecordSpec.Field SPRINT = SPEC.add("sprint", RecordSpec.Type.INTEGER, true);
+    private static final RecordSpec.Field UPDATED_BY = SPEC.add("updated_by", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field RANK_CHANGE = SPEC.add("rank_change", RecordSpec.Type.FLAG);
+    private static final RecordSpec.Field EPIC = SPEC.add("epic", RecordSpec.Type.STRING, true);
+    private static final RecordSpec.Field FLAGGED = SPEC.add("flagged", RecordSpec.Type.FLAG);
+    private static final RecordSpec.Field READY_STATUS = SPEC.add("ready_status", RecordSpec.Type.INTEGER, true);
+    private static final RecordSpec.Field READY_STATUS_REASON = SPEC.add("ready_status_reason", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field APPROVED = SPEC.add("approved", RecordSpec.Type.FLAG);
+    private static final RecordSpec.Field APPROVED_BY_PO = SPEC.add("approved_by_po", RecordSpec.Type.FLAG);
+    private static final RecordSpec.Field LABELS = SPEC.add("labels", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field VERSIONS = SPEC.add("versions", RecordSpec.Type.INTEGER, true);
+    private static final RecordSpec.Field EXPECTED_LTCS = SPEC.add("expected_ltcs", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field EXPECTED_PHTCS = SPEC.add("expected_phtcs", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field TEST_GIVEN = SPEC.add("test_given", RecordSpec.Type.STRING, true);
+    private static final RecordSpec.Field TEST_WHEN = SPEC.add("test_when", RecordSpec.Type.STRING, true);
+    private static final RecordSpec.Field TEST_THEN = SPEC.add("test_then", RecordSpec.Type.STRING, true);
+    private static final RecordSpec.Field TEST_EXECUTION = SPEC.add("test_execution", RecordSpec.Type.INTEGER, true);
+    private static final RecordSpec.Field TEST_EXECUTION_TIME = SPEC.add("test_execution_time", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field ENVIRONMENT = SPEC.add("environment", RecordSpec.Type.STRING);
+    private static final RecordSpec.Field EXTERNAL_PROJECT = SPEC.add("external_project", RecordSpec.Type.STRING);
     
     private static String getInsertSql() {
         String[] fields = new String[FIELDS.length];
@@ -87,26 +132,17 @@ public class ImpDataIssue extends BaseImport {
             super("gros.issue", insertSql, updateSql, new String[]{"issue_id", "changelog_id"});
         }
 
-        private String getField(JSONObject jsonObject, String field) {
-            String value = (String) jsonObject.get(field);
-            // Convert zeroes to null values
-            if ("0".equals(value)) {
-                return null;
-            }
-            return value;
-        }
-
         private void makeBatch(Object[] values, Object data, PreparedStatement pstmt, boolean is_update) throws SQLException, PropertyVetoException {
             int issue_id = (int)values[0];
             int changelog_id = (int)values[1];
 
-            // Keep fields for which "0" could be a valid value as is.
-            // E.g., integral amounts, user input text, flags (but not -1/1 booleans).
-            // User names cannot be "0" naturally for backward compatibility.
-            // Fields that do not have "0" as valid value are parsed using getField.
-            // Fields that can be null, including the ones parsed with
-            // getField, are passed through one of the set* methods.
-            JSONObject jsonObject = (JSONObject) data;
+            // The record specification keeps fields for which "0" could be
+            // a valid value as is, e.g., integral amounts, user input text and
+            // flags (but not -1/1 booleans). User names cannot be "0" naturally
+            // for backward compatibility. Fields that do not have "0" as valid
+            // value convert zeroes to null values. Fields that can be null are
+            // bound as NULL with the SQL type of the field.
+            ExportRecord record = (ExportRecord) data;
 
             // Fill the prepared statement with the new field values.
             int index = 0;
@@ -114,62 +150,68 @@ public class ImpDataIssue extends BaseImport {
                 pstmt.setInt(++index, issue_id);
                 pstmt.setInt(++index, changelog_id);
             }
-            pstmt.setString(++index, (String) jsonObject.get("key"));
-            pstmt.setString(++index, (String) jsonObject.get("title"));
-            setInteger(pstmt, ++index, (String) jsonObject.get("issuetype"));
-            setInteger(pstmt, ++index, getField(jsonObject, "priority"));
-            setInteger(pstmt, ++index, getField(jsonObject, "resolution"));
-            setInteger(pstmt, ++index, getField(jsonObject, "fixVersions"));
-            setBoolean(pstmt, ++index, getField(jsonObject, "bugfix"));
-            pstmt.setInt(++index, Integer.parseInt((String) jsonObject.get("watchers")));
+            record.bind(pstmt, ++index, KEY);
+            record.bind(pstmt, ++index, TITLE);
+            record.bind(pstmt, ++index, ISSUETYPE);
+            record.bind(pstmt, ++index, PRIORITY);
+            record.bind(pstmt, ++index, RESOLUTION);
+            record.bind(pstmt, ++index, FIX_VERSIONS);
+            record.bind(pstmt, ++index, BUGFIX);
+            pstmt.setInt(++index, record.getInt(WATCHERS));
 
-            setTimestamp(pstmt, ++index, getField(jsonObject, "created"));
-            setTimestamp(pstmt, ++index, getField(jsonObject, "updated"));
+            record.bind(pstmt, ++index, CREATED);
+            record.bind(pstmt, ++index, UPDATED);
 
-            setString(pstmt, ++index, (String) jsonObject.get("description"));
+            record.bind(pstmt, ++index, DESCRIPTION);
 
-            setDate(pstmt, ++index, getField(jsonObject, "duedate"));
+            record.bind(pstmt, ++index, DUEDATE);
 
-            pstmt.setInt(++index, makeProjectID((String) jsonObject.get("project")));
-            setInteger(pstmt, ++index, getField(jsonObject, "status"));
-            setString(pstmt, ++index, getField(jsonObject, "reporter"));
-            setString(pstmt, ++index, getField(jsonObject, "assignee"));
-            pstmt.setInt(++index, Integer.parseInt((String) jsonObject.get("attachment")));
-            setString(pstmt, ++index, (String) jsonObject.get("additional_information"));
-            setString(pstmt, ++index, (String) jsonObject.get("review_comments"));
+            pstmt.setInt(++index, makeProjectID(record.getString(PROJECT)));
+            record.bind(pstmt, ++index, STATUS);
+            record.bind(pstmt, ++index, REPORTER);
+            record.bind(pstmt, ++index, ASSIGNEE);
+            pstmt.setInt(++index, record.getInt(ATTACHMENT));
+            record.bind(pstmt, ++index, ADDITIONAL_INFORMATION);
+            record.bind(pstmt, ++index, REVIEW_COMMENTS);
 
-            setDouble(pstmt, ++index, getField(jsonObject, "storypoint"), MAX_POINTS);
+            if (record.isNull(STORYPOINT)) {
+                pstmt.setNull(++index, java.sql.Types.NUMERIC);
+            }
+            else {
+                BigDecimal points = BigDecimal.valueOf(record.getDouble(STORYPOINT));
+                pstmt.setBigDecimal(++index, points.min(MAX_POINTS));
+            }
 
-            setTimestamp(pstmt, ++index, getField(jsonObject, "resolution_date"));
+            record.bind(pstmt, ++index, RESOLUTION_DATE);
 
-            setInteger(pstmt, ++index, getField(jsonObject, "sprint"));
+            record.bind(pstmt, ++index, SPRINT);
 
-            setString(pstmt, ++index, (String) jsonObject.get("updated_by"));
-            setBoolean(pstmt, ++index, getField(jsonObject, "rank_change"));
+            record.bind(pstmt, ++index, UPDATED_BY);
+            record.bind(pstmt, ++index, RANK_CHANGE);
 
-            setString(pstmt, ++index, getField(jsonObject, "epic"));
+            record.bind(pstmt, ++index, EPIC);
 
             // Ready status
-            pstmt.setBoolean(++index, "1".equals((String) jsonObject.get("flagged")));
-            setInteger(pstmt, ++index, getField(jsonObject, "ready_status"));
-            setString(pstmt, ++index, (String) jsonObject.get("ready_status_reason"));
-            setBoolean(pstmt, ++index, (String) jsonObject.get("approved"));
-            setBoolean(pstmt, ++index, (String) jsonObject.get("approved_by_po"));
+            pstmt.setBoolean(++index, !record.isNull(FLAGGED) && record.getFlag(FLAGGED));
+            record.bind(pstmt, ++index, READY_STATUS);
+            record.bind(pstmt, ++index, READY_STATUS_REASON);
+            record.bind(pstmt, ++index, APPROVED);
+            record.bind(pstmt, ++index, APPROVED_BY_PO);
 
-            pstmt.setInt(++index, Integer.parseInt((String) jsonObject.get("labels")));
-            setInteger(pstmt, ++index, getField(jsonObject, "versions"));
+            pstmt.setInt(++index, record.getInt(LABELS));
+            record.bind(pstmt, ++index, VERSIONS);
 
             // Test cases
-            setInteger(pstmt, ++index, (String) jsonObject.get("expected_ltcs"));
-            setInteger(pstmt, ++index, (String) jsonObject.get("expected_phtcs"));
-            setString(pstmt, ++index, getField(jsonObject, "test_given"));
-            setString(pstmt, ++index, getField(jsonObject, "test_when"));
-            setString(pstmt, ++index, getField(jsonObject, "test_then"));
-            setInteger(pstmt, ++index, getField(jsonObject, "test_execution"));
-            setInteger(pstmt, ++index, (String) jsonObject.get("test_execution_time"));
+            record.bind(pstmt, ++index, EXPECTED_LTCS);
+            record.bind(pstmt, ++index, EXPECTED_PHTCS);
+            record.bind(pstmt, ++index, TEST_GIVEN);
+            record.bind(pstmt, ++index, TEST_WHEN);
+            record.bind(pstmt, ++index, TEST_THEN);
+            record.bind(pstmt, ++index, TEST_EXECUTION);
+            record.bind(pstmt, ++index, TEST_EXECUTION_TIME);
 
-            setString(pstmt, ++index, (String) jsonObject.get("environment"), 100);
-            setString(pstmt, ++index, (String) jsonObject.get("external_project"));
+            setString(pstmt, ++index, record.getString(ENVIRONMENT), 100);
+            record.bind(pstmt, ++index, EXTERNAL_PROJECT);
 
             // Encryption
             pstmt.setInt(++index, SaltDb.Encryption.NONE);
@@ -180,16 +222,6 @@ public class ImpDataIssue extends BaseImport {
             }
         }
 
-        private void setBoolean(PreparedStatement pstmt, int index, String value) throws SQLException {
-            // For booleans, "-1" means false, "1" means true, and null or "0" means missing.
-            if (value == null || value.equals("0")) {
-                pstmt.setNull(index, java.sql.Types.BOOLEAN);
-            }
-            else {
-                pstmt.setBoolean(index, value.equals("1"));
-            }
-        }
-
         @Override
         protected void addToBatch(Object[] values, Object data, PreparedStatement pstmt) throws SQLException, PropertyVetoException {
             makeBatch(values, data, pstmt, false);
@@ -233,25 +265,23 @@ public class ImpDataIssue extends BaseImport {
     @Override
     public void parser() {        
         try (
-            FileReader fr = new FileReader(getMainImportPath());
-            BufferedJSONReader br = new BufferedJSONReader(fr);
+            JSONReader br = JSONReader.open(getMainImportPath());
             BatchedUpdateStatement cstmt = new BatchedIssueStatement(getInsertSql(), getUpdateSql());
         ) {
-            Object o;
-            while ((o = br.readObject()) != null) {
-                JSONObject jsonObject = (JSONObject) o;
-                
-                String issue_id = (String) jsonObject.get("issue_id");
-                String changelog_id = (String) jsonObject.get("changelog_id");
-                
+            ExportRecord record = new ExportRecord(SPEC);
+            while (br.readRecord(record)) {
                 Object[] values = new Object[]{
-                    Integer.parseInt(issue_id), Integer.parseInt(changelog_id)
+                    record.getInt(ISSUE_ID), record.getInt(CHANGELOG_ID)
                 };
-                
-                cstmt.batch(values, o);
+
+                // The batch keeps the record until it is executed
+                cstmt.batch(values, record);
+                record = new ExportRecord(SPEC);
             }
             
             cstmt.execute();
+            getLogger().log(Level.INFO, "Inserted {0} issues, updated {1} and left {2} unchanged",
+                    new Object[]{cstmt.getInserted(), cstmt.getUpdated(), cstmt.getUnchanged()});
         }
         catch (Exception ex) {
             logException(ex);
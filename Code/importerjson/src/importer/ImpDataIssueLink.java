@@ -19,14 +19,12 @@
  */
 package importer;
 
-import java.io.FileReader;
 import java.sql.Timestamp;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import dao.IssueLinkDb;
 import util.BaseImport;
 import util.BaseLinkDb.CheckResult;
+import util.JSONReader;
 
 /**
  * Importer for JIRA issue links.
@@ -36,15 +34,13 @@ public class ImpDataIssueLink extends BaseImport {
     
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
- 
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             IssueLinkDb linkDb = new IssueLinkDb()
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String from_key = (String) jsonObject.get("from_key");
@@ -22,11 +22,10 @@ package importer;
 import dao.BatchedCheckStatement;
 import java.beans.PropertyVetoException;
 import util.BaseImport;
-import java.io.FileReader;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import org.json.simple.JSONObject;
-import util.BufferedJSONReader;
+import util.JSONReader;
 
 /**
  * Importer for JIRA issue subtask relations.
@@ -39,8 +38,7 @@ public class ImpDataSubtask extends BaseImport {
         String sql = "insert into gros.subtask values (?,?);";
  
         try (
-            FileReader fr = new FileReader(getMainImportPath());
-            BufferedJSONReader br = new BufferedJSONReader(fr);
+            JSONReader br = JSONReader.open(getMainImportPath());
             BatchedCheckStatement cstmt = new BatchedCheckStatement("gros.subtask", sql,
                     new String[]{"id_parent", "id_subtask"},
                     new int[]{java.sql.Types.INTEGER, java.sql.Types.INTEGER}
@@ -21,11 +21,9 @@ package importer;
 
 import dao.DeveloperDb;
 import dao.DeveloperDb.Developer;
-import java.io.FileReader;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for JIRA developers.
@@ -35,16 +33,15 @@ public class ImpDeveloper extends BaseImport {
     
     @Override
     public void parser(){
-        JSONParser parser = new JSONParser();
         int project_id = this.getProjectID();
  
         try (
             DeveloperDb devDb = new DeveloperDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String display_name = (String) jsonObject.get("display_name");
@@ -55,8 +52,7 @@ public class ImpDeveloper extends BaseImport {
                 int dev_id = devDb.check_developer(dev);
                 // check whether the developer does not already exist
                 if(dev_id == 0) {
-                    devDb.insert_developer(dev);
-                    dev_id = devDb.check_developer(dev);
+                    dev_id = devDb.insert_developer(dev);
                 }
                 devDb.insert_project_developer(project_id, dev_id, dev);
 
@@ -21,14 +21,12 @@ package importer;
 
 import dao.EnvironmentDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for source environments.
@@ -38,16 +36,15 @@ public class ImpEnvironment extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project = getProjectID();
          
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             EnvironmentDb envDb = new EnvironmentDb()
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String environment = jsonObject.get("environment").toString();
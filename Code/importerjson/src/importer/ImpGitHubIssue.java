@@ -25,14 +25,12 @@ import dao.RepositoryDb;
 import dao.SaltDb;
 import java.beans.PropertyVetoException;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for GitHub issues.
@@ -43,17 +41,16 @@ public class ImpGitHubIssue extends BaseImport {
     @Override
     public void parser() {
         int project_id = getProjectID();
-        JSONParser parser = new JSONParser();
         
         try (
             RepositoryDb repoDb = new RepositoryDb();
             DeveloperDb devDb = new DeveloperDb();
             GitHubIssueDb issueDb = new GitHubIssueDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a)
+            while ((o = br.readObject()) != null)
             {
                 JSONObject jsonObject = (JSONObject) o;
                 
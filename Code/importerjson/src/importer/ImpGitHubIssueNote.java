@@ -24,13 +24,11 @@ import dao.GitHubIssueNoteDb;
 import dao.RepositoryDb;
 import dao.SaltDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for GitHub issue comments.
@@ -41,17 +39,16 @@ public class ImpGitHubIssueNote extends BaseImport {
     @Override
     public void parser() {
         int project_id = getProjectID();
-        JSONParser parser = new JSONParser();
         
         try (
             RepositoryDb repoDb = new RepositoryDb();
             DeveloperDb devDb = new DeveloperDb();
             GitHubIssueNoteDb noteDb = new GitHubIssueNoteDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a)
+            while ((o = br.readObject()) != null)
             {
                 JSONObject jsonObject = (JSONObject) o;
                 
@@ -21,13 +21,11 @@ package importer;
 
 import dao.RepositoryDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for GitLab repositories.
@@ -38,15 +36,14 @@ public class ImpGitLabRepo extends BaseImport {
     @Override
     public void parser() {
         int project_id = getProjectID();
-        JSONParser parser = new JSONParser();
  
         try (
             RepositoryDb repoDb = new RepositoryDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a)
+            while ((o = br.readObject()) != null)
             {
                 JSONObject jsonObject = (JSONObject) o;
                 
@@ -21,11 +21,12 @@ package importer;
 
 import dao.JenkinsDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.Reader;
 import java.util.logging.Level;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.ExportInput;
 
 /**
  * Importer for Jenkins usage statistics.
@@ -39,7 +40,7 @@ public class ImpJenkins extends BaseImport {
         JSONParser parser = new JSONParser();
         try (
             JenkinsDb jenkinsDb = new JenkinsDb();
-            FileReader fr = new FileReader(getMainImportPath());
+            Reader fr = ExportInput.open(getMainImportPath());
         ) {
             JSONObject jsonObject = (JSONObject) parser.parse(fr);
             String host = (String) jsonObject.get("host");
@@ -20,10 +20,9 @@
 package importer;
 
 import dao.StatusDb;
-import java.io.FileReader;
 import org.json.simple.JSONObject;
 import util.BaseImport;
-import util.BufferedJSONReader;
+import util.JSONReader;
 
 /**
  * Importer for JIRA status type metadata.
@@ -35,8 +34,7 @@ public class ImpJiraStatus extends BaseImport {
     public void parser() {
         try (
             StatusDb statusDb = new StatusDb();
-            FileReader fr = new FileReader(getMainImportPath());
-            BufferedJSONReader br = new BufferedJSONReader(fr)
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
             Object o;
             while ((o = br.readObject()) != null) {
@@ -26,13 +26,11 @@ import dao.RepositoryDb;
 import dao.SaltDb;
 import dao.SprintDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for GitLab merge requests or Team Foundation Server pull requests.
@@ -42,7 +40,6 @@ public class ImpMergeRequest extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project_id = this.getProjectID();
  
         try (
@@ -50,11 +47,11 @@ public class ImpMergeRequest extends BaseImport {
             DeveloperDb devDb = new DeveloperDb();
             SprintDb sprintDb = new SprintDb();
             MergeRequestDb requestDb = new MergeRequestDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a)
+            while ((o = br.readObject()) != null)
             {
                 JSONObject jsonObject = (JSONObject) o;
                 
@@ -25,12 +25,10 @@ import dao.ReviewDb;
 import dao.RepositoryDb;
 import dao.SaltDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for Team Foundation Server pull request reviews.
@@ -40,18 +38,17 @@ public class ImpMergeRequestReview extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project_id = this.getProjectID();
  
         try (
             RepositoryDb repoDb = new RepositoryDb();
             DeveloperDb devDb = new DeveloperDb();
             ReviewDb reviewDb = new ReviewDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a)
+            while ((o = br.readObject()) != null)
             {
                 JSONObject jsonObject = (JSONObject) o;
                 
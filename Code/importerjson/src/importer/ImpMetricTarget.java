@@ -25,7 +25,7 @@ import dao.MetricDb.MetricName;
 import java.beans.PropertyVetoException;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.Reader;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -40,6 +40,8 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import util.BaseImport;
+import util.ExportInput;
+import util.JSONReader;
 
 /**
  * Importer for metric targets.
@@ -48,16 +50,15 @@ import util.BaseImport;
 public class ImpMetricTarget extends BaseImport {
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int projectId = this.getProjectID();
  
         try (
             MetricDb metricDb = new MetricDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String name = (String) jsonObject.get("name");
@@ -133,7 +134,7 @@ public class ImpMetricTarget extends BaseImport {
     }
 
     private void loadBaseNames(MetricDb metricDb) throws ParseException, PropertyVetoException, SQLException {
-        try (FileReader fr = new FileReader(new File(getRootPath().toFile(), "metrics_base_names.json"))) {
+        try (Reader fr = ExportInput.open(new File(getRootPath().toFile(), "metrics_base_names.json"))) {
             JSONParser parser = new JSONParser();
             JSONArray a = (JSONArray) parser.parse(fr);
             List<String> base_names = new ArrayList<>();
@@ -149,15 +150,13 @@ public class ImpMetricTarget extends BaseImport {
     }
     
     public void updateDefaultTargets() {
-        JSONParser parser = new JSONParser();
- 
         try (
             MetricDb metricDb = new MetricDb();
-            FileReader fr = new FileReader(new File(getExportPath(), "data_metric_defaults.json"))
+            JSONReader br = JSONReader.open(new File(getExportPath(), "data_metric_defaults.json"))
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String base_name = (String) jsonObject.get("base_name");
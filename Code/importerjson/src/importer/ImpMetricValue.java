@@ -28,7 +28,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -46,14 +45,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import util.Bisect;
-import util.BufferedJSONReader;
+import util.ExportRecord;
+import util.JSONReader;
+import util.RecordSpec;
 import util.StringReplacer;
+import util.StringPool;
 
 /**
  * Importer for metric values.
@@ -62,6 +62,15 @@ import util.StringReplacer;
 public class ImpMetricValue extends BaseImport {
     private static class MetricCollector implements AutoCloseable {
         public static final int BUFFER_SIZE = 65536;
+        private static final RecordSpec SPEC = new RecordSpec();
+        private static final RecordSpec.Field NAME = SPEC.add("name", RecordSpec.Type.STRING);
+        private static final RecordSpec.Field BASE_NAME = SPEC.add("base_name", RecordSpec.Type.STRING);
+        private static final RecordSpec.Field DOMAIN_NAME = SPEC.add("domain_name", RecordSpec.Type.STRING);
+        private static final RecordSpec.Field DOMAIN_TYPE = SPEC.add("domain_type", RecordSpec.Type.STRING);
+        private static final RecordSpec.Field VALUE = SPEC.add("value", RecordSpec.Type.FLOAT);
+        private static final RecordSpec.Field CATEGORY = SPEC.add("category", RecordSpec.Type.STRING);
+        private static final RecordSpec.Field DATE = SPEC.add("date", RecordSpec.Type.TIMESTAMP);
+        private static final RecordSpec.Field SINCE_DATE = SPEC.add("since_date", RecordSpec.Type.TIMESTAMP);
         private MetricDb mDB = null;
         private SprintDb sprintDb = null;
         private final File path;
@@ -74,11 +83,11 @@ public class ImpMetricValue extends BaseImport {
             this.projectID = projectID;
         }
         
-        public void readBufferedJSON(BufferedJSONReader br) throws IOException, MetricReadException, SQLException, PropertyVetoException {
-            Object object;
+        public void readBufferedJSON(JSONReader br) throws IOException, MetricReadException, SQLException, PropertyVetoException {
+            ExportRecord record = new ExportRecord(SPEC);
             try {
-                while ((object = br.readObject()) != null) {
-                    handleObject((JSONObject) object);
+                while (br.readRecord(record)) {
+                    handleRecord(record);
                 }
             }
             catch (ParseException ex) {
@@ -86,25 +95,18 @@ public class ImpMetricValue extends BaseImport {
             }
         }
 
-        private void handleObject(JSONObject jsonObject) throws SQLException, PropertyVetoException {
-            String metric_name = (String) jsonObject.get("name");
-            String base_name = (String) jsonObject.get("base_name");
-            String domain_name = (String) jsonObject.get("domain_name");
-            String domain_type = (String) jsonObject.get("domain_type");
-            String value = (String) jsonObject.get("value");
-            String category = (String) jsonObject.get("category");
-            String date = (String) jsonObject.get("date");
-            String start = (String) jsonObject.get("since_date");
+        private void handleRecord(ExportRecord record) throws SQLException, PropertyVetoException {
+            String metric_name = record.getString(NAME);
+            String base_name = record.getString(BASE_NAME);
+            String domain_name = record.getString(DOMAIN_NAME);
+            String domain_type = record.getString(DOMAIN_TYPE);
+            String category = record.getString(CATEGORY);
             MetricName nameParts = null;
             if (base_name != null && domain_name != null) {
                 nameParts = new MetricName(metric_name, base_name, domain_name, domain_type);
             }
 
-            Timestamp since_date = null;
-            if (start != null) {
-                since_date = Timestamp.valueOf(start);
-            }
-            insert(metric_name, Float.parseFloat(value), category, Timestamp.valueOf(date), since_date, nameParts);
+            insert(metric_name, record.getFloat(VALUE), category, record.getTimestamp(DATE), record.getTimestamp(SINCE_DATE), nameParts);
         }
 
         public void insert(String metric_name, float value, String category, Timestamp date, Timestamp since_date, MetricName nameParts) throws SQLException, PropertyVetoException {
@@ -163,17 +165,24 @@ public class ImpMetricValue extends BaseImport {
         }
     }
 
+    // Fields whose values repeat across many metric values
+    private static final String[] POOLED_FIELDS = {
+        "name", "base_name", "domain_name", "domain_type", "category"
+    };
+
     @Override
     public void parser() {
         File exportPath = getExportPath();
+        StringPool pool = new StringPool(POOLED_FIELDS);
         int i = 0;
         for (String file : getImportFiles()) {
             File path = new File(exportPath, file);
             try (MetricCollector collector = new MetricCollector(exportPath, getProjectID())) {
                 // Read metrics JSON using buffered readers so that Java does not run out of memory
-                try (BufferedJSONReader br = new BufferedJSONReader(new FileReader(path))) {
+                try (JSONReader br = JSONReader.open(path.getPath(), pool)) {
                     collector.readBufferedJSON(br);
                 }
+                getLogger().log(Level.FINE, "String pool for {0}: {1}", new Object[]{getImportName(), pool});
             }
             catch (FileNotFoundException ex) {
                 getLogger().log(Level.WARNING, "Cannot import {0}: {1}", new Object[]{getImportName(), ex.getMessage()});
@@ -25,13 +25,11 @@ import dao.MetricDb;
 import dao.SaltDb;
 import dao.SprintDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for metric versions.
@@ -40,7 +38,6 @@ import util.BaseImport;
 public class ImpMetricVersion extends BaseImport {
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int projectId = this.getProjectID();
         String version_id = null;
  
@@ -48,11 +45,11 @@ public class ImpMetricVersion extends BaseImport {
             MetricDb metricDb = new MetricDb();
             SprintDb sprintDb = new SprintDb();
             DeveloperDb devDb = new DeveloperDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String message = (String) jsonObject.get("message");
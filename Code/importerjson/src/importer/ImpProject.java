@@ -22,10 +22,11 @@ package importer;
 import util.BaseImport;
 import dao.ProjectDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.Reader;
 import java.util.logging.Level;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
+import util.ExportInput;
 
 /**
  * Importer for projects.
@@ -50,7 +51,7 @@ public class ImpProject extends BaseImport {
         int project = 0;
          
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            Reader fr = ExportInput.open(getMainImportPath());
         ) {
             JSONObject jsonObject = (JSONObject) parser.parse(fr);
 
@@ -22,13 +22,11 @@ package importer;
 import dao.ReservationDb;
 import dao.SprintDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for reservations.
@@ -38,17 +36,16 @@ public class ImpReservation extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project_id = getProjectID();
  
         try (
             ReservationDb reservationDb = new ReservationDb();
             SprintDb sprintDb = new SprintDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String reservation_id = (String) jsonObject.get("reservation_id");
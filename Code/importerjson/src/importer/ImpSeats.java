@@ -22,7 +22,6 @@ package importer;
 import dao.SeatDb;
 import dao.SprintDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -30,10 +29,9 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Set;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for seat counts.
@@ -43,17 +41,16 @@ public class ImpSeats extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int projectId = this.getProjectID();
  
         try (
             SeatDb seatDb = new SeatDb();
             SprintDb sprintDb = new SprintDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String month = (String) jsonObject.get("month");
@@ -21,12 +21,10 @@ package importer;
 
 import dao.MetricDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for source identifiers.
@@ -36,16 +34,15 @@ public class ImpSourceId extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project = getProjectID();
          
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             MetricDb metricDb = new MetricDb()
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String domain_name = (String) jsonObject.get("domain_name");
@@ -21,11 +21,9 @@ package importer;
 
 import dao.SprintDb;
 import util.BaseImport;
-import java.io.FileReader;
 import java.sql.Timestamp;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import util.JSONReader;
 
 /**
  * Importer for JIRA sprints.
@@ -35,16 +33,15 @@ public class ImpSprint extends BaseImport {
     
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project = getProjectID();
  
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             SprintDb sprintDb = new SprintDb()
         ) {            
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 Object id = jsonObject.get("id");
@@ -26,13 +26,11 @@ import dao.SaltDb;
 import dao.SprintDb;
 import dao.TagDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for VCS tags.
@@ -42,7 +40,6 @@ public class ImpTag extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int projectID = getProjectID();
 
         try (
@@ -50,11 +47,11 @@ public class ImpTag extends BaseImport {
             RepositoryDb repoDb = new RepositoryDb();
             SprintDb sprintDb = new SprintDb();
             TagDb tagDb = new TagDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String repo_name = (String) jsonObject.get("repo_name");
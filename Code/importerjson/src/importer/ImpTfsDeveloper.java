@@ -22,12 +22,10 @@ package importer;
 import dao.DeveloperDb;
 import dao.SaltDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for TFS developers extracted from work items.
@@ -36,16 +34,15 @@ import util.BaseImport;
 public class ImpTfsDeveloper extends BaseImport {
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project_id = this.getProjectID();
  
         try (
             DeveloperDb devDb = new DeveloperDb();
-            FileReader fr = new FileReader(getMainImportPath())
+            JSONReader br = JSONReader.open(getMainImportPath())
         ) {
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String display_name = (String) jsonObject.get("display_name");
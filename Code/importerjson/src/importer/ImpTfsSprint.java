@@ -23,13 +23,11 @@ import dao.RepositoryDb;
 import dao.SprintDb;
 import dao.TeamDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.sql.Timestamp;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for TFS sprints.
@@ -38,18 +36,17 @@ import util.BaseImport;
 public class ImpTfsSprint extends BaseImport {
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project = getProjectID();
  
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             SprintDb sprintDb = new SprintDb();
             RepositoryDb repoDb = new RepositoryDb();
             TeamDb teamDb = new TeamDb()
         ) {            
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String name = (String) jsonObject.get("sprint_name");
@@ -23,12 +23,10 @@ import dao.RepositoryDb;
 import dao.TeamDb;
 import dao.TeamDb.Team;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for TFS teams.
@@ -38,17 +36,16 @@ public class ImpTfsTeam extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project = getProjectID();
  
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             TeamDb teamDb = new TeamDb();
             RepositoryDb repoDb = new RepositoryDb();
         ) {            
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String team_name = (String) jsonObject.get("team_name");
@@ -24,12 +24,10 @@ import dao.RepositoryDb;
 import dao.SaltDb;
 import dao.TeamDb;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.logging.Level;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for TFS teams members.
@@ -39,18 +37,17 @@ public class ImpTfsTeamMember extends BaseImport {
 
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         int project = getProjectID();
  
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             TeamDb teamDb = new TeamDb();
             RepositoryDb repoDb = new RepositoryDb();
             DeveloperDb devDb = new DeveloperDb()
         ) {            
-            JSONArray a = (JSONArray) parser.parse(fr);
+            Object o;
             
-            for (Object o : a) {
+            while ((o = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) o;
                 
                 String team_name = (String) jsonObject.get("team_name");
@@ -26,7 +26,6 @@ import dao.SprintDb;
 import dao.TeamDb;
 import java.beans.PropertyVetoException;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -35,7 +34,7 @@ import java.util.logging.Level;
 import java.util.regex.Pattern;
 import org.json.simple.JSONObject;
 import util.BaseImport;
-import util.BufferedJSONReader;
+import util.JSONReader;
 
 /**
  * Importer for TFS work item issue changelog versions.
@@ -173,8 +172,7 @@ public class ImpTfsWorkItem extends BaseImport {
     @Override
     public void parser() {
         try (
-            FileReader fr = new FileReader(getMainImportPath());
-            BufferedJSONReader br = new BufferedJSONReader(fr);
+            JSONReader br = JSONReader.open(getMainImportPath());
             BatchedUpdateStatement cstmt = new BatchedWorkItemStatement(getInsertSql(), getUpdateSql());
         ) {
             Object o;
@@ -192,6 +190,8 @@ public class ImpTfsWorkItem extends BaseImport {
             }
             
             cstmt.execute();
+            getLogger().log(Level.INFO, "Inserted {0} work items, updated {1} and left {2} unchanged",
+                    new Object[]{cstmt.getInserted(), cstmt.getUpdated(), cstmt.getUnchanged()});
         }
         catch (FileNotFoundException ex) {
             getLogger().log(Level.WARNING, "Cannot import {0}: {1}", new Object[]{getImportName(), ex.getMessage()});
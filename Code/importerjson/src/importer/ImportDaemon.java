@@ -0,0 +1,365 @@
+/**
+ * Daemon that imports projects when their exports change.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package importer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long-running importer that watches the export directories of projects
+ * and imports a project once its export has not changed for a quiet period,
+ * which indicates that the gatherer finished writing it. Projects are imported
+ * one at a time in the same process, such that caches and pooled connections
+ * stay warm between imports.
+ * 
+ * The daemon listens on a local socket for control commands, one per
+ * connection: "status" to describe the current, queued and previous imports,
+ * "import PROJECT[,PROJECT]" to queue projects for import and "stop" to
+ * finish the current import and stop the daemon.
+ * @author Leon Helwerda
+ */
+class ImportDaemon implements Closeable {
+    /**
+     * Default time in milliseconds without changes to an export directory
+     * before the project is imported.
+     */
+    public static final long DEFAULT_QUIET_MILLIS = 30000;
+
+    private static final Logger LOGGER = Logger.getLogger("importer");
+    
+    private final Path root;
+    private final long quietMillis;
+    private final Path socketPath;
+    private final Predicate<String> importer;
+    private final WatchService watcher;
+    private final Map<WatchKey, String> projects = new HashMap<>();
+    private final Map<String, Long> changes = new HashMap<>();
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> results = new ConcurrentSkipListMap<>();
+    private volatile String current = null;
+    private volatile boolean stopped = false;
+    private ServerSocketChannel server = null;
+    private Thread worker = null;
+
+    /**
+     * Create a daemon.
+     * @param root The directory that contains the export directories of
+     * the projects
+     * @param quietMillis The time in milliseconds without changes to an export
+     * directory before the project is imported
+     * @param socketPath The path of the local control socket, or null to not
+     * listen for control commands
+     * @param importer The function that imports a project and returns whether
+     * all its tasks finished successfully
+     * @throws IOException If the directories cannot be watched
+     */
+    public ImportDaemon(Path root, long quietMillis, Path socketPath, Predicate<String> importer) throws IOException {
+        this.root = root;
+        this.quietMillis = Math.max(0, quietMillis);
+        this.socketPath = socketPath;
+        this.importer = importer;
+        this.watcher = root.getFileSystem().newWatchService();
+        projects.put(root.register(watcher, StandardWatchEventKinds.ENTRY_CREATE), "");
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path directory : stream) {
+                watch(directory);
+            }
+        }
+    }
+    
+    private String watch(Path directory) throws IOException {
+        String project = directory.getFileName().toString();
+        if (project.startsWith(".")) {
+            return null;
+        }
+        projects.put(directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY), project);
+        return project;
+    }
+    
+    /**
+     * Watch the export directories and import changed projects until the
+     * daemon is stopped. The current import is finished before returning.
+     * @throws IOException If the control socket cannot be opened
+     * @throws InterruptedException If the thread is interrupted while waiting
+     * for changes
+     */
+    public void run() throws IOException, InterruptedException {
+        if (socketPath != null) {
+            listen();
+        }
+        worker = new Thread(this::work, "import-daemon");
+        worker.setDaemon(true);
+        worker.start();
+        LOGGER.log(Level.INFO, "Watching {0} for changed exports", root);
+        
+        long interval = Math.min(1000, Math.max(10, quietMillis / 4));
+        try {
+            while (!stopped) {
+                WatchKey key = watcher.poll(interval, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handle(key);
+                    key = watcher.poll();
+                }
+                enqueueQuiet();
+            }
+        }
+        catch (ClosedWatchServiceException ex) {
+            // Stopped by a control command
+        }
+        finally {
+            stop();
+            worker.join();
+        }
+    }
+    
+    private void handle(WatchKey key) throws IOException {
+        String project = projects.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (project == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            if (project.isEmpty()) {
+                Path directory = root.resolve((Path)event.context());
+                if (Files.isDirectory(directory)) {
+                    String created = watch(directory);
+                    if (created != null) {
+                        changes.put(created, System.nanoTime());
+                    }
+                }
+            }
+            else {
+                changes.put(project, System.nanoTime());
+            }
+        }
+        if (!key.reset()) {
+            projects.remove(key);
+        }
+    }
+    
+    private void enqueueQuiet() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<String, Long>> it = changes.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Long> change = it.next();
+            if (TimeUnit.NANOSECONDS.toMillis(now - change.getValue()) >= quietMillis) {
+                it.remove();
+                enqueue(change.getKey());
+            }
+        }
+    }
+    
+    /**
+     * Queue a project for import, unless it is already queued.
+     * @param project The project key
+     * @return Whether the project was added to the queue
+     */
+    public boolean enqueue(String project) {
+        if (!queued.add(project)) {
+            return false;
+        }
+        LOGGER.log(Level.INFO, "Queued project {0} for import", project);
+        queue.add(project);
+        return true;
+    }
+    
+    private void work() {
+        while (!stopped) {
+            String project;
+            try {
+                project = queue.poll(1, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (project == null) {
+                continue;
+            }
+            queued.remove(project);
+            current = project;
+            long startTime = System.currentTimeMillis();
+            String result;
+            try {
+                result = importer.test(project) ? "finished" : "finished with problems";
+            }
+            catch (RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, "Could not import project " + project, ex);
+                result = "failed: " + ex.getMessage();
+            }
+            finally {
+                current = null;
+            }
+            long duration = System.currentTimeMillis() - startTime;
+            results.put(project, result + " at " + Instant.ofEpochMilli(startTime) + " in " + duration + " ms");
+            LOGGER.log(Level.INFO, "Import of project {0} {1}", new Object[]{project, result});
+        }
+    }
+    
+    private void listen() throws IOException {
+        if (isListening(socketPath)) {
+            throw new IOException("Another daemon is listening on " + socketPath);
+        }
+        // No daemon is listening, so the socket file is stale if it exists
+        Files.deleteIfExists(socketPath);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        Thread control = new Thread(this::serve, "import-control");
+        control.setDaemon(true);
+        control.start();
+        LOGGER.log(Level.INFO, "Listening for control commands on {0}", socketPath);
+    }
+    
+    private static boolean isListening(Path path) {
+        try (SocketChannel client = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+            return true;
+        }
+        catch (IOException ex) {
+            return false;
+        }
+    }
+    
+    private void serve() {
+        while (!stopped) {
+            try (SocketChannel client = server.accept()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+                String line = reader.readLine();
+                Writer writer = new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8);
+                writer.write(command(line == null ? "" : line.trim()));
+                writer.flush();
+            }
+            catch (AsynchronousCloseException ex) {
+                return;
+            }
+            catch (IOException ex) {
+                if (!server.isOpen()) {
+                    return;
+                }
+                LOGGER.log(Level.WARNING, "Could not handle control command", ex);
+            }
+        }
+    }
+    
+    /**
+     * Perform a control command.
+     * @param line The command with its argument
+     * @return The response to the command
+     */
+    public String command(String line) {
+        String[] parts = line.split("\\s+", 2);
+        switch (parts[0]) {
+            case "status" -> {
+                return status();
+            }
+            case "import" -> {
+                if (parts.length < 2) {
+                    return "Usage: import PROJECT[,PROJECT]\n";
+                }
+                StringBuilder response = new StringBuilder();
+                for (String project : parts[1].split(",")) {
+                    project = project.trim();
+                    if (!project.isEmpty()) {
+                        response.append(enqueue(project) ? "Queued " : "Already queued ").append(project).append('\n');
+                    }
+                }
+                return response.toString();
+            }
+            case "stop" -> {
+                stop();
+                return "Stopping\n";
+            }
+            default -> {
+                return "Unknown command, use status, import PROJECT[,PROJECT] or stop\n";
+            }
+        }
+    }
+    
+    /**
+     * Describe the state of the daemon.
+     * @return The current import, the queued projects and the results of the
+     * last import of each project, one per line
+     */
+    public String status() {
+        StringBuilder status = new StringBuilder();
+        String project = current;
+        status.append(project == null ? "Idle" : "Importing " + project).append('\n');
+        status.append("Queued: ").append(String.join(", ", new ArrayList<>(queue))).append('\n');
+        for (Map.Entry<String, String> result : results.entrySet()) {
+            status.append(result.getKey()).append(": ").append(result.getValue()).append('\n');
+        }
+        return status.toString();
+    }
+    
+    /**
+     * Stop watching for changes. The current import is allowed to finish, but
+     * queued projects are no longer imported.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            watcher.close();
+        }
+        catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not stop watching exports", ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        if (server != null) {
+            server.close();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+}
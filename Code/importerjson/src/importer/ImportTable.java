@@ -20,11 +20,9 @@
 package importer;
 
 import dao.TableDb;
-import java.io.FileReader;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import util.BaseImport;
+import util.JSONReader;
 
 /**
  * Importer for metadata tables that only have an id--name relation.
@@ -64,16 +62,15 @@ public class ImportTable extends BaseImport {
     
     @Override
     public void parser() {
-        JSONParser parser = new JSONParser();
         Integer row_id;
          
         try (
-            FileReader fr = new FileReader(getMainImportPath());
+            JSONReader br = JSONReader.open(getMainImportPath());
             TableDb db = new TableDb(name, fieldName, metadataName);
         ) {
-            JSONArray jsonArray = (JSONArray) parser.parse(fr);
+            Object object;
             
-            for (Object object : jsonArray) {
+            while ((object = br.readObject()) != null) {
                 JSONObject jsonObject = (JSONObject) object;
                 
                 String id = (String) jsonObject.get("id");
@@ -27,4 +27,8 @@ public class ImporterException extends RuntimeException {
     public ImporterException(String string) {
         super(string);
     }
+
+    public ImporterException(String string, Throwable cause) {
+        super(string, cause);
+    }
 }
@@ -19,22 +19,43 @@
  */
 package importer;
 
+import dao.ConnectionScope;
+import dao.FingerprintDb;
+import dao.ImportTransaction;
 import dao.RepositoryDb;
+import dao.SharedCache;
+import java.beans.PropertyVetoException;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
+import util.BaseDb;
 import util.BaseImport;
+import util.ExportInput;
+import util.FileFingerprint;
 
 /**
  * The main importer application entry point.
@@ -45,9 +66,6 @@ import util.BaseImport;
 public class Importerjson {
     private final static String VERSION = "1.0.0";
 
-    private static String projectName = "";
-    private static int projectID = 0;
-    
     private final static HashMap<String, List<String>> GROUPED_TASKS = retrieveGroupedTasks();
 
     private static HashMap<String, List<String>> retrieveGroupedTasks() {
@@ -78,7 +96,7 @@ public class Importerjson {
         return groupedTasks;
     }
     
-    private final static List<String> DEFAULT_TASKS = retrieveDefaultTasks();
+    final static List<String> DEFAULT_TASKS = retrieveDefaultTasks();
     
     private static List<String> retrieveDefaultTasks() {
         List<String> defaultTasks = new ArrayList<>();
@@ -107,6 +125,55 @@ public class Importerjson {
         return defaultTasks;
     }
     
+    private final static HashMap<String, List<String>> TASK_DEPENDENCIES = retrieveTaskDependencies();
+    
+    private static HashMap<String, List<String>> retrieveTaskDependencies() {
+        HashMap<String, List<String>> dependencies = new HashMap<>();
+        
+        // JIRA
+        dependencies.put("issuelink", Arrays.asList("issue", "relationshiptype"));
+        dependencies.put("subtask", Arrays.asList("issue"));
+        dependencies.put("comment", Arrays.asList("issue"));
+        dependencies.put("component", Arrays.asList("issue"));
+        
+        // Quality dashboard metrics, which share metric names
+        dependencies.put("metric_value", Arrays.asList("sprint", "metric_target"));
+        dependencies.put("metric_version", Arrays.asList("sprint", "metric_value"));
+        
+        // Version control systems, where tasks that add developer aliases
+        // follow each other and repositories are known from the commits.
+        // Tasks that add repositories from their metadata may run at the same
+        // time, since the repository DAO serializes inserts for each project.
+        dependencies.put("commit", Arrays.asList("sprint", "developer"));
+        dependencies.put("change_path", Arrays.asList("commit"));
+        dependencies.put("tag", Arrays.asList("commit"));
+        dependencies.put("vcs_event", Arrays.asList("tag"));
+        dependencies.put("gitlab_repo", Arrays.asList("commit"));
+        dependencies.put("github_repo", Arrays.asList("commit"));
+        dependencies.put("github_issue", Arrays.asList("github_repo", "vcs_event"));
+        dependencies.put("github_issue_note", Arrays.asList("github_issue"));
+        dependencies.put("tfs_team", Arrays.asList("commit"));
+        dependencies.put("tfs_team_member", Arrays.asList("tfs_team", "github_issue_note"));
+        dependencies.put("tfs_developer", Arrays.asList("tfs_team_member"));
+        dependencies.put("tfs_sprint", Arrays.asList("tfs_team", "sprint"));
+        dependencies.put("tfs_work_item", Arrays.asList("tfs_sprint", "tfs_developer"));
+        dependencies.put("merge_request", Arrays.asList("gitlab_repo", "github_repo", "tfs_developer", "sprint"));
+        dependencies.put("merge_request_review", Arrays.asList("merge_request"));
+        dependencies.put("merge_request_note", Arrays.asList("merge_request_review"));
+        dependencies.put("commit_comment", Arrays.asList("merge_request_note"));
+        
+        // Other tasks
+        dependencies.put("ldap_developer", Arrays.asList("developer", "metric_version"));
+        dependencies.put("reservation", Arrays.asList("sprint"));
+        dependencies.put("seats", Arrays.asList("sprint"));
+        // Tracking only updates if no earlier task had problems
+        dependencies.put("update", Arrays.asList(TaskScheduler.ALL));
+        
+        return dependencies;
+    }
+    
+    final static TaskScheduler SCHEDULER = new TaskScheduler(DEFAULT_TASKS, TASK_DEPENDENCIES);
+    
     private final static List<String> SPECIAL_TASKS = Arrays.asList(
         "sprintlink", "developerproject", "developerlink",
         "metric_domain_name", "metric_default_target",
@@ -196,55 +263,202 @@ public class Importerjson {
     }
     
     private static abstract class ImportTask {
+        protected final String projectName;
+        protected int projectID = 0;
+        
+        protected ImportTask(String projectName) {
+            this.projectName = projectName;
+        }
+        
         public abstract void performTask(BaseImport importer);
+        public void performTask(String task, BaseImport importer) {
+            performTask(importer);
+        }
         public abstract List<String> getFiles();
         public abstract boolean hasProblems();
     }
 
     private static class PerformImport extends ImportTask {
+        // Tasks may run concurrently, so access is synchronized on the set
         protected final Set<String> problematicImports = new TreeSet<>();
+        private final boolean force;
+        
+        public PerformImport(String projectName, boolean force) {
+            super(projectName);
+            this.force = force;
+        }
         
         @Override
         public void performTask(BaseImport importer) {
+            perform(importer);
+        }
+        
+        /**
+         * Perform the import of a task, unless the fingerprints of its export
+         * files are the same as after its latest successful import. The
+         * fingerprints are recorded after the import completes successfully.
+         * @param task The name of the task
+         * @param importer The importer of the task
+         */
+        @Override
+        public void performTask(String task, BaseImport importer) {
+            importer.setProjectName(projectName);
+            importer.setProjectID(projectID);
+            Map<String, FileFingerprint> previous = getFingerprints(task);
+            Map<String, FileFingerprint> fingerprints = new HashMap<>();
+            try {
+                for (String file : importer.getImportFiles()) {
+                    fingerprints.put(file, FileFingerprint.of(new File(importer.getExportPath(), file), previous.get(file)));
+                }
+            }
+            catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not determine fingerprints of task {0}: {1}", new Object[]{task, ex.getMessage()});
+                fingerprints.clear();
+            }
+            if (!fingerprints.isEmpty() && !force && isUnchanged(fingerprints, previous)) {
+                showCompleteTask("Skipped unchanged " + importer.getImportName(), System.currentTimeMillis());
+                return;
+            }
+            if (perform(importer) && !fingerprints.isEmpty()) {
+                updateFingerprints(task, fingerprints);
+            }
+        }
+        
+        private Map<String, FileFingerprint> getFingerprints(String task) {
+            try (FingerprintDb fingerprintDb = new FingerprintDb()) {
+                return fingerprintDb.get_fingerprints(projectID, task);
+            }
+            catch (SQLException | PropertyVetoException ex) {
+                LOGGER.log(Level.WARNING, "Could not compare fingerprints of task {0}: {1}", new Object[]{task, ex.getMessage()});
+                return new HashMap<>();
+            }
+        }
+        
+        private boolean isUnchanged(Map<String, FileFingerprint> fingerprints, Map<String, FileFingerprint> previous) {
+            for (Map.Entry<String, FileFingerprint> fingerprint : fingerprints.entrySet()) {
+                FileFingerprint old = previous.get(fingerprint.getKey());
+                if (old == null || !fingerprint.getValue().matches(old)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private void updateFingerprints(String task, Map<String, FileFingerprint> fingerprints) {
+            try (FingerprintDb fingerprintDb = new FingerprintDb()) {
+                Map<String, FileFingerprint> previous = fingerprintDb.get_fingerprints(projectID, task);
+                for (Map.Entry<String, FileFingerprint> fingerprint : fingerprints.entrySet()) {
+                    if (previous.containsKey(fingerprint.getKey())) {
+                        fingerprintDb.update_fingerprint(projectID, task, fingerprint.getKey(), fingerprint.getValue());
+                    }
+                    else {
+                        fingerprintDb.insert_fingerprint(projectID, task, fingerprint.getKey(), fingerprint.getValue());
+                    }
+                }
+            }
+            catch (SQLException | PropertyVetoException ex) {
+                LOGGER.log(Level.WARNING, "Could not record fingerprints of task {0}: {1}", new Object[]{task, ex.getMessage()});
+            }
+        }
+        
+        private boolean perform(BaseImport importer) {
             long startTime;
 
             startTime = System.currentTimeMillis();
 
+            Set<String> earlierProblems;
+            synchronized (problematicImports) {
+                earlierProblems = new TreeSet<>(problematicImports);
+            }
             importer.setProjectName(projectName);
             importer.setProjectID(projectID);
-            importer.setProblematicImports(problematicImports);
-            importer.parser();
-            if (importer.hasExceptions()) {
-                if (problematicImports.equals(importer.getProblematicImports())) {
-                    problematicImports.addAll(Arrays.asList(importer.getImportFiles()));
-                }
-                else {
-                    problematicImports.addAll(importer.getProblematicImports());
+            importer.setProblematicImports(earlierProblems);
+            boolean completed = parse(importer);
+            if (importer.hasExceptions() || !completed) {
+                synchronized (problematicImports) {
+                    if (earlierProblems.equals(importer.getProblematicImports())) {
+                        problematicImports.addAll(Arrays.asList(importer.getImportFiles()));
+                    }
+                    else {
+                        problematicImports.addAll(importer.getProblematicImports());
+                    }
                 }
+                // Cached identifiers may refer to rows that did not make it
+                // into the database, so other imports should look them up.
+                SharedCache.clear();
                 showCompleteTask("Encountered problems while importing " + importer.getImportName(), startTime, Level.WARNING);
+                return false;
             }
-            else {
-                showCompleteTask("Imported " + importer.getImportName(), startTime);
+            showCompleteTask("Imported " + importer.getImportName(), startTime);
+            return true;
+        }
+        
+        /**
+         * Perform the import of the importer, within a transaction if these
+         * are enabled, or otherwise with a shared connection if enabled.
+         * The transaction is rolled back if the importer has encountered
+         * problems.
+         * @param importer The importer
+         * @return Whether the transaction or scope could be completed
+         */
+        private boolean parse(BaseImport importer) {
+            if (ImportTransaction.isEnabled()) {
+                try (ImportTransaction transaction = ImportTransaction.begin()) {
+                    importer.parser();
+                    if (!importer.hasExceptions()) {
+                        transaction.commit();
+                    }
+                    return true;
+                }
+                catch (SQLException ex) {
+                    LOGGER.log(Level.SEVERE, "Could not complete transaction for " + importer.getImportName(), ex);
+                    return false;
+                }
             }
+            if (ConnectionScope.isEnabled()) {
+                try (ConnectionScope scope = ConnectionScope.open()) {
+                    importer.parser();
+                    return true;
+                }
+                catch (SQLException ex) {
+                    LOGGER.log(Level.SEVERE, "Could not release connection for " + importer.getImportName(), ex);
+                    return false;
+                }
+            }
+            importer.parser();
+            return true;
         }
         
         @Override
         public List<String> getFiles() {
-            return new ArrayList<>(problematicImports);
+            synchronized (problematicImports) {
+                return new ArrayList<>(problematicImports);
+            }
         }
         
         @Override
         public boolean hasProblems() {
-            return !problematicImports.isEmpty();
+            synchronized (problematicImports) {
+                return !problematicImports.isEmpty();
+            }
         }
     }
     
     private static class FileCollector extends ImportTask {
         private final ArrayList<String> files = new ArrayList<>();
         
+        public FileCollector() {
+            super("ANY");
+        }
+        
         @Override
         public void performTask(BaseImport importer) {
-            String[] importFiles = importer.getImportFiles();
+            // List compressed export files instead if they are used
+            File exportPath = importer.getExportPath();
+            String[] importFiles = importer.getImportFiles().clone();
+            for (int i = 0; i < importFiles.length; i++) {
+                importFiles[i] = ExportInput.resolveName(exportPath, importFiles[i]);
+            }
             LOGGER.log(Level.INFO, "Importer {0} uses files {1}", new Object[]{importer.getImportName(), Arrays.toString(importFiles)});
             files.addAll(Arrays.asList(importFiles));
         }
@@ -312,7 +526,7 @@ public class Importerjson {
     
     public static String formatUsage(boolean all) {
         StringBuilder usage = new StringBuilder("\n");
-        usage.append("Usage: java [-Dimporter.log=LEVEL] [...] -jar importerjson.jar <project> [tasks]\n");
+        usage.append("Usage: java [-Dimporter.log=LEVEL] [...] -jar importerjson.jar [--force] <project>[,<project>...] [tasks]\n");
         usage.append("\nMonetDB importer ").append(VERSION);
         
         if (all) {
@@ -326,11 +540,41 @@ public class Importerjson {
             usage.append("\n-Dimporter.email_domain=DOMAIN: Local domain for internal developers (P)");
             usage.append("\n-Dimporter.update=\"FILE FILE\": Update tracker files for \"update\" task");
             usage.append("\n-Dimporter.encrypt_table=TABLE,TABLE: Tables for \"encrypt\" task");
+            usage.append("\n-Dimporter.copy_tables=TABLE,TABLE: Large tables to bulk load into");
+            usage.append("\n-Dimporter.batch_min=N, -Dimporter.batch_max=N: Limits of adaptive batch sizes");
+            usage.append("\n-Dimporter.batch_bytes=N: Estimated size of a batch in bytes before it is sent");
+            usage.append("\n-Dimporter.batch_time=MS: Target duration of a batch in milliseconds");
+            usage.append("\n-Dimporter.async_tables=TABLE,TABLE: Tables to write batches to in background");
+            usage.append("\n-Dimporter.async_batches=N: Batches to write in background before waiting");
+            usage.append("\n-Dimporter.key_index_tables=TABLE,TABLE: Tables to preload existing keys of");
+            usage.append("\n-Dimporter.key_index_exact=N: Keys to preload exactly rather than in a filter");
+            usage.append("\n-Dimporter.shared_connection=false: Use a connection per statement rather than per task");
+            usage.append("\n-Dimporter.workers=N: Number of import tasks to run concurrently (default 1)");
+            usage.append("\n-Dimporter.projects=N: Number of projects to import concurrently (default 1)");
+            usage.append("\n-Dimporter.shared_caches=true: Share caches of global tables between tasks");
+            usage.append("\n-Dimporter.virtual_threads=true: Run concurrent tasks and projects on virtual threads");
+            usage.append("\n-Dimporter.connections=N: Maximum number of tasks using database connections at once");
+            usage.append("\n-Dimporter.daemon_quiet=MILLIS: Time without changes to an export before the daemon imports it");
+            usage.append("\n-Dimporter.daemon_socket=PATH: Control socket of the daemon (default importer.sock), empty to disable");
+            usage.append("\n-Dimporter.pool_size=N: Maximum number of connections in the pool");
+            usage.append("\n-Dimporter.checkout_timeout=MILLIS: Time to wait for a connection from the pool, 0 to wait indefinitely");
+            usage.append("\n-Dimporter.hash_cache=N: Number of recent encrypted names to cache");
+            usage.append("\n-Dimporter.transactions=true: Perform each import task in a transaction");
+            usage.append("\n-Dimporter.commit_rows=N, -Dimporter.commit_seconds=N: Commit interval of transactions");
+            usage.append("\n-Dimporter.parse_threads=N: Threads to parse large metric value and change path files with");
+            usage.append("\n-Dimporter.read_queue=N: Objects to read ahead of the import on a separate thread, 0 to disable");
+            usage.append("\n-Dimporter.string_pool=N: Slots for repeated commit, change path and metric strings, 0 to disable");
+            usage.append("\n-Dimporter.snapshot_dir=PATH: Directory to cache binary snapshots of parsed export files in");
+            usage.append("\n-Dimporter.tail=MILLIS: Time to wait for more objects at the end of newline-delimited export files (default 0)");
 
-            usage.append("\n\nProject: A primary source key (Jira/Azure DevOps) to import for, or:\n");
+            usage.append("\n\nProject: A primary source key (Jira/Azure DevOps) to import for, a comma-separated");
+            usage.append("\nlist of keys or glob patterns of export directories to import in one process, or:\n");
             usage.append("\n--help: Print this usage");
+            usage.append("\n--force: Before the project, import files that are unchanged since their latest import");
             usage.append("\n--files: Instead print a list of files involved in selected tasks");
             usage.append("\n--: Only run special tasks that do not need a project");
+            usage.append("\n--daemon: Watch export directories and import projects once their exports change;");
+            usage.append("\n          control with \"status\", \"import PROJECT\" or \"stop\" on the control socket");
 
             usage.append("\n\nTask groups and tasks:\n");
             usage.append("\n- all: All default (non-special) tasks and developerlink special task\n");
@@ -345,6 +589,16 @@ public class Importerjson {
             
             usage.append("\n\n - Other (default) tasks: ").append(String.join(", ", otherTasks));
             usage.append("\n\n- Special tasks: ").append(String.join(", ", SPECIAL_TASKS));
+            
+            usage.append("\n\nTask dependencies: Tasks run after the selected tasks they depend on,\n");
+            usage.append("other tasks run concurrently with -Dimporter.workers=N\n");
+            for (String task : DEFAULT_TASKS) {
+                List<String> dependencies = SCHEDULER.getDependencies(task);
+                if (!dependencies.isEmpty()) {
+                    usage.append("\n - ").append(task).append(": ");
+                    usage.append(String.join(", ", dependencies));
+                }
+            }
         }
         
         return usage.toString();
@@ -379,6 +633,13 @@ public class Importerjson {
             throw new ImporterException("Illegal importer.log argument: " + ex.getMessage() + formatUsage());
         }
         
+        // Import all files, even if they are unchanged since the latest
+        // successful import of the task.
+        boolean force = args.length > 0 && "--force".equals(args[0]);
+        if (force) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        
         if (args.length <= 0 || "--help".equals(args[0])) {
             throw new ImporterException(formatUsage(true));
         }
@@ -398,79 +659,225 @@ public class Importerjson {
             tasks = allTasks;
         }
         
-        ImportTask performer = null;
+        List<String> projects;
         switch (args[0]) {
             case "--files" -> {
-                performer = new FileCollector();
-                projectName = "ANY";
-                performTasks(tasks, performer);
+                ImportTask performer = new FileCollector();
+                performTasks(tasks, performer, 1);
                 String files = String.join(" ", performer.getFiles());
                 // Output the file list to standard output.
                 System.out.println(files); //NOSONAR
                 return;
             }
+            case "--daemon" -> {
+                performDaemon(tasks, force);
+                return;
+            }
             case "--" -> {
                 // Only allow special tasks that may run project-independently
                 if (!SPECIAL_TASKS.containsAll(tasks)) {
                     throw new ImporterException("Project must be given for the provided tasks" + formatUsage());
                 }
-                performer = new PerformImport();
+                projects = Arrays.asList("");
             }
             default -> {
-                projectName = args[0].trim();
-                if (performer == null) {
-                    performer = new PerformImport();
-                }
+                projects = retrieveProjects(args[0].trim());
             }
         }
         
         LOGGER.log(Level.INFO, "Tasks to run: {0}", Arrays.toString(tasks.toArray()));
         
-        // Perform project import so that project ID is known to exist
-        performTasks(tasks, performer);
-        performSpecialTasks(tasks);
-        if (performer.hasProblems()) {
-            throw new ImporterException("Not all tasks finished successfully");
+        if (projects.size() == 1) {
+            ImportTask performer = performProject(projects.get(0), tasks, force);
+            if (performer.hasProblems()) {
+                throw new ImporterException("Not all tasks finished successfully");
+            }
+        }
+        else {
+            performProjects(projects, tasks, force);
         }
     }
     
-    private static void performTasks(SortedSet<String> tasks, ImportTask performer) {
-        if (!projectName.isEmpty()) {
-            ImpProject impProject = new ImpProject();
-            performer.performTask(impProject);
-            projectID = impProject.getProjectID();
-        }
-        
-        for (String task : DEFAULT_TASKS) {
-            if (tasks.contains(task) && TASK_IMPORTERS.containsKey(task)) {
-                Class<? extends BaseImport> importClass = TASK_IMPORTERS.get(task);
-                BaseImport importer = null;
-                if (IMPORTER_ARGUMENTS.containsKey(task)) {
-                    String[] arguments = IMPORTER_ARGUMENTS.get(task);
-                    try {
-                        Class<?>[] typeSpec = new Class<?>[arguments.length];
-                        Arrays.fill(typeSpec, String.class);
-                        Constructor<? extends BaseImport> constructor = importClass.getDeclaredConstructor(typeSpec);
-                        importer = constructor.newInstance((Object[]) arguments);
-                    } catch (ReflectiveOperationException ex) {
-                        LOGGER.log(Level.SEVERE, "While instatiating importer for task " + task, ex);
+    /**
+     * Run a daemon that imports projects whose export directories changed,
+     * until it is stopped through its control socket. Caches of global tables
+     * are shared between the imports.
+     * @param tasks The tasks to perform for each project
+     * @param force Whether to import files that are unchanged since their
+     * latest successful import
+     */
+    private static void performDaemon(SortedSet<String> tasks, boolean force) {
+        long quietMillis = Long.getLong("importer.daemon_quiet", ImportDaemon.DEFAULT_QUIET_MILLIS);
+        String socket = System.getProperty("importer.daemon_socket", "importer.sock");
+        Path socketPath = socket.isEmpty() ? null : Path.of(socket).toAbsolutePath();
+        SharedCache.setEnabled(true);
+        try (ImportDaemon daemon = new ImportDaemon(new BaseDb().getPath(), quietMillis, socketPath,
+                project -> !performProject(project, tasks, force).hasProblems())) {
+            daemon.run();
+        }
+        catch (IOException ex) {
+            throw new ImporterException("Could not run import daemon: " + ex.getMessage(), ex);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ImporterException("Interrupted while running import daemon", ex);
+        }
+    }
+    
+    /**
+     * Determine the projects to import from the project argument, which is
+     * a comma-separated list of project keys or glob patterns that match
+     * directories in the export path.
+     * @param argument The project argument
+     * @return The project keys
+     */
+    private static List<String> retrieveProjects(String argument) {
+        Set<String> projects = new LinkedHashSet<>();
+        Path path = new BaseDb().getPath();
+        for (String project : argument.split(",")) {
+            project = project.trim();
+            if (project.isEmpty()) {
+                continue;
+            }
+            if (!project.contains("*") && !project.contains("?") && !project.contains("[")) {
+                projects.add(project);
+                continue;
+            }
+            SortedSet<String> matches = new TreeSet<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, project)) {
+                for (Path directory : stream) {
+                    if (Files.isDirectory(directory)) {
+                        matches.add(directory.getFileName().toString());
                     }
                 }
-                else {
-                    try {
-                        importer = importClass.getDeclaredConstructor().newInstance();
-                    } catch (ReflectiveOperationException ex) {
-                        LOGGER.log(Level.SEVERE, "While instantiating importer for task " + task, ex);
+            }
+            catch (IOException | PatternSyntaxException ex) {
+                throw new ImporterException("Cannot find projects matching " + project + ": " + ex.getMessage());
+            }
+            if (matches.isEmpty()) {
+                LOGGER.log(Level.WARNING, "No projects match {0} in {1}", new Object[]{project, path});
+            }
+            projects.addAll(matches);
+        }
+        if (projects.isEmpty()) {
+            throw new ImporterException("No projects to import" + formatUsage());
+        }
+        return new ArrayList<>(projects);
+    }
+    
+    /**
+     * Import multiple projects in this process. The projects run concurrently
+     * up to the number of the "importer.projects" property, and the caches of
+     * global tables are shared between them.
+     * @param projects The project keys
+     * @param tasks The tasks to perform for each project
+     * @param force Whether to import files that are unchanged since their
+     * latest successful import
+     */
+    private static void performProjects(List<String> projects, SortedSet<String> tasks, boolean force) {
+        int limit = Math.max(1, Integer.getInteger("importer.projects", 1));
+        boolean shared = SharedCache.isEnabled();
+        SharedCache.setEnabled(true);
+        ExecutorService executor = TaskScheduler.createExecutor("import-project", Math.min(limit, projects.size()));
+        Semaphore permits = new Semaphore(limit);
+        Map<String, Future<ImportTask>> results = new LinkedHashMap<>();
+        for (String project : projects) {
+            results.put(project, executor.submit(() -> {
+                permits.acquire();
+                try {
+                    return performProject(project, tasks, force);
+                }
+                finally {
+                    permits.release();
+                }
+            }));
+        }
+        
+        List<String> failed = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Future<ImportTask>> result : results.entrySet()) {
+                try {
+                    if (result.getValue().get().hasProblems()) {
+                        failed.add(result.getKey());
                     }
                 }
-                if (importer != null) {
-                    performer.performTask(importer);
+                catch (ExecutionException ex) {
+                    LOGGER.log(Level.SEVERE, "Could not import project " + result.getKey(), ex.getCause());
+                    failed.add(result.getKey());
                 }
             }
         }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ImporterException("Interrupted while importing projects", ex);
+        }
+        finally {
+            executor.shutdownNow();
+            SharedCache.setEnabled(shared);
+        }
+        
+        if (!failed.isEmpty()) {
+            throw new ImporterException("Not all tasks finished successfully for projects " + String.join(", ", failed));
+        }
+    }
+    
+    private static ImportTask performProject(String project, SortedSet<String> tasks, boolean force) {
+        ImportTask performer = new PerformImport(project, force);
+        
+        // Perform project import so that project ID is known to exist
+        int workers = Math.max(1, Integer.getInteger("importer.workers", 1));
+        performTasks(tasks, performer, workers);
+        performSpecialTasks(tasks, performer);
+        return performer;
+    }
+    
+    private static void performTasks(SortedSet<String> tasks, ImportTask performer, int workers) {
+        if (!performer.projectName.isEmpty()) {
+            ImpProject impProject = new ImpProject();
+            performer.performTask(impProject);
+            performer.projectID = impProject.getProjectID();
+        }
+        
+        SortedSet<String> importTasks = new TreeSet<>(tasks);
+        importTasks.retainAll(TASK_IMPORTERS.keySet());
+        try {
+            SCHEDULER.run(importTasks, workers, task -> performTask(task, performer));
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ImporterException("Interrupted while performing tasks", ex);
+        }
+    }
+    
+    private static void performTask(String task, ImportTask performer) {
+        Class<? extends BaseImport> importClass = TASK_IMPORTERS.get(task);
+        BaseImport importer = null;
+        if (IMPORTER_ARGUMENTS.containsKey(task)) {
+            String[] arguments = IMPORTER_ARGUMENTS.get(task);
+            try {
+                Class<?>[] typeSpec = new Class<?>[arguments.length];
+                Arrays.fill(typeSpec, String.class);
+                Constructor<? extends BaseImport> constructor = importClass.getDeclaredConstructor(typeSpec);
+                importer = constructor.newInstance((Object[]) arguments);
+            } catch (ReflectiveOperationException ex) {
+                LOGGER.log(Level.SEVERE, "While instatiating importer for task " + task, ex);
+            }
+        }
+        else {
+            try {
+                importer = importClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ex) {
+                LOGGER.log(Level.SEVERE, "While instantiating importer for task " + task, ex);
+            }
+        }
+        if (importer != null) {
+            performer.performTask(task, importer);
+        }
     }
         
-    private static void performSpecialTasks(SortedSet<String> tasks) {
+    private static void performSpecialTasks(SortedSet<String> tasks, ImportTask performer) {
+        String projectName = performer.projectName;
+        int projectID = performer.projectID;
         ImpCommit impCommit = new ImpCommit();
         impCommit.setProjectName(projectName);
         impCommit.setProjectID(projectID);
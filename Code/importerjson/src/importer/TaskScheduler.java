@@ -0,0 +1,218 @@
+/**
+ * Scheduler of import tasks.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package importer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A scheduler that runs import tasks according to a graph of dependencies
+ * between them. Each task starts once the tasks that it depends on have
+ * finished, and tasks that do not depend on each other run concurrently on
+ * a pool of workers. With one worker, the tasks run in the order in which
+ * they are registered. If the "importer.virtual_threads" property is set,
+ * then the workers are virtual threads, which do not occupy a platform thread
+ * while a task waits for the database.
+ * 
+ * Dependencies only refer to earlier tasks in the order, so the graph has no
+ * cycles. A task may depend on "all" to run after every earlier task. If a
+ * dependency is not selected to run, then the task instead depends on the
+ * dependencies of that task.
+ * @author Leon Helwerda
+ */
+class TaskScheduler {
+    /**
+     * Dependency that refers to all earlier tasks.
+     */
+    public static final String ALL = "all";
+
+    private final List<String> order;
+    private final Map<String, List<String>> dependencies;
+
+    /**
+     * Create a scheduler.
+     * @param order The tasks in the order in which they run sequentially
+     * @param dependencies The tasks that each task depends on
+     * @throws IllegalArgumentException If a task depends on a task that is
+     * not earlier in the order
+     */
+    public TaskScheduler(List<String> order, Map<String, List<String>> dependencies) {
+        this.order = new ArrayList<>(order);
+        this.dependencies = new HashMap<>(dependencies);
+        for (Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+            int index = this.order.indexOf(entry.getKey());
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown task " + entry.getKey());
+            }
+            for (String dependency : entry.getValue()) {
+                if (!dependency.equals(ALL) && !this.order.subList(0, index).contains(dependency)) {
+                    throw new IllegalArgumentException("Task " + entry.getKey() + " depends on " + dependency + " which is not an earlier task");
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieve the tasks that a task depends on directly.
+     * @param task The task
+     * @return The dependencies, possibly including "all"
+     */
+    public List<String> getDependencies(String task) {
+        return dependencies.getOrDefault(task, Collections.emptyList());
+    }
+
+    /**
+     * Determine the order and dependencies of selected tasks.
+     * @param tasks The tasks to run, of which unknown tasks are ignored
+     * @return The selected tasks in order, with the selected tasks that they
+     * wait for directly or through unselected dependencies
+     */
+    public Map<String, Set<String>> resolve(Collection<String> tasks) {
+        Map<String, Set<String>> resolved = new LinkedHashMap<>();
+        for (String task : order) {
+            if (tasks.contains(task)) {
+                resolved.put(task, collect(task, tasks, resolved.keySet()));
+            }
+        }
+        return resolved;
+    }
+
+    private Set<String> collect(String task, Collection<String> tasks, Set<String> earlier) {
+        Set<String> prerequisites = new LinkedHashSet<>();
+        for (String dependency : getDependencies(task)) {
+            if (dependency.equals(ALL)) {
+                prerequisites.addAll(earlier);
+            }
+            else if (tasks.contains(dependency)) {
+                prerequisites.add(dependency);
+            }
+            else {
+                prerequisites.addAll(collect(dependency, tasks, earlier));
+            }
+        }
+        return prerequisites;
+    }
+
+    /**
+     * Run selected tasks. If a task throws an exception, then no further
+     * tasks are started, the running tasks are allowed to finish and the
+     * exception is thrown.
+     * @param tasks The tasks to run, of which unknown tasks are ignored
+     * @param workers The maximum number of tasks to run concurrently
+     * @param action The action that performs a task
+     * @throws InterruptedException If the thread is interrupted while waiting
+     * for tasks to finish
+     */
+    public void run(Collection<String> tasks, int workers, Consumer<String> action) throws InterruptedException {
+        Map<String, Set<String>> resolved = resolve(tasks);
+        if (workers <= 1) {
+            for (String task : resolved.keySet()) {
+                action.accept(task);
+            }
+            return;
+        }
+
+        Map<String, List<String>> dependents = new HashMap<>();
+        Map<String, Integer> waiting = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : resolved.entrySet()) {
+            waiting.put(entry.getKey(), entry.getValue().size());
+            for (String prerequisite : entry.getValue()) {
+                dependents.computeIfAbsent(prerequisite, key -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        ExecutorService executor = createExecutor("import-worker", workers);
+        CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+        List<String> pending = new ArrayList<>(resolved.keySet());
+        int running = 0;
+        try {
+            while (!pending.isEmpty() || running > 0) {
+                for (Iterator<String> it = pending.iterator(); it.hasNext() && running < workers;) {
+                    String task = it.next();
+                    if (waiting.get(task) == 0) {
+                        it.remove();
+                        completion.submit(() -> {
+                            action.accept(task);
+                            return task;
+                        });
+                        running++;
+                    }
+                }
+                String finished = completion.take().get();
+                running--;
+                for (String dependent : dependents.getOrDefault(finished, Collections.emptyList())) {
+                    waiting.merge(dependent, -1, Integer::sum);
+                }
+            }
+        }
+        catch (ExecutionException ex) {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new ImporterException("Import task failed", cause);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create an executor for import work. If the "importer.virtual_threads"
+     * property is set, then each submitted job runs on a new virtual thread
+     * and callers must limit the number of concurrent jobs themselves.
+     * Otherwise, the jobs run on a fixed pool of daemon threads.
+     * @param name The prefix of the names of the threads
+     * @param threads The number of platform threads in the pool
+     * @return The executor
+     */
+    static ExecutorService createExecutor(String name, int threads) {
+        if (Boolean.getBoolean("importer.virtual_threads")) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
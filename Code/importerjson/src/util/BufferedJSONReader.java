@@ -21,26 +21,50 @@ package util;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
-import org.json.simple.parser.JSONParser;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 
 /**
  * A reader that emits JSON objects from an JSON-encoded input stream.
+ * The reader tokenizes the stream in a single pass over a character buffer
+ * and builds the JSON values directly from the buffer, without collecting the
+ * text of each object first.
+ * 
+ * The format of the stream is detected from its first value: either an array
+ * of objects, a single string, or a sequence of objects separated only by
+ * whitespace, such as newline-delimited JSON. A sequence can be tailed while
+ * it is still being written, in which case the reader waits for more data at
+ * the end of the stream until it stays idle for some time.
  * @author Leon Helwerda
  */
-public class BufferedJSONReader extends LineNumberReader {
-    private final JSONParser parser;
-    private boolean inArray = false;
+public class BufferedJSONReader extends Reader implements JSONReader {
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+    private static final int KEY_CACHE_SIZE = 256;
+    private static final long TAIL_POLL_MILLIS = 100;
+
+    private enum State { START, ARRAY, ELEMENTS, SEQUENCE, DONE }
+
+    private final Reader in;
+    private final char[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private long offset = 0;
+    private int lineNumber = 0;
+    private State state;
+    private final StringBuilder scratch = new StringBuilder();
+    private final String[] keyCache = new String[KEY_CACHE_SIZE];
+    private StringPool pool = null;
+    private long tailMillis = 0;
 
     /**
      * Create a new buffered JSON reader, using the default input-buffer size.
      * @param in A Reader object to provide the underlying stream
      */
     public BufferedJSONReader(Reader in) {
-        super(in);
-        parser = new JSONParser();
+        this(in, DEFAULT_BUFFER_SIZE);
     }
     
     /**
@@ -50,20 +74,56 @@ public class BufferedJSONReader extends LineNumberReader {
      * @param sz An int specifying the size of the buffer
      */
     public BufferedJSONReader(Reader in, int sz) {
-        super(in, sz);
-        parser = new JSONParser();
+        this(in, sz, false);
+    }
+
+    /**
+     * Create a new buffered JSON reader for either an entire JSON stream or
+     * a fragment of the elements of a JSON array. A fragment contains values
+     * separated by commas, possibly with a leading or trailing comma, and ends
+     * at the end of the stream or at the end of the array.
+     * @param in A Reader object to provide the underlying stream
+     * @param sz An int specifying the size of the buffer
+     * @param fragment Whether the stream is a fragment of array elements
+     */
+    BufferedJSONReader(Reader in, int sz, boolean fragment) {
+        super(in);
+        if (sz <= 0) {
+            throw new IllegalArgumentException("Buffer size <= 0");
+        }
+        this.in = in;
+        this.buffer = new char[sz];
+        this.state = fragment ? State.ELEMENTS : State.START;
     }
     
     /**
-     * Read a JSON object (or string if on first line) from the file.
+     * Use a pool for the string values of certain fields of the JSON objects.
+     * @param pool The string pool, or null to create new strings for all values
+     */
+    public void setStringPool(StringPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Wait for more data at the end of a sequence of objects, for example
+     * a newline-delimited JSON file to which another process appends.
+     * @param idleMillis The number of milliseconds to wait for more data
+     * before the end of the stream is accepted, or 0 to not wait
+     */
+    public void setTail(long idleMillis) {
+        this.tailMillis = Math.max(0, idleMillis);
+    }
+
+    /**
+     * Read a JSON object (or string if it is the only value) from the file.
      * This method returns the parsed object without reading the entire file,
      * and can be called again to read the next object until the end of the file
      * is correctly reached.
-     * The accepted JSON data must be empty, a string or an array of objects.
-     * The data must be formatted in such as way that we can detect starts and
-     * ends of strings, arrays and objects easily: no whitespace or empty lines,
-     * array starts and ends on their own line, and object ends with "}," with
-     * no nesting of objects or arrays within the objects of tha main array.
+     * The accepted JSON data must be empty, a string, an array of objects or
+     * a sequence of objects. The array may be formatted in any way, for example
+     * with one object per line, pretty-printed or compact, and its objects may
+     * contain nested objects and arrays. The objects of a sequence may be
+     * delimited by newlines or follow each other directly.
      * @return Object The JSON object: Either a JSONObject containing the map
      * of keys and values in the object, or a String if the input stream consists
      * of only a JSON-encoded string, or null if the input stream consists of
@@ -73,49 +133,557 @@ public class BufferedJSONReader extends LineNumberReader {
      * before enough of the JSON data could be constructed to parse it.
      * @throws ParseException If a JSON parse error occurs.
      */
+    @Override
     public Object readObject() throws IOException, ParseException {
-        StringBuilder sb = new StringBuilder();
-        String line;
-        while ((line = this.readLine()) != null) {
-            if (!inArray && this.getLineNumber() == 1) {
-                if (line.startsWith("\"") && line.endsWith("\"")) {
-                    return parser.parse(line);
+        if (advance() < 0) {
+            return null;
+        }
+        return readValue();
+    }
+
+    /**
+     * Read a JSON object from the file into a typed record. Fields of the
+     * object are converted while they are read, and fields that are not in
+     * the specification of the record are skipped.
+     * @param record The record to fill, which is cleared first
+     * @return Whether an object was read, or false if the valid JSON array is
+     * exhausted of JSON objects
+     * @throws IOException If an I/O error occurs or the end of file is reached
+     * before enough of the JSON data could be constructed to parse it.
+     * @throws ParseException If a JSON parse error occurs or the next value
+     * is not an object.
+     */
+    @Override
+    public boolean readRecord(ExportRecord record) throws IOException, ParseException {
+        int c = advance();
+        if (c < 0) {
+            return false;
+        }
+        if (c != '{') {
+            throw unexpected(c);
+        }
+        position++;
+        record.clear();
+        readRecordMap(record);
+        return true;
+    }
+
+    /**
+     * Move to the start of the next value to emit.
+     * @return The first character of the value, or -1 if there are no more
+     * values to emit
+     */
+    private int advance() throws IOException, ParseException {
+        int c;
+        switch (state) {
+            case START:
+                if (position >= limit && !fill()) {
+                    state = State.DONE;
+                    return -1;
                 }
-                if ("[]".equals(line)) {
-                    return null;
+                c = skipWhitespace();
+                if (c == '"') {
+                    state = State.DONE;
+                    return c;
                 }
-                if ("[".equals(line)) {
-                    inArray = true;
-                    continue;
+                if (c == '{') {
+                    state = State.SEQUENCE;
+                    return c;
                 }
-            }
-            if ("]".equals(line)) {
-                inArray = false;
-            }
-            else {
-                if (!inArray) {
-                    throw new EOFException("Expecting end of JSON stream at line " + this.getLineNumber());
+                if (c != '[') {
+                    throw new EOFException("Expecting JSON array, object or string at line " + (lineNumber + 1));
+                }
+                position++;
+                state = State.ARRAY;
+                c = skipWhitespace();
+                if (c == ']') {
+                    position++;
+                    finish();
+                    return -1;
+                }
+                if (c < 0) {
+                    throw unexpected(c);
+                }
+                return c;
+            case ARRAY:
+                c = skipWhitespace();
+                if (c == ',') {
+                    position++;
+                    c = skipWhitespace();
+                    if (c < 0) {
+                        throw unexpected(c);
+                    }
+                    return c;
+                }
+                if (c == ']') {
+                    position++;
+                    finish();
+                    return -1;
+                }
+                throw unexpected(c);
+            case ELEMENTS:
+                c = skipWhitespace();
+                if (c == ',') {
+                    position++;
+                    c = skipWhitespace();
+                }
+                if (c == -1) {
+                    state = State.DONE;
+                    return -1;
                 }
-                sb.append(line.trim());
+                if (c == ']') {
+                    position++;
+                    finish();
+                    return -1;
+                }
+                return c;
+            case SEQUENCE:
+                c = skipWhitespace();
+                if (c == -1) {
+                    state = State.DONE;
+                }
+                return c;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Retrieve the current line number of the stream.
+     * @return The number of line terminators that have been read
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    private void finish() throws IOException {
+        state = State.DONE;
+        if (skipWhitespace() != -1) {
+            throw new EOFException("Expecting end of JSON stream at line " + (lineNumber + 1));
+        }
+    }
 
-                String json = "";
-                if (sb.length() > 1 && sb.substring(sb.length()-1).equals("}")) {
-                    json = sb.toString();
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        int count;
+        long idle = 0;
+        while (true) {
+            count = in.read(buffer, 0, buffer.length);
+            if (count > 0) {
+                break;
+            }
+            if (count < 0) {
+                // Only sequences are tailed, including incomplete last objects
+                if (idle >= tailMillis || (state != State.START && state != State.SEQUENCE)) {
+                    break;
                 }
-                else if (sb.length() > 2 && sb.substring(sb.length()-2).equals("},")) {
-                    json = sb.substring(0, sb.length()-1);
+                try {
+                    Thread.sleep(TAIL_POLL_MILLIS);
                 }
-                if (!json.isEmpty()) {
-                    Object jsonObject = parser.parse(json);
-                    sb.setLength(0);
-                    return jsonObject;
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while tailing JSON stream");
                 }
+                idle += TAIL_POLL_MILLIS;
+            }
+        }
+        limit = Math.max(count, 0);
+        return count > 0;
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (position < limit || fill()) {
+            char c = buffer[position];
+            if (c == '\n') {
+                lineNumber++;
             }
+            else if (c != ' ' && c != '\t' && c != '\r') {
+                return c;
+            }
+            position++;
         }
-        if (inArray) {
+        return -1;
+    }
+
+    private ParseException unexpected(int c) throws EOFException {
+        if (c < 0) {
             throw new EOFException("Unexpected end of file while parsing JSON object");
         }
-        return null;
+        return new ParseException((int)(offset + position), ParseException.ERROR_UNEXPECTED_CHAR, (char)c);
+    }
+
+    private Object readValue() throws IOException, ParseException {
+        int c = skipWhitespace();
+        switch (c) {
+            case '{':
+                position++;
+                return readMap();
+            case '[':
+                position++;
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                expectWord("true");
+                return Boolean.TRUE;
+            case 'f':
+                expectWord("false");
+                return Boolean.FALSE;
+            case 'n':
+                expectWord("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw unexpected(c);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject readMap() throws IOException, ParseException {
+        JSONObject object = new JSONObject();
+        int c = skipWhitespace();
+        if (c == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            if (c != '"') {
+                throw unexpected(c);
+            }
+            String key = readKey();
+            c = skipWhitespace();
+            if (c != ':') {
+                throw unexpected(c);
+            }
+            position++;
+            if (pool != null && pool.isPooled(key) && skipWhitespace() == '"') {
+                object.put(key, readPooledString());
+            }
+            else {
+                object.put(key, readValue());
+            }
+            c = skipWhitespace();
+            if (c == '}') {
+                position++;
+                return object;
+            }
+            if (c != ',') {
+                throw unexpected(c);
+            }
+            position++;
+            c = skipWhitespace();
+        }
+    }
+
+    private void readRecordMap(ExportRecord record) throws IOException, ParseException {
+        RecordSpec spec = record.getSpec();
+        int c = skipWhitespace();
+        if (c == '}') {
+            position++;
+            return;
+        }
+        while (true) {
+            if (c != '"') {
+                throw unexpected(c);
+            }
+            String key = readKey();
+            RecordSpec.Field field = spec.getField(key);
+            c = skipWhitespace();
+            if (c != ':') {
+                throw unexpected(c);
+            }
+            position++;
+            if (field == null) {
+                readValue();
+            }
+            else if (skipWhitespace() != '"') {
+                record.set(field, readValue());
+            }
+            else if (field.getType() != RecordSpec.Type.STRING) {
+                readTypedString(record, field);
+            }
+            else {
+                record.set(field, pool != null && pool.isPooled(key) ? readPooledString() : readString());
+            }
+            c = skipWhitespace();
+            if (c == '}') {
+                position++;
+                return;
+            }
+            if (c != ',') {
+                throw unexpected(c);
+            }
+            position++;
+            c = skipWhitespace();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONArray readArray() throws IOException, ParseException {
+        JSONArray array = new JSONArray();
+        int c = skipWhitespace();
+        if (c == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            c = skipWhitespace();
+            if (c == ']') {
+                position++;
+                return array;
+            }
+            if (c != ',') {
+                throw unexpected(c);
+            }
+            position++;
+        }
+    }
+
+    private void expectWord(String word) throws IOException, ParseException {
+        for (int i = 0; i < word.length(); i++) {
+            if (position >= limit && !fill()) {
+                throw unexpected(-1);
+            }
+            if (buffer[position] != word.charAt(i)) {
+                throw unexpected(buffer[position]);
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Read an object key, reusing the string of an earlier equal key.
+     */
+    private String readKey() throws IOException, ParseException {
+        int start = position + 1;
+        int hash = 0;
+        for (int i = start; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                int length = i - start;
+                int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+                String key = keyCache[slot];
+                if (key == null || !matches(key, start, length)) {
+                    key = new String(buffer, start, length);
+                    keyCache[slot] = key;
+                }
+                position = i + 1;
+                return key;
+            }
+            if (c == '\\') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+        return readString();
+    }
+
+    private boolean matches(String key, int start, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read a string value, reusing the string of an earlier equal value from
+     * the pool.
+     */
+    private String readPooledString() throws IOException, ParseException {
+        int start = position + 1;
+        for (int i = start; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                position = i + 1;
+                return pool.intern(buffer, start, i - start);
+            }
+            if (c == '\\') {
+                break;
+            }
+        }
+        return pool.intern(readString());
+    }
+
+    /**
+     * Read a string value that is converted to a number, timestamp or date,
+     * directly from the buffer if the string does not cross its end.
+     */
+    private void readTypedString(ExportRecord record, RecordSpec.Field field) throws IOException, ParseException {
+        int start = position + 1;
+        for (int i = start; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                position = i + 1;
+                record.set(field, buffer, start, i - start);
+                return;
+            }
+            if (c == '\\') {
+                break;
+            }
+        }
+        record.set(field, readString());
+    }
+
+    private String readString() throws IOException, ParseException {
+        position++;
+        int start = position;
+        while (position < limit) {
+            char c = buffer[position];
+            if (c == '"') {
+                String value = new String(buffer, start, position - start);
+                position++;
+                return value;
+            }
+            if (c == '\\') {
+                break;
+            }
+            position++;
+        }
+
+        // Slow path for strings with escapes or that cross the buffer end
+        scratch.setLength(0);
+        scratch.append(buffer, start, position - start);
+        while (true) {
+            if (position >= limit && !fill()) {
+                throw unexpected(-1);
+            }
+            start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            scratch.append(buffer, start, position - start);
+            if (position >= limit) {
+                continue;
+            }
+            char c = buffer[position++];
+            if (c == '"') {
+                return scratch.toString();
+            }
+            scratch.append(readEscape());
+        }
+    }
+
+    private char readEscape() throws IOException, ParseException {
+        if (position >= limit && !fill()) {
+            throw unexpected(-1);
+        }
+        char c = buffer[position++];
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (position >= limit && !fill()) {
+                        throw unexpected(-1);
+                    }
+                    int digit = Character.digit(buffer[position], 16);
+                    if (digit < 0) {
+                        throw unexpected(buffer[position]);
+                    }
+                    code = code * 16 + digit;
+                    position++;
+                }
+                return (char)code;
+            default:
+                position--;
+                throw unexpected(c);
+        }
+    }
+
+    private static boolean isNumberPart(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private Object readNumber() throws IOException, ParseException {
+        int start = position;
+        while (position < limit && isNumberPart(buffer[position])) {
+            position++;
+        }
+        String text;
+        if (position < limit) {
+            Long value = parseLong(buffer, start, position);
+            if (value != null) {
+                return value;
+            }
+            text = new String(buffer, start, position - start);
+        }
+        else {
+            // The number may continue after the buffer end
+            scratch.setLength(0);
+            scratch.append(buffer, start, position - start);
+            while ((position < limit || fill()) && isNumberPart(buffer[position])) {
+                scratch.append(buffer[position++]);
+            }
+            text = scratch.toString();
+        }
+        try {
+            if (text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0) {
+                return Double.valueOf(text);
+            }
+            return Long.valueOf(text);
+        }
+        catch (NumberFormatException ex) {
+            throw new ParseException((int)(offset + position), ParseException.ERROR_UNEXPECTED_TOKEN, text);
+        }
     }
-}
 
+    /**
+     * Parse an integer number from characters, if it has few enough digits
+     * that it cannot overflow.
+     * @return The number, or null if the characters are not such an integer
+     */
+    private static Long parseLong(char[] chars, int start, int end) {
+        boolean negative = chars[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 18) {
+            return null;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (position < limit) {
+            int count = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, cbuf, off, count);
+            position += count;
+            return count;
+        }
+        return in.read(cbuf, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
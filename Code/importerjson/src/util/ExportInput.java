@@ -0,0 +1,140 @@
+/**
+ * Opening of possibly compressed export files.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Utilities for opening JSON export files, which may be compressed. When
+ * an export file does not exist, but a file with the same name and a ".gz"
+ * extension does, then the compressed file is used instead. Compressed files
+ * are decompressed while they are streamed, on a separate thread, so that
+ * the decompression overlaps with the parsing and import of the data.
+ * @author Leon Helwerda
+ */
+public final class ExportInput {
+    /**
+     * File name extension of gzip-compressed export files.
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+
+    private static final int GZIP_BUFFER_SIZE = 65536;
+
+    private ExportInput() {
+    }
+
+    /**
+     * Determine the file that is actually used for an export file.
+     * @param file The path to the uncompressed export file
+     * @return The path to the uncompressed file if it exists or if there is
+     * no compressed file either, otherwise the path to the compressed file
+     */
+    public static File resolve(File file) {
+        if (file.exists() || isCompressed(file)) {
+            return file;
+        }
+        File compressed = new File(file.getPath() + GZIP_EXTENSION);
+        if (compressed.exists()) {
+            return compressed;
+        }
+        return file;
+    }
+
+    /**
+     * Determine the name of the file that is actually used for an export file
+     * in a directory.
+     * @param directory The export directory
+     * @param name The name of the uncompressed export file
+     * @return The name of the file, with a ".gz" extension if the compressed
+     * file is used
+     */
+    public static String resolveName(File directory, String name) {
+        if (resolve(new File(directory, name)).getName().endsWith(GZIP_EXTENSION) &&
+                !name.endsWith(GZIP_EXTENSION)) {
+            return name + GZIP_EXTENSION;
+        }
+        return name;
+    }
+
+    /**
+     * Check whether a file is a compressed export file.
+     * @param file The path to the file
+     * @return Whether the file has an extension of compressed files
+     */
+    public static boolean isCompressed(File file) {
+        return file.getName().endsWith(GZIP_EXTENSION);
+    }
+
+    /**
+     * Open an input stream for an export file, which is decompressed if
+     * the compressed file is used.
+     * @param file The path to the uncompressed export file
+     * @return The input stream
+     * @throws IOException If neither the file nor a compressed file exists,
+     * or if the compressed file cannot be read
+     */
+    public static InputStream openStream(File file) throws IOException {
+        File actual = resolve(file);
+        if (!isCompressed(actual)) {
+            return new FileInputStream(actual);
+        }
+        InputStream input = new FileInputStream(actual);
+        try {
+            InputStream gzip = new GZIPInputStream(new BufferedInputStream(input), GZIP_BUFFER_SIZE);
+            return new ReadAheadInputStream(gzip, "gunzip-" + actual.getName());
+        }
+        catch (IOException ex) {
+            input.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Open a reader for an export file, which is decompressed if the
+     * compressed file is used. The file is read as UTF-8.
+     * @param file The path to the uncompressed export file
+     * @return The reader
+     * @throws IOException If neither the file nor a compressed file exists,
+     * or if the compressed file cannot be read
+     */
+    public static Reader open(File file) throws IOException {
+        return new InputStreamReader(openStream(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Open a reader for an export file, which is decompressed if the
+     * compressed file is used. The file is read as UTF-8.
+     * @param path The path to the uncompressed export file
+     * @return The reader
+     * @throws IOException If neither the file nor a compressed file exists,
+     * or if the compressed file cannot be read
+     */
+    public static Reader open(String path) throws IOException {
+        return open(new File(path));
+    }
+}
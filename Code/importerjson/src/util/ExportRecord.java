@@ -0,0 +1,556 @@
+/**
+ * Typed record of an export file object.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The values of an object from a JSON export file, decoded according to
+ * a record specification. Numeric and flag values are kept in primitive form,
+ * and timestamps and dates are parsed once when the record is filled. Values
+ * can be converted directly from the character buffer of a reader, such that
+ * no intermediate strings are created for numbers, timestamps and dates.
+ * A record can be filled again for the next object, unless it is still
+ * referenced, for example by a batch that has not been executed yet.
+ * @author Leon Helwerda
+ */
+public final class ExportRecord {
+    /**
+     * Maximum number of digits of an integer that cannot overflow an int.
+     */
+    private static final int INT_DIGITS = 9;
+    /**
+     * Maximum number of digits of a decimal number whose digits are exactly
+     * representable as a double, and the powers of ten that are exact.
+     */
+    private static final int DOUBLE_DIGITS = 15;
+    private static final double[] DOUBLE_POWERS = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /**
+     * Maximum number of digits of a decimal number whose digits are exactly
+     * representable as a float, and the powers of ten that are exact.
+     */
+    private static final int FLOAT_DIGITS = 7;
+    private static final float[] FLOAT_POWERS = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    private final RecordSpec spec;
+    private final long[] numbers;
+    private final Object[] objects;
+    private final boolean[] present;
+
+    /**
+     * Create an empty record.
+     * @param spec The specification of the fields of the record
+     */
+    public ExportRecord(RecordSpec spec) {
+        this.spec = spec;
+        this.numbers = new long[spec.size()];
+        this.objects = new Object[spec.size()];
+        this.present = new boolean[spec.size()];
+    }
+
+    /**
+     * Retrieve the specification of the fields of the record.
+     * @return The record specification
+     */
+    public RecordSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Remove all values from the record.
+     */
+    public void clear() {
+        Arrays.fill(objects, null);
+        Arrays.fill(present, false);
+    }
+
+    /**
+     * Replace the values of the record with those of another record.
+     * @param other The record to copy the values from
+     * @throws IllegalArgumentException If the other record has another
+     * specification
+     */
+    public void copy(ExportRecord other) {
+        if (other.spec != spec) {
+            throw new IllegalArgumentException("Records have different specifications");
+        }
+        System.arraycopy(other.numbers, 0, numbers, 0, numbers.length);
+        System.arraycopy(other.objects, 0, objects, 0, objects.length);
+        System.arraycopy(other.present, 0, present, 0, present.length);
+    }
+
+    /**
+     * Fill the record with the values of a parsed JSON object.
+     * @param object The JSON object
+     */
+    public void fill(Map<?, ?> object) {
+        clear();
+        for (RecordSpec.Field field : spec.getFields()) {
+            set(field, object.get(field.getName()));
+        }
+    }
+
+    /**
+     * Set the value of a field from a parsed JSON value.
+     * @param field The field
+     * @param value The JSON value, which may be a string, number, boolean or
+     * null, or a nested object or array for string fields
+     */
+    public void set(RecordSpec.Field field, Object value) {
+        if (value == null || value instanceof String) {
+            set(field, (String)value);
+        }
+        else if (value instanceof Number && field.getType() == RecordSpec.Type.INTEGER) {
+            setLong(field, ((Number)value).intValue());
+        }
+        else if (value instanceof Number && field.getType() == RecordSpec.Type.DOUBLE) {
+            setLong(field, Double.doubleToRawLongBits(((Number)value).doubleValue()));
+        }
+        else if (value instanceof Number && field.getType() == RecordSpec.Type.FLOAT) {
+            setLong(field, Float.floatToRawIntBits(((Number)value).floatValue()));
+        }
+        else if (value instanceof Boolean && field.getType() == RecordSpec.Type.FLAG) {
+            setLong(field, (Boolean)value ? 1 : 0);
+        }
+        else if (field.getType() == RecordSpec.Type.STRING) {
+            objects[field.getSlot()] = value;
+            present[field.getSlot()] = true;
+        }
+        else {
+            set(field, value.toString());
+        }
+    }
+
+    /**
+     * Set the value of a field from a string, converting it to the type of
+     * the field.
+     * @param field The field
+     * @param value The string value, or null if the value is missing
+     * @throws IllegalArgumentException If the value cannot be converted,
+     * for example a NumberFormatException for an invalid integer
+     */
+    public void set(RecordSpec.Field field, String value) {
+        int slot = field.getSlot();
+        if (value == null || (field.isZeroNull() && "0".equals(value))) {
+            objects[slot] = null;
+            present[slot] = false;
+            return;
+        }
+        switch (field.getType()) {
+            case INTEGER:
+                setLong(field, Integer.parseInt(value));
+                return;
+            case DOUBLE:
+                setLong(field, Double.doubleToRawLongBits(Double.parseDouble(value)));
+                return;
+            case FLOAT:
+                setLong(field, Float.floatToRawIntBits(Float.parseFloat(value)));
+                return;
+            case FLAG:
+                if ("0".equals(value)) {
+                    present[slot] = false;
+                    return;
+                }
+                setLong(field, "1".equals(value) ? 1 : 0);
+                return;
+            case TIMESTAMP:
+                objects[slot] = Timestamp.valueOf(value);
+                break;
+            case DATE:
+                objects[slot] = Date.valueOf(value);
+                break;
+            default:
+                objects[slot] = value;
+                break;
+        }
+        present[slot] = true;
+    }
+
+    /**
+     * Set the value of a field from characters of a string, converting them
+     * to the type of the field without creating a string for numbers,
+     * timestamps in the "yyyy-mm-dd hh:mm:ss" format and dates in the
+     * "yyyy-mm-dd" format. Other formats are converted like the string.
+     * @param field The field
+     * @param chars The character buffer
+     * @param start The offset of the value in the buffer
+     * @param length The number of characters of the value
+     * @throws IllegalArgumentException If the value cannot be converted,
+     * for example a NumberFormatException for an invalid integer
+     * @see #set(RecordSpec.Field, String)
+     */
+    public void set(RecordSpec.Field field, char[] chars, int start, int length) {
+        int slot = field.getSlot();
+        boolean zero = length == 1 && chars[start] == '0';
+        if (zero && (field.isZeroNull() || field.getType() == RecordSpec.Type.FLAG)) {
+            objects[slot] = null;
+            present[slot] = false;
+            return;
+        }
+        switch (field.getType()) {
+            case INTEGER:
+                setLong(field, parseInt(chars, start, length));
+                return;
+            case DOUBLE:
+                setLong(field, Double.doubleToRawLongBits(parseDouble(chars, start, length)));
+                return;
+            case FLOAT:
+                setLong(field, Float.floatToRawIntBits(parseFloat(chars, start, length)));
+                return;
+            case FLAG:
+                setLong(field, length == 1 && chars[start] == '1' ? 1 : 0);
+                return;
+            case TIMESTAMP:
+                objects[slot] = parseTimestamp(chars, start, length);
+                break;
+            case DATE:
+                objects[slot] = parseDate(chars, start, length);
+                break;
+            default:
+                objects[slot] = new String(chars, start, length);
+                break;
+        }
+        present[slot] = true;
+    }
+
+    private static int parseInt(char[] chars, int start, int length) {
+        boolean negative = length > 0 && chars[start] == '-';
+        int i = negative ? start + 1 : start;
+        int end = start + length;
+        if (i == end || end - i > INT_DIGITS) {
+            return Integer.parseInt(new String(chars, start, length));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(new String(chars, start, length));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse the digits and decimal point of a plain decimal number.
+     * @return The digits as an integer, with the number of fractional digits
+     * in the upper bits, or -1 if the number has another format or more than
+     * the maximum number of digits.
+     */
+    private static long parseDecimal(char[] chars, int start, int end, int maxDigits) {
+        long digits = 0;
+        int count = 0;
+        int fraction = -1;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+            }
+            else if (c >= '0' && c <= '9') {
+                if (++count > maxDigits) {
+                    return -1;
+                }
+                digits = digits * 10 + (c - '0');
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            }
+            else {
+                return -1;
+            }
+        }
+        if (count == 0) {
+            return -1;
+        }
+        return ((long)Math.max(fraction, 0) << 56) | digits;
+    }
+
+    private static double parseDouble(char[] chars, int start, int length) {
+        boolean negative = length > 0 && chars[start] == '-';
+        int begin = negative ? start + 1 : start;
+        long decimal = parseDecimal(chars, begin, start + length, DOUBLE_DIGITS);
+        if (decimal < 0) {
+            return Double.parseDouble(new String(chars, start, length));
+        }
+        // Both operands are exact, so the division is correctly rounded
+        double value = (decimal & 0xFFFFFFFFFFFFFFL) / DOUBLE_POWERS[(int)(decimal >>> 56)];
+        return negative ? -value : value;
+    }
+
+    private static float parseFloat(char[] chars, int start, int length) {
+        boolean negative = length > 0 && chars[start] == '-';
+        int begin = negative ? start + 1 : start;
+        long decimal = parseDecimal(chars, begin, start + length, FLOAT_DIGITS);
+        if (decimal < 0) {
+            return Float.parseFloat(new String(chars, start, length));
+        }
+        float value = (decimal & 0xFFFFFFFFFFFFFFL) / FLOAT_POWERS[(int)(decimal >>> 56)];
+        return negative ? -value : value;
+    }
+
+    private static int parseDigits(char[] chars, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static Timestamp parseTimestamp(char[] chars, int start, int length) {
+        if (length == 19 && chars[start + 4] == '-' && chars[start + 7] == '-' &&
+                chars[start + 10] == ' ' && chars[start + 13] == ':' &&
+                chars[start + 16] == ':') {
+            int year = parseDigits(chars, start, 4);
+            int month = parseDigits(chars, start + 5, 2);
+            int day = parseDigits(chars, start + 8, 2);
+            int hour = parseDigits(chars, start + 11, 2);
+            int minute = parseDigits(chars, start + 14, 2);
+            int second = parseDigits(chars, start + 17, 2);
+            if (year >= 0 && month >= 0 && day >= 0 && hour >= 0 && minute >= 0 && second >= 0) {
+                try {
+                    return Timestamp.valueOf(LocalDateTime.of(year, month, day, hour, minute, second));
+                }
+                catch (DateTimeException ex) {
+                    // Leave out-of-range values to the lenient string conversion
+                }
+            }
+        }
+        return Timestamp.valueOf(new String(chars, start, length));
+    }
+
+    private static Date parseDate(char[] chars, int start, int length) {
+        if (length == 10 && chars[start + 4] == '-' && chars[start + 7] == '-') {
+            int year = parseDigits(chars, start, 4);
+            int month = parseDigits(chars, start + 5, 2);
+            int day = parseDigits(chars, start + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                try {
+                    return Date.valueOf(LocalDate.of(year, month, day));
+                }
+                catch (DateTimeException ex) {
+                    // Leave out-of-range values to the lenient string conversion
+                }
+            }
+        }
+        return Date.valueOf(new String(chars, start, length));
+    }
+
+    private void setLong(RecordSpec.Field field, long value) {
+        numbers[field.getSlot()] = value;
+        objects[field.getSlot()] = null;
+        present[field.getSlot()] = true;
+    }
+
+    /**
+     * Check whether a field has no value.
+     * @param field The field
+     * @return Whether the value is missing, null or a zero that denotes null
+     */
+    public boolean isNull(RecordSpec.Field field) {
+        return !present[field.getSlot()];
+    }
+
+    private void require(RecordSpec.Field field) {
+        if (!present[field.getSlot()]) {
+            throw new NumberFormatException("Missing value for field " + field.getName());
+        }
+    }
+
+    /**
+     * Retrieve the value of an integer field.
+     * @param field The field
+     * @return The integer value
+     * @throws NumberFormatException If the field has no value
+     */
+    public int getInt(RecordSpec.Field field) {
+        require(field);
+        return (int)numbers[field.getSlot()];
+    }
+
+    /**
+     * Retrieve the value of a floating point field.
+     * @param field The field
+     * @return The floating point value
+     * @throws NumberFormatException If the field has no value
+     */
+    public double getDouble(RecordSpec.Field field) {
+        require(field);
+        return Double.longBitsToDouble(numbers[field.getSlot()]);
+    }
+
+    /**
+     * Retrieve the value of a single-precision floating point field.
+     * @param field The field
+     * @return The floating point value
+     * @throws NumberFormatException If the field has no value
+     */
+    public float getFloat(RecordSpec.Field field) {
+        require(field);
+        return Float.intBitsToFloat((int)numbers[field.getSlot()]);
+    }
+
+    /**
+     * Retrieve the value of a flag field.
+     * @param field The field
+     * @return Whether the flag is set
+     * @throws NumberFormatException If the field has no value
+     */
+    public boolean getFlag(RecordSpec.Field field) {
+        require(field);
+        return numbers[field.getSlot()] != 0;
+    }
+
+    /**
+     * Retrieve the value of a string field.
+     * @param field The field
+     * @return The string value, or null if the field has no value
+     */
+    public String getString(RecordSpec.Field field) {
+        Object value = objects[field.getSlot()];
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Retrieve the value of a timestamp field.
+     * @param field The field
+     * @return The timestamp, or null if the field has no value
+     */
+    public Timestamp getTimestamp(RecordSpec.Field field) {
+        return (Timestamp)objects[field.getSlot()];
+    }
+
+    /**
+     * Retrieve the value of a date field.
+     * @param field The field
+     * @return The date, or null if the field has no value
+     */
+    public Date getDate(RecordSpec.Field field) {
+        return (Date)objects[field.getSlot()];
+    }
+
+    /**
+     * Set a parameter of a prepared statement to the value of a field, or to
+     * NULL with the SQL type of the field if it has no value.
+     * @param pstmt The prepared statement
+     * @param index The index of the parameter
+     * @param field The field
+     * @throws SQLException If a database access error occurs
+     */
+    public void bind(PreparedStatement pstmt, int index, RecordSpec.Field field) throws SQLException {
+        boolean isNull = isNull(field);
+        switch (field.getType()) {
+            case INTEGER:
+                if (isNull) {
+                    pstmt.setNull(index, Types.INTEGER);
+                }
+                else {
+                    pstmt.setInt(index, getInt(field));
+                }
+                break;
+            case DOUBLE:
+                if (isNull) {
+                    pstmt.setNull(index, Types.DOUBLE);
+                }
+                else {
+                    pstmt.setDouble(index, getDouble(field));
+                }
+                break;
+            case FLOAT:
+                if (isNull) {
+                    pstmt.setNull(index, Types.REAL);
+                }
+                else {
+                    pstmt.setFloat(index, getFloat(field));
+                }
+                break;
+            case FLAG:
+                if (isNull) {
+                    pstmt.setNull(index, Types.BOOLEAN);
+                }
+                else {
+                    pstmt.setBoolean(index, getFlag(field));
+                }
+                break;
+            case TIMESTAMP:
+                if (isNull) {
+                    pstmt.setNull(index, Types.TIMESTAMP);
+                }
+                else {
+                    pstmt.setTimestamp(index, getTimestamp(field));
+                }
+                break;
+            case DATE:
+                if (isNull) {
+                    pstmt.setNull(index, Types.DATE);
+                }
+                else {
+                    pstmt.setDate(index, getDate(field));
+                }
+                break;
+            default:
+                if (isNull) {
+                    pstmt.setNull(index, Types.VARCHAR);
+                }
+                else {
+                    pstmt.setString(index, getString(field));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Estimate the number of bytes that the values of the record take up
+     * when they are sent to the database.
+     * @return The estimated size
+     */
+    public long estimateSize() {
+        long bytes = 0;
+        for (int i = 0; i < objects.length; i++) {
+            if (!present[i]) {
+                bytes++;
+            }
+            else if (objects[i] instanceof CharSequence) {
+                bytes += ((CharSequence)objects[i]).length() + 2;
+            }
+            else {
+                bytes += 8;
+            }
+        }
+        return bytes;
+    }
+}
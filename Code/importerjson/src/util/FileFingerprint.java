@@ -0,0 +1,160 @@
+/**
+ * Fingerprint of an export file.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * A fingerprint of an export file, consisting of its size, modification time
+ * and a fast content hash. Two fingerprints match if the sizes and hashes are
+ * the same, such that a file that is written again with the same contents is
+ * considered unchanged. The hash is computed when the fingerprint is created,
+ * so that it describes the contents before the file is imported. Reading the
+ * file is avoided if its size and modification time are the same as in an
+ * earlier fingerprint of the file, either one that was stored or one that was
+ * created earlier in the process, in which case the hash is reused.
+ * @author Leon Helwerda
+ */
+public final class FileFingerprint {
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+    private static final Map<String, FileFingerprint> KNOWN = new ConcurrentHashMap<>();
+    
+    private final long size;
+    private final long modified;
+    private final long hash;
+    
+    /**
+     * Create a fingerprint that was stored earlier.
+     * @param size The size of the file in bytes, or -1 if it did not exist
+     * @param modified The modification time of the file in milliseconds since
+     * the epoch, or 0 if it is unknown
+     * @param hash The content hash of the file
+     */
+    public FileFingerprint(long size, long modified, long hash) {
+        this.size = size;
+        this.modified = modified;
+        this.hash = hash;
+    }
+    
+    /**
+     * Create a fingerprint of the current state of an export file. If the file
+     * is compressed, then the fingerprint is of the compressed file.
+     * @param file The path to the uncompressed export file
+     * @return The fingerprint
+     * @throws IOException If the file cannot be read
+     */
+    public static FileFingerprint of(File file) throws IOException {
+        return of(file, null);
+    }
+    
+    /**
+     * Create a fingerprint of the current state of an export file, which
+     * reuses the content hash of an earlier fingerprint of the file if the
+     * size and modification time of the file have not changed since then.
+     * @param file The path to the uncompressed export file
+     * @param previous The stored fingerprint of the file, or null if there
+     * is none
+     * @return The fingerprint
+     * @throws IOException If the file cannot be read
+     */
+    public static FileFingerprint of(File file, FileFingerprint previous) throws IOException {
+        File actual = ExportInput.resolve(file);
+        if (!actual.isFile()) {
+            return new FileFingerprint(-1, 0, 0);
+        }
+        long size = actual.length();
+        long modified = actual.lastModified();
+        if (previous != null && previous.isSame(size, modified)) {
+            return previous;
+        }
+        String path = actual.getAbsolutePath();
+        FileFingerprint known = KNOWN.get(path);
+        if (known != null && known.isSame(size, modified)) {
+            return known;
+        }
+        FileFingerprint fingerprint = new FileFingerprint(size, modified, computeHash(actual));
+        KNOWN.put(path, fingerprint);
+        return fingerprint;
+    }
+    
+    private boolean isSame(long size, long modified) {
+        return this.size == size && this.modified == modified && modified != 0;
+    }
+    
+    /**
+     * Compute a fast content hash of a file.
+     * @param file The file
+     * @return The CRC32C checksum of the file contents
+     * @throws IOException If the file cannot be read
+     */
+    public static long computeHash(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+    
+    /**
+     * Retrieve the size of the file.
+     * @return The size in bytes, or -1 if the file does not exist
+     */
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * Retrieve the modification time of the file.
+     * @return The modification time in milliseconds since the epoch, or 0 if
+     * the file does not exist
+     */
+    public long getModified() {
+        return modified;
+    }
+    
+    /**
+     * Retrieve the content hash of the file.
+     * @return The content hash, or 0 if the file does not exist
+     */
+    public long getHash() {
+        return hash;
+    }
+    
+    /**
+     * Check whether the file has the same contents as in another fingerprint.
+     * @param other The other fingerprint
+     * @return Whether the sizes and content hashes are the same
+     */
+    public boolean matches(FileFingerprint other) {
+        return size == other.size && hash == other.hash;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Reader of JSON export files.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A reader that emits the objects of a JSON export file one at a time.
+ * @author Leon Helwerda
+ */
+public interface JSONReader extends Closeable {
+    /**
+     * Minimum size in bytes of a file before it is parsed in parallel.
+     */
+    long PARALLEL_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Read the next JSON object from the file.
+     * @return The JSON object, a String if the file consists of only
+     * a JSON-encoded string, or null if there are no more objects.
+     * @throws IOException If an I/O error occurs or the file ends before
+     * a JSON object could be read completely.
+     * @throws ParseException If a JSON parse error occurs.
+     */
+    Object readObject() throws IOException, ParseException;
+
+    /**
+     * Read the next JSON object from the file into a typed record.
+     * @param record The record to fill, which is cleared first
+     * @return Whether an object was read, or false if there are no more objects
+     * @throws IOException If an I/O error occurs or the file ends before
+     * a JSON object could be read completely.
+     * @throws ParseException If a JSON parse error occurs or the next value
+     * is not an object.
+     */
+    default boolean readRecord(ExportRecord record) throws IOException, ParseException {
+        Object object = readObject();
+        if (object == null) {
+            return false;
+        }
+        if (!(object instanceof Map)) {
+            throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, object);
+        }
+        record.fill((Map<?, ?>)object);
+        return true;
+    }
+
+    /**
+     * Open a reader for a JSON export file. If the "importer.parse_threads"
+     * property is set to more than one thread and the file is large, then the
+     * file is memory-mapped and parsed in parallel, while the objects are
+     * still emitted in the order of the file. Compressed export files are
+     * decompressed on a separate thread and parsed sequentially. Otherwise,
+     * the file is parsed on a producer thread which reads ahead up to the
+     * number of objects in the "importer.read_queue" property, unless this
+     * is set to zero. If the "importer.snapshot_dir" property is set, then
+     * the objects are read from a snapshot of the file if it is unchanged,
+     * or written to a snapshot for later imports. Files that consist of
+     * a sequence of objects, such as newline-delimited JSON, are read in the
+     * same way, and if the "importer.tail" property is set to a number of
+     * milliseconds, then the reader waits that long for more objects to be
+     * appended before the file is considered to have ended.
+     * @param path The path to the file
+     * @return The reader
+     * @throws IOException If the file cannot be opened
+     */
+    static JSONReader open(String path) throws IOException {
+        return open(path, null);
+    }
+
+    /**
+     * Open a reader for a JSON export file, which reuses strings from a pool
+     * for the values of certain fields.
+     * @param path The path to the file
+     * @param pool The string pool, or null to create new strings for all values
+     * @return The reader
+     * @throws IOException If the file cannot be opened
+     * @see #open(String)
+     */
+    static JSONReader open(String path, StringPool pool) throws IOException {
+        File file = ExportInput.resolve(new File(path));
+        JSONSnapshot snapshot = file.exists() ? JSONSnapshot.find(file) : null;
+        JSONReader reader;
+        if (snapshot != null && snapshot.exists()) {
+            reader = snapshot.open(pool);
+        }
+        else {
+            int threads = Integer.getInteger("importer.parse_threads", 1);
+            long tail = Long.getLong("importer.tail", 0);
+            if (threads > 1 && tail <= 0 && !ExportInput.isCompressed(file) && file.length() >= PARALLEL_SIZE) {
+                reader = new MappedJSONReader(file, threads, true, pool);
+                return snapshot == null ? reader : snapshot.record(reader);
+            }
+            BufferedJSONReader buffered = new BufferedJSONReader(ExportInput.open(file));
+            buffered.setStringPool(pool);
+            buffered.setTail(tail);
+            reader = snapshot == null ? buffered : snapshot.record(buffered);
+        }
+        int queueSize = Integer.getInteger("importer.read_queue", QueuedJSONReader.DEFAULT_QUEUE_SIZE);
+        if (queueSize > 0) {
+            return new QueuedJSONReader(reader, queueSize);
+        }
+        return reader;
+    }
+
+    /**
+     * Open a reader for a JSON export file.
+     * @param file The path to the file
+     * @return The reader
+     * @throws IOException If the file cannot be opened
+     * @see #open(String)
+     */
+    static JSONReader open(File file) throws IOException {
+        return open(file.getPath());
+    }
+}
@@ -0,0 +1,566 @@
+/**
+ * Binary snapshots of parsed JSON export files.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A cache of compact binary snapshots of parsed JSON export files. When the
+ * "importer.snapshot_dir" property is set to a directory, then the objects
+ * of an export file are written to a snapshot in that directory after the
+ * file is parsed completely. A later import of the same file reads the objects
+ * from the snapshot instead of parsing the JSON again, for example when an
+ * import is repeated after a failure in a later task, or to measure the
+ * database stage of an import without the parsing cost.
+ * 
+ * A snapshot is only used if the path, size, modification time and content
+ * hash of the file are the same as when the snapshot was written. The objects
+ * are stored in blocks, where each block stores the values of one field of
+ * all the objects in the block together. Field names and short string values
+ * are stored once and referred to afterward.
+ * @author Leon Helwerda
+ */
+public final class JSONSnapshot {
+    private static final byte[] MAGIC = "GROSJSN1".getBytes(StandardCharsets.US_ASCII);
+    private static final String EXTENSION = ".snap";
+    private static final int BLOCK_SIZE = 4096;
+    private static final int MAX_SHORT_STRING = 64;
+    private static final int MAX_DICTIONARY = 65536;
+
+    private static final int ABSENT = 0;
+    private static final int NULL = 1;
+    private static final int FALSE = 2;
+    private static final int TRUE = 3;
+    private static final int LONG = 4;
+    private static final int DOUBLE = 5;
+    private static final int STRING = 6;
+    private static final int STRING_REF = 7;
+    private static final int OBJECT = 8;
+    private static final int ARRAY = 9;
+
+    private static final Logger LOGGER = Logger.getLogger("importer");
+
+    private final File file;
+    private final File snapshot;
+    private final long size;
+    private final long modified;
+    private final long hash;
+
+    private JSONSnapshot(File file, File directory) throws IOException {
+        this.file = file;
+        String path = file.getAbsolutePath();
+        this.snapshot = new File(directory, file.getName() + "-" + Integer.toHexString(path.hashCode()) + EXTENSION);
+        FileFingerprint fingerprint = FileFingerprint.of(file);
+        this.size = fingerprint.getSize();
+        this.modified = fingerprint.getModified();
+        this.hash = fingerprint.getHash();
+    }
+
+    /**
+     * Retrieve the snapshot location for an export file, if snapshots are
+     * enabled with the "importer.snapshot_dir" property.
+     * @param file The export file, which must exist
+     * @return The snapshot, or null if snapshots are disabled
+     * @throws IOException If the export file cannot be read to compute its
+     * content hash or the snapshot directory cannot be created
+     */
+    public static JSONSnapshot find(File file) throws IOException {
+        String directory = System.getProperty("importer.snapshot_dir", "");
+        if (directory.isEmpty()) {
+            return null;
+        }
+        return find(file, new File(directory));
+    }
+
+    /**
+     * Retrieve the snapshot location for an export file in a directory.
+     * @param file The export file, which must exist
+     * @param directory The directory of the snapshots, which is created if
+     * it does not exist
+     * @return The snapshot
+     * @throws IOException If the export file cannot be read to compute its
+     * content hash or the snapshot directory cannot be created
+     */
+    public static JSONSnapshot find(File file, File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        return new JSONSnapshot(file, directory);
+    }
+
+    /**
+     * Retrieve the path to the snapshot file.
+     * @return The snapshot file
+     */
+    public File getFile() {
+        return snapshot;
+    }
+
+    /**
+     * Check whether a valid snapshot exists for the export file.
+     * @return Whether the snapshot exists and was written for the current
+     * contents of the export file
+     */
+    public boolean exists() {
+        if (!snapshot.exists()) {
+            return false;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            return readHeader(input);
+        }
+        catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private void writeHeader(DataOutputStream output) throws IOException {
+        output.write(MAGIC);
+        writeString(output, file.getAbsolutePath());
+        output.writeLong(size);
+        output.writeLong(modified);
+        output.writeLong(hash);
+    }
+
+    private boolean readHeader(DataInputStream input) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        return Arrays.equals(magic, MAGIC) &&
+                file.getAbsolutePath().equals(readString(input)) &&
+                input.readLong() == size && input.readLong() == modified &&
+                input.readLong() == hash;
+    }
+
+    /**
+     * Open a reader for the objects of the snapshot.
+     * @param pool The string pool for values of certain fields, or null
+     * @return The reader
+     * @throws IOException If the snapshot cannot be opened or is invalid
+     */
+    public JSONReader open(StringPool pool) throws IOException {
+        return new SnapshotReader(pool);
+    }
+
+    /**
+     * Wrap a reader of the export file such that the objects that it reads
+     * are written to the snapshot. The snapshot is only kept if the file is
+     * read completely and consists of an array of objects.
+     * @param source The reader of the export file
+     * @return The reader that writes the snapshot
+     */
+    public JSONReader record(JSONReader source) {
+        return new RecordingReader(source);
+    }
+
+    private static void writeVarint(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int)value);
+    }
+
+    private static long readVarint(DataInputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer in snapshot");
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = (int)readVarint(input);
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writer of the blocks of a snapshot.
+     */
+    private final class RecordingReader implements JSONReader {
+        private final JSONReader source;
+        private final File temp;
+        private DataOutputStream output = null;
+        private final Map<String, Integer> keys = new HashMap<>();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<JSONObject> block = new ArrayList<>(BLOCK_SIZE);
+        private long count = 0;
+        private boolean stopped = false;
+
+        RecordingReader(JSONReader source) {
+            this.source = source;
+            this.temp = new File(snapshot.getPath() + ".tmp");
+        }
+
+        @Override
+        public Object readObject() throws IOException, ParseException {
+            Object object = source.readObject();
+            if (stopped) {
+                return object;
+            }
+            try {
+                if (object == null) {
+                    finish();
+                }
+                else if (object instanceof JSONObject) {
+                    add((JSONObject)object);
+                }
+                else {
+                    abandon(null);
+                }
+            }
+            catch (IOException ex) {
+                abandon(ex);
+            }
+            return object;
+        }
+
+        private void add(JSONObject object) throws IOException {
+            if (output == null) {
+                output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                writeHeader(output);
+            }
+            block.add(object);
+            count++;
+            if (block.size() >= BLOCK_SIZE) {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            Map<String, Boolean> columns = new LinkedHashMap<>();
+            for (JSONObject object : block) {
+                for (Object key : object.keySet()) {
+                    columns.put((String)key, Boolean.TRUE);
+                }
+            }
+            writeVarint(output, block.size());
+            writeVarint(output, columns.size());
+            for (String key : columns.keySet()) {
+                writeKey(key);
+                for (JSONObject object : block) {
+                    if (object.containsKey(key)) {
+                        writeValue(object.get(key));
+                    }
+                    else {
+                        output.writeByte(ABSENT);
+                    }
+                }
+            }
+            block.clear();
+        }
+
+        private void writeKey(String key) throws IOException {
+            Integer id = keys.get(key);
+            if (id == null) {
+                writeVarint(output, keys.size());
+                writeString(output, key);
+                keys.put(key, keys.size());
+            }
+            else {
+                writeVarint(output, id);
+            }
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                output.writeByte(NULL);
+            }
+            else if (value instanceof Boolean) {
+                output.writeByte((Boolean)value ? TRUE : FALSE);
+            }
+            else if (value instanceof Long || value instanceof Integer) {
+                long number = ((Number)value).longValue();
+                output.writeByte(LONG);
+                writeVarint(output, (number << 1) ^ (number >> 63));
+            }
+            else if (value instanceof Number) {
+                output.writeByte(DOUBLE);
+                output.writeDouble(((Number)value).doubleValue());
+            }
+            else if (value instanceof String) {
+                writeStringValue((String)value);
+            }
+            else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>)value;
+                output.writeByte(OBJECT);
+                writeVarint(output, map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeKey(String.valueOf(entry.getKey()));
+                    writeValue(entry.getValue());
+                }
+            }
+            else if (value instanceof List) {
+                List<?> list = (List<?>)value;
+                output.writeByte(ARRAY);
+                writeVarint(output, list.size());
+                for (Object item : list) {
+                    writeValue(item);
+                }
+            }
+            else {
+                throw new IOException("Cannot write value of type " + value.getClass().getName() + " to snapshot");
+            }
+        }
+
+        private void writeStringValue(String value) throws IOException {
+            Integer id = value.length() <= MAX_SHORT_STRING ? strings.get(value) : null;
+            if (id != null) {
+                output.writeByte(STRING_REF);
+                writeVarint(output, id);
+                return;
+            }
+            output.writeByte(STRING);
+            writeString(output, value);
+            if (value.length() <= MAX_SHORT_STRING && strings.size() < MAX_DICTIONARY) {
+                strings.put(value, strings.size());
+            }
+        }
+
+        private void finish() throws IOException {
+            if (output == null) {
+                // Empty files are cheap to parse again
+                stopped = true;
+                return;
+            }
+            if (!block.isEmpty()) {
+                writeBlock();
+            }
+            writeVarint(output, 0);
+            writeVarint(output, count);
+            output.close();
+            output = null;
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stopped = true;
+            LOGGER.log(Level.FINE, "Wrote snapshot of {0} objects from {1} to {2}", new Object[]{count, file, snapshot});
+        }
+
+        private void abandon(IOException ex) {
+            if (ex != null) {
+                LOGGER.log(Level.WARNING, "Cannot write snapshot of {0}: {1}", new Object[]{file, ex.getMessage()});
+            }
+            stopped = true;
+            block.clear();
+            if (output != null) {
+                try {
+                    output.close();
+                }
+                catch (IOException closeEx) {
+                    LOGGER.log(Level.FINE, "Cannot close snapshot", closeEx);
+                }
+                output = null;
+            }
+            temp.delete();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (output != null) {
+                abandon(null);
+            }
+            source.close();
+        }
+    }
+
+    /**
+     * Reader of the objects in the blocks of a snapshot.
+     */
+    private final class SnapshotReader implements JSONReader {
+        private final DataInputStream input;
+        private final StringPool pool;
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+        private JSONObject[] block = new JSONObject[0];
+        private int position = 0;
+        private long count = 0;
+        private boolean done = false;
+
+        SnapshotReader(StringPool pool) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+            this.pool = pool;
+            try {
+                if (!readHeader(input)) {
+                    throw new IOException("Snapshot " + snapshot + " does not match " + file);
+                }
+            }
+            catch (IOException ex) {
+                input.close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public Object readObject() throws IOException, ParseException {
+            while (position >= block.length) {
+                if (done) {
+                    return null;
+                }
+                try {
+                    readBlock();
+                }
+                catch (EOFException ex) {
+                    discard();
+                    throw new EOFException("Snapshot " + snapshot + " is truncated");
+                }
+                catch (IOException | RuntimeException ex) {
+                    discard();
+                    throw ex;
+                }
+            }
+            JSONObject object = block[position];
+            block[position++] = null;
+            return object;
+        }
+
+        private void discard() {
+            // Do not use the broken snapshot again
+            done = true;
+            snapshot.delete();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readBlock() throws IOException {
+            int rows = (int)readVarint(input);
+            if (rows == 0) {
+                long expected = readVarint(input);
+                if (expected != count) {
+                    throw new IOException("Snapshot " + snapshot + " has " + count + " objects instead of " + expected);
+                }
+                done = true;
+                block = new JSONObject[0];
+                position = 0;
+                return;
+            }
+            block = new JSONObject[rows];
+            for (int i = 0; i < rows; i++) {
+                block[i] = new JSONObject();
+            }
+            int columns = (int)readVarint(input);
+            for (int c = 0; c < columns; c++) {
+                String key = readKey();
+                boolean pooled = pool != null && pool.isPooled(key);
+                for (int i = 0; i < rows; i++) {
+                    int tag = input.readUnsignedByte();
+                    if (tag != ABSENT) {
+                        Object value = readValue(tag);
+                        if (pooled && value instanceof String) {
+                            value = pool.intern((String)value);
+                        }
+                        block[i].put(key, value);
+                    }
+                }
+            }
+            position = 0;
+            count += rows;
+        }
+
+        private String readKey() throws IOException {
+            int id = (int)readVarint(input);
+            if (id == keys.size()) {
+                keys.add(readString(input));
+            }
+            else if (id > keys.size()) {
+                throw new IOException("Invalid field reference in snapshot " + snapshot);
+            }
+            return keys.get(id);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object readValue(int tag) throws IOException {
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case LONG:
+                    long number = readVarint(input);
+                    return (number >>> 1) ^ -(number & 1);
+                case DOUBLE:
+                    return input.readDouble();
+                case STRING:
+                    String value = readString(input);
+                    if (value.length() <= MAX_SHORT_STRING && strings.size() < MAX_DICTIONARY) {
+                        strings.add(value);
+                    }
+                    return value;
+                case STRING_REF:
+                    int id = (int)readVarint(input);
+                    if (id >= strings.size()) {
+                        throw new IOException("Invalid string reference in snapshot " + snapshot);
+                    }
+                    return strings.get(id);
+                case OBJECT:
+                    int size = (int)readVarint(input);
+                    JSONObject object = new JSONObject();
+                    for (int i = 0; i < size; i++) {
+                        String key = readKey();
+                        object.put(key, readValue(input.readUnsignedByte()));
+                    }
+                    return object;
+                case ARRAY:
+                    int length = (int)readVarint(input);
+                    JSONArray array = new JSONArray();
+                    for (int i = 0; i < length; i++) {
+                        array.add(readValue(input.readUnsignedByte()));
+                    }
+                    return array;
+                default:
+                    throw new IOException("Invalid value type " + tag + " in snapshot " + snapshot);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
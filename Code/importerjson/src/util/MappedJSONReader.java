@@ -0,0 +1,343 @@
+/**
+ * Parallel reader of memory-mapped JSON export files.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A reader that emits JSON objects from a memory-mapped JSON export file,
+ * which is split into ranges that are parsed in parallel by worker threads.
+ * 
+ * The file is split at line boundaries of the layout that the data gatherer
+ * uses for its exports: an array with one object per line, where each object
+ * line starts at the same indentation and all but the last line end with
+ * "},". Files with another layout are parsed by a single worker, since no
+ * boundaries are found in them.
+ * 
+ * The parsed objects of each range are placed in a bounded queue, so memory
+ * use does not depend on the size of the file. The reader either emits the
+ * objects in the order of the file, or as soon as any worker has parsed them.
+ * @author Leon Helwerda
+ */
+public class MappedJSONReader implements JSONReader {
+    private static final int QUEUE_SIZE = 1024;
+    private static final int BUFFER_SIZE = 65536;
+    private static final int WINDOW_SIZE = 65536;
+    private static final int LOOKBACK = 64;
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 1024 * 1024 * 1024;
+    private static final Object END = new Object();
+
+    private static final class Failure {
+        private final Exception exception;
+
+        Failure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+
+    private final File path;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final boolean ordered;
+    private final StringPool pool;
+    private final ExecutorService executor;
+    private final List<BlockingQueue<Object>> queues = new ArrayList<>();
+    private int chunks = 0;
+    private int finished = 0;
+
+    /**
+     * Create a reader for a JSON export file and start parsing it.
+     * @param path The path to the file
+     * @param threads The number of worker threads that parse the file
+     * @param ordered Whether to emit the objects in the order of the file
+     * @throws IOException If the file cannot be opened or read
+     */
+    public MappedJSONReader(File path, int threads, boolean ordered) throws IOException {
+        this(path, threads, ordered, null);
+    }
+
+    /**
+     * Create a reader for a JSON export file and start parsing it, with a pool
+     * for the string values of certain fields that the workers share.
+     * @param path The path to the file
+     * @param threads The number of worker threads that parse the file
+     * @param ordered Whether to emit the objects in the order of the file
+     * @param pool The string pool, or null to create new strings for all values
+     * @throws IOException If the file cannot be opened or read
+     */
+    public MappedJSONReader(File path, int threads, boolean ordered, StringPool pool) throws IOException {
+        this.path = path;
+        this.pool = pool;
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = file.getChannel();
+        this.ordered = ordered;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "json-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            start(Math.max(1, threads));
+        }
+        catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    private void start(int threads) throws IOException {
+        long size = channel.size();
+        byte[] window = new byte[WINDOW_SIZE];
+        int length = read(window, 0);
+
+        // Find the opening of the array and the indentation of its objects,
+        // or the first object of a sequence without array delimiters
+        int open = 0;
+        while (open < length && isWhitespace(window[open])) {
+            open++;
+        }
+        boolean sequence = open < length && window[open] == '{';
+        if (open >= length || (window[open] != '[' && !sequence)) {
+            submit(0, size, false);
+            return;
+        }
+        int indent = sequence ? 0 : -1;
+        for (int i = open + 1; i < length && !sequence; i++) {
+            if (window[i] == '\n') {
+                indent = 0;
+            }
+            else if (indent >= 0 && (window[i] == ' ' || window[i] == '\t')) {
+                indent++;
+            }
+            else if (!isWhitespace(window[i])) {
+                if (window[i] != '{') {
+                    indent = -1;
+                }
+                break;
+            }
+        }
+
+        long first = sequence ? open : open + 1;
+        int count = (int)Math.min(Math.max(threads * 2L, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE),
+                Math.max(1, (size - first) / MIN_CHUNK_SIZE));
+        long begin = first;
+        for (int k = 1; k < count && indent >= 0; k++) {
+            long target = first + (size - first) * k / count;
+            if (target <= begin) {
+                continue;
+            }
+            long boundary = findBoundary(target, size, indent, sequence, window);
+            if (boundary >= size) {
+                break;
+            }
+            submit(begin, boundary, !sequence);
+            begin = boundary;
+        }
+        submit(begin, size, !sequence);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private int read(byte[] window, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(window);
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + buffer.position());
+            if (count < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Find the start of the first object line at or after a position.
+     * @return The offset of the line, or the size of the file if there is none
+     */
+    private long findBoundary(long from, long size, int indent, boolean sequence, byte[] window) throws IOException {
+        long position = from;
+        while (position < size) {
+            long base = Math.max(position - LOOKBACK, 0);
+            int length = read(window, base);
+            for (int i = (int)(position - base); i < length; i++) {
+                if (window[i] == '\n' && isBoundary(window, i, length, indent, sequence)) {
+                    return base + i + 1;
+                }
+            }
+            if (base + length >= size) {
+                break;
+            }
+            position = Math.max(position + 1, base + length - indent - 2);
+        }
+        return size;
+    }
+
+    private static boolean isBoundary(byte[] window, int newline, int length, int indent, boolean sequence) {
+        int start = newline + 1;
+        if (start + indent >= length || window[start + indent] != '{') {
+            return false;
+        }
+        for (int i = start; i < start + indent; i++) {
+            if (window[i] != ' ' && window[i] != '\t') {
+                return false;
+            }
+        }
+        int end = newline - 1;
+        while (end >= 0 && (window[end] == '\r' || window[end] == ' ' || window[end] == '\t')) {
+            end--;
+        }
+        if (sequence) {
+            return end >= 0 && window[end] == '}';
+        }
+        return end >= 1 && window[end] == ',' && window[end - 1] == '}';
+    }
+
+    private void submit(long start, long end, boolean fragment) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Cannot map range of " + (end - start) + " bytes of " + path);
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        BlockingQueue<Object> queue;
+        if (ordered || queues.isEmpty()) {
+            queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+            queues.add(queue);
+        }
+        else {
+            queue = queues.get(0);
+        }
+        chunks++;
+        executor.execute(() -> parse(buffer, queue, fragment));
+    }
+
+    private void parse(ByteBuffer buffer, BlockingQueue<Object> queue, boolean fragment) {
+        Object result = END;
+        try (BufferedJSONReader reader = new BufferedJSONReader(newReader(buffer), BUFFER_SIZE, fragment)) {
+            reader.setStringPool(pool);
+            Object object;
+            while ((object = reader.readObject()) != null) {
+                queue.put(object);
+            }
+        }
+        catch (InterruptedException ex) {
+            return;
+        }
+        catch (IOException | ParseException | RuntimeException ex) {
+            result = new Failure(ex);
+        }
+        try {
+            queue.put(result);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Reader newReader(ByteBuffer buffer) {
+        ReadableByteChannel source = new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer target) {
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(target.remaining(), buffer.remaining());
+                target.put(buffer.slice(buffer.position(), count));
+                buffer.position(buffer.position() + count);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new InputStreamReader(Channels.newInputStream(source), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieve the number of ranges that the file is split into.
+     * @return The number of ranges
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    @Override
+    public Object readObject() throws IOException, ParseException {
+        while (finished < chunks) {
+            BlockingQueue<Object> queue = queues.get(ordered ? finished : 0);
+            Object item;
+            try {
+                item = queue.take();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + path);
+            }
+            if (item == END) {
+                finished++;
+            }
+            else if (item instanceof Failure) {
+                finished = chunks;
+                Exception ex = ((Failure)item).exception;
+                if (ex instanceof ParseException) {
+                    throw (ParseException)ex;
+                }
+                if (ex instanceof IOException) {
+                    throw (IOException)ex;
+                }
+                throw (RuntimeException)ex;
+            }
+            else {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        finished = chunks;
+        file.close();
+    }
+}
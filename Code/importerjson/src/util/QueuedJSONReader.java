@@ -0,0 +1,198 @@
+/**
+ * Reader of JSON export files on a separate thread.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A reader that reads and decodes the objects of another JSON reader on
+ * a producer thread, and hands them to the importer through a bounded queue.
+ * This allows the file input, the parsing and the database access of an
+ * import to overlap, without letting the producer run too far ahead.
+ * 
+ * The producer thread is started by the first read. It then either reads
+ * JSON objects or typed records of the specification of the first record,
+ * and the reader may not be used for the other kind afterward. Exceptions of
+ * the source reader are thrown from the read method that reaches them.
+ * @author Leon Helwerda
+ */
+public class QueuedJSONReader implements JSONReader {
+    /**
+     * Default number of objects that the producer thread may read ahead.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+    private static final Object END = new Object();
+
+    private static final class Failure {
+        private final Exception exception;
+
+        Failure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+
+    private final JSONReader source;
+    private final BlockingQueue<Object> queue;
+    private Thread thread = null;
+    private RecordSpec spec = null;
+    private boolean done = false;
+
+    /**
+     * Create a reader that reads ahead with the default queue size.
+     * @param source The reader to read the objects from
+     */
+    public QueuedJSONReader(JSONReader source) {
+        this(source, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Create a reader that reads ahead.
+     * @param source The reader to read the objects from
+     * @param size The maximum number of objects to keep in the queue
+     */
+    public QueuedJSONReader(JSONReader source, int size) {
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, size));
+    }
+
+    private void start(RecordSpec recordSpec) {
+        if (thread != null) {
+            if (spec != recordSpec) {
+                throw new IllegalStateException("Reader is already used for " +
+                        (spec == null ? "JSON objects" : "records of another specification"));
+            }
+            return;
+        }
+        spec = recordSpec;
+        thread = new Thread(this::produce, "json-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void produce() {
+        Object result = END;
+        try {
+            if (spec == null) {
+                Object object;
+                while ((object = source.readObject()) != null) {
+                    queue.put(object);
+                }
+            }
+            else {
+                ExportRecord record = new ExportRecord(spec);
+                while (source.readRecord(record)) {
+                    queue.put(record);
+                    record = new ExportRecord(spec);
+                }
+            }
+        }
+        catch (InterruptedException | InterruptedIOException ex) {
+            return;
+        }
+        catch (IOException | ParseException | RuntimeException ex) {
+            result = new Failure(ex);
+        }
+        try {
+            queue.put(result);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Object take() throws IOException, ParseException {
+        if (done) {
+            return null;
+        }
+        Object item;
+        try {
+            item = queue.take();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading JSON objects");
+        }
+        if (item == END) {
+            done = true;
+            return null;
+        }
+        if (item instanceof Failure) {
+            done = true;
+            Exception ex = ((Failure)item).exception;
+            if (ex instanceof ParseException) {
+                throw (ParseException)ex;
+            }
+            if (ex instanceof IOException) {
+                throw (IOException)ex;
+            }
+            throw (RuntimeException)ex;
+        }
+        return item;
+    }
+
+    @Override
+    public Object readObject() throws IOException, ParseException {
+        start(null);
+        return take();
+    }
+
+    /**
+     * Read the next JSON object into a typed record. The producer thread
+     * decodes the objects into records of the specification of the record.
+     * @param record The record to fill, which is cleared first
+     * @return Whether an object was read, or false if there are no more objects
+     * @throws IOException If an I/O error occurs or the file ends before
+     * a JSON object could be read completely.
+     * @throws ParseException If a JSON parse error occurs or the next value
+     * is not an object.
+     * @throws IllegalStateException If the reader was used to read JSON
+     * objects or records of another specification before
+     */
+    @Override
+    public boolean readRecord(ExportRecord record) throws IOException, ParseException {
+        start(record.getSpec());
+        ExportRecord next = (ExportRecord)take();
+        if (next == null) {
+            return false;
+        }
+        record.copy(next);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        done = true;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        queue.clear();
+        source.close();
+    }
+}
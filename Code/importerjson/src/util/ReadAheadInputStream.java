@@ -0,0 +1,167 @@
+/**
+ * Input stream that reads ahead on a separate thread.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream that reads blocks from another stream on a separate thread,
+ * such that expensive reads, such as those that decompress the data, overlap
+ * with the processing of the data by the consumer. A bounded number of blocks
+ * is kept ahead of the consumer. Exceptions of the reading thread are thrown
+ * from the read methods of this stream.
+ * @author Leon Helwerda
+ */
+public class ReadAheadInputStream extends InputStream {
+    private static final int BLOCK_SIZE = 65536;
+    private static final int QUEUE_SIZE = 16;
+    private static final byte[] END = new byte[0];
+
+    private final InputStream input;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread thread;
+    private volatile IOException failure = null;
+    private byte[] block = null;
+    private int position = 0;
+    private boolean done = false;
+
+    /**
+     * Create an input stream that reads ahead with the default block size
+     * and number of blocks.
+     * @param input The stream to read from
+     * @param name The name of the reading thread
+     */
+    public ReadAheadInputStream(InputStream input, String name) {
+        this(input, name, BLOCK_SIZE, QUEUE_SIZE);
+    }
+
+    /**
+     * Create an input stream that reads ahead.
+     * @param input The stream to read from
+     * @param name The name of the reading thread
+     * @param blockSize The maximum number of bytes to read at once
+     * @param blocks The number of blocks to read ahead
+     */
+    public ReadAheadInputStream(InputStream input, String name, int blockSize, int blocks) {
+        this.input = input;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, blocks));
+        this.thread = new Thread(() -> fill(Math.max(1, blockSize)), name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void fill(int blockSize) {
+        try {
+            byte[] buffer = new byte[blockSize];
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                if (count > 0) {
+                    queue.put(Arrays.copyOf(buffer, count));
+                }
+            }
+        }
+        catch (IOException ex) {
+            failure = ex;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            queue.put(END);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean next() throws IOException {
+        if (done) {
+            return false;
+        }
+        if (block != null && position < block.length) {
+            return true;
+        }
+        try {
+            block = queue.take();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading ahead");
+        }
+        position = 0;
+        if (block == END) {
+            done = true;
+            if (failure != null) {
+                throw new IOException(failure.getMessage(), failure);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!next()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!next()) {
+            return -1;
+        }
+        int count = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return block == null || done ? 0 : block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            done = true;
+            queue.clear();
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Declarative specification of typed export records.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A specification of the fields of the objects in a JSON export file, which
+ * are decoded into typed records rather than maps of strings. Each field has
+ * a type to which the JSON value is converted while the file is read, so that
+ * importers obtain integers, timestamps and dates without parsing strings.
+ * 
+ * Specifications are declared once per export file, for example:
+ * <pre>
+ * private static final RecordSpec SPEC = new RecordSpec();
+ * private static final RecordSpec.Field CREATED = SPEC.add("created", RecordSpec.Type.TIMESTAMP, true);
+ * </pre>
+ * Fields of the JSON objects that are not in the specification are skipped.
+ * @author Leon Helwerda
+ */
+public final class RecordSpec {
+    /**
+     * The type to convert the value of a field to.
+     */
+    public enum Type {
+        /** A string value. */
+        STRING,
+        /** An integer, possibly encoded as a string. */
+        INTEGER,
+        /** A floating point number, possibly encoded as a string. */
+        DOUBLE,
+        /** A single-precision floating point number, possibly encoded as a string. */
+        FLOAT,
+        /** A timestamp in the "yyyy-mm-dd hh:mm:ss" format. */
+        TIMESTAMP,
+        /** A date in the "yyyy-mm-dd" format. */
+        DATE,
+        /** A flag where "1" is true, "-1" is false and "0" is missing. */
+        FLAG
+    }
+
+    /**
+     * A field of the records.
+     */
+    public static final class Field {
+        private final String name;
+        private final Type type;
+        private final boolean zeroIsNull;
+        private final int slot;
+
+        private Field(String name, Type type, boolean zeroIsNull, int slot) {
+            this.name = name;
+            this.type = type;
+            this.zeroIsNull = zeroIsNull;
+            this.slot = slot;
+        }
+
+        /**
+         * Retrieve the name of the field in the JSON objects.
+         * @return The field name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Retrieve the type of the field.
+         * @return The type
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Check whether a value of "0" denotes a missing value of the field.
+         * @return Whether zeroes are converted to null values
+         */
+        public boolean isZeroNull() {
+            return zeroIsNull;
+        }
+
+        int getSlot() {
+            return slot;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + type + ")";
+        }
+    }
+
+    private final Map<String, Field> fields = new HashMap<>();
+    private final List<Field> order = new ArrayList<>();
+
+    /**
+     * Add a field to the specification.
+     * @param name The name of the field in the JSON objects
+     * @param type The type to convert the value to
+     * @return The field, which is used to retrieve its value from records
+     */
+    public Field add(String name, Type type) {
+        return add(name, type, false);
+    }
+
+    /**
+     * Add a field to the specification.
+     * @param name The name of the field in the JSON objects
+     * @param type The type to convert the value to
+     * @param zeroIsNull Whether a value of "0" denotes a missing value
+     * @return The field, which is used to retrieve its value from records
+     * @throws IllegalArgumentException If the field is already specified
+     */
+    public synchronized Field add(String name, Type type, boolean zeroIsNull) {
+        if (fields.containsKey(name)) {
+            throw new IllegalArgumentException("Field " + name + " is already specified");
+        }
+        Field field = new Field(name, type, zeroIsNull, order.size());
+        fields.put(name, field);
+        order.add(field);
+        return field;
+    }
+
+    /**
+     * Retrieve the field with a certain name.
+     * @param name The name of the field in the JSON objects
+     * @return The field, or null if it is not in the specification
+     */
+    public Field getField(String name) {
+        return fields.get(name);
+    }
+
+    /**
+     * Retrieve the fields of the specification.
+     * @return The fields in the order that they were added
+     */
+    public List<Field> getFields() {
+        return Collections.unmodifiableList(order);
+    }
+
+    /**
+     * Retrieve the number of fields in the specification.
+     * @return The number of fields
+     */
+    public int size() {
+        return order.size();
+    }
+}
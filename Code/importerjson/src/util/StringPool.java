@@ -0,0 +1,190 @@
+/**
+ * Bounded pool of repeated strings in export files.
+ * 
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded table of string values of certain fields of the objects in
+ * export files, which are often repeated, such as repository names, developer
+ * names and metric names. A JSON reader that uses the pool returns the earlier
+ * string instance for an equal value of such a field without allocating a new
+ * string, so that the objects and the key tuples of pending batches share the
+ * instances.
+ * 
+ * The table has a fixed number of slots, set with the "importer.string_pool"
+ * property, and a new value replaces the value in its slot. The pool may be
+ * shared by multiple reader threads; it then only counts approximately.
+ * @author Leon Helwerda
+ */
+public class StringPool {
+    /**
+     * Default number of slots in the table.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    /**
+     * Estimated number of bytes of a string instance and its array without
+     * the characters themselves.
+     */
+    private static final int STRING_OVERHEAD = 40;
+
+    private final Set<String> fields;
+    private final AtomicReferenceArray<String> table;
+    private final int mask;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * Create a pool for the values of fields with the configured number of
+     * slots.
+     * @param fields The names of the fields whose string values are pooled
+     */
+    public StringPool(String... fields) {
+        this(Integer.getInteger("importer.string_pool", DEFAULT_CAPACITY), fields);
+    }
+
+    /**
+     * Create a pool for the values of fields.
+     * @param capacity The number of slots, which is rounded up to a power of
+     * two, or 0 to disable the pool
+     * @param fields The names of the fields whose string values are pooled
+     */
+    public StringPool(int capacity, String... fields) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.fields = capacity <= 0 ? new HashSet<>() : new HashSet<>(Arrays.asList(fields));
+        this.table = new AtomicReferenceArray<>(capacity <= 0 ? 0 : size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Check whether the values of a field are pooled.
+     * @param field The name of the field
+     * @return Whether the string values of the field should be interned
+     */
+    public boolean isPooled(String field) {
+        return fields.contains(field);
+    }
+
+    private static int slot(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Retrieve a pooled string with the same characters as a range of
+     * a character array, or add a new string to the pool.
+     * @param chars The character array
+     * @param start The start of the range
+     * @param length The number of characters in the range
+     * @return The string
+     */
+    public String intern(char[] chars, int start, int length) {
+        if (table.length() == 0) {
+            return new String(chars, start, length);
+        }
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        lookups.increment();
+        int index = slot(hash) & mask;
+        String value = table.get(index);
+        if (value != null && value.length() == length && matches(value, chars, start)) {
+            hit(length);
+            return value;
+        }
+        value = new String(chars, start, length);
+        table.set(index, value);
+        return value;
+    }
+
+    /**
+     * Retrieve a pooled string equal to a string, or add the string to
+     * the pool.
+     * @param value The string, possibly null
+     * @return The pooled string, or null if the string is null
+     */
+    public String intern(String value) {
+        if (value == null || table.length() == 0) {
+            return value;
+        }
+        lookups.increment();
+        int index = slot(value.hashCode()) & mask;
+        String pooled = table.get(index);
+        if (value.equals(pooled)) {
+            hit(value.length());
+            return pooled;
+        }
+        table.set(index, value);
+        return value;
+    }
+
+    private static boolean matches(String value, char[] chars, int start) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void hit(int length) {
+        hits.increment();
+        savedBytes.add(STRING_OVERHEAD + length);
+    }
+
+    /**
+     * Retrieve the number of strings that were looked up in the pool.
+     * @return The number of lookups
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * Retrieve the number of strings that were found in the pool.
+     * @return The number of lookups that returned an earlier string
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieve the estimated number of bytes that were not allocated
+     * because strings were found in the pool.
+     * @return The estimated number of saved bytes
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d strings pooled, %d bytes saved",
+                getHits(), getLookups(), getSavedBytes());
+    }
+}
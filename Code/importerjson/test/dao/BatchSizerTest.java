@@ -0,0 +1,136 @@
+/**
+ * Adaptive batch sizing test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for BatchSizer methods.
+ * @author Leon Helwerda
+ */
+public class BatchSizerTest {
+    private static final long MILLIS = 1000000L;
+
+    public BatchSizerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test that the size grows when batches are fast.
+     */
+    @Test
+    public void testGrow() {
+        BatchSizer instance = new BatchSizer(1000, 10, 5000, 0, 500);
+        instance.update(1000, 0, 10 * MILLIS);
+        assertEquals(2000, instance.getSize());
+        instance.update(2000, 0, 10 * MILLIS);
+        assertEquals(4000, instance.getSize());
+        instance.update(4000, 0, 10 * MILLIS);
+        assertEquals(5000, instance.getSize());
+    }
+
+    /**
+     * Test that the size shrinks when batches are slow.
+     */
+    @Test
+    public void testShrink() {
+        BatchSizer instance = new BatchSizer(1000, 10, 5000, 0, 500);
+        instance.update(1000, 0, 750 * MILLIS);
+        assertEquals(666, instance.getSize());
+        instance.update(666, 0, 5000 * MILLIS);
+        assertTrue(instance.getSize() >= 333);
+        assertTrue(instance.getSize() < 666);
+    }
+
+    /**
+     * Test that partial batches do not change the size.
+     */
+    @Test
+    public void testPartial() {
+        BatchSizer instance = new BatchSizer(1000, 10, 5000, 0, 500);
+        instance.update(10, 0, 400 * MILLIS);
+        assertEquals(1000, instance.getSize());
+        assertEquals(1, instance.getBatches());
+        assertEquals(25.0, instance.getRowsPerSecond(), 0.001);
+    }
+
+    /**
+     * Test that the byte limit caps the size for large records.
+     */
+    @Test
+    public void testBytes() {
+        BatchSizer instance = new BatchSizer(1000, 10, 5000, 100000, 500);
+        assertTrue(instance.isFull(10, 100000));
+        assertFalse(instance.isFull(10, 99999));
+        instance.update(10, 100000, 10 * MILLIS);
+        assertEquals(10000.0, instance.getBytesPerRow(), 0.001);
+        assertEquals(10, instance.getSize());
+    }
+
+    /**
+     * Test of setSize method, of class BatchSizer.
+     */
+    @Test
+    public void testSetSize() {
+        BatchSizer instance = new BatchSizer(1000, 10, 5000, 0, 500);
+        instance.setSize(100);
+        instance.update(100, 0, 1 * MILLIS);
+        assertEquals(100, instance.getSize());
+        assertTrue(instance.isFull(100, 0));
+    }
+
+    /**
+     * Test of estimate method, of class BatchSizer.
+     */
+    @Test
+    public void testEstimate() {
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("message", "abcd");
+        map.put("size", 4);
+        assertEquals(1, BatchSizer.estimate(null));
+        assertEquals(6, BatchSizer.estimate("abcd"));
+        assertEquals(14, BatchSizer.estimate(map));
+        assertEquals(15, BatchSizer.estimate(new Object[]{map, null}));
+        assertEquals(16, BatchSizer.estimate(Arrays.asList(1, 2)));
+    }
+
+}
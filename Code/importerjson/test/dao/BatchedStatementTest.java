@@ -0,0 +1,188 @@
+/**
+ * Batched statement test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for BatchedStatement methods.
+ * @author Leon Helwerda
+ */
+public class BatchedStatementTest {
+    private static final String SQL = "insert into gros.tag(repo_id,tag_name,version_id) values (?,?,?)";
+    private static final int ROWS = 2500;
+
+    public BatchedStatementTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        System.clearProperty("importer.async_tables");
+        System.clearProperty("importer.batch_bytes");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("importer.async_tables");
+        System.clearProperty("importer.batch_bytes");
+    }
+
+    private List<List<String>> expected() {
+        List<List<String>> rows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(Arrays.asList(String.valueOf(i), "tag-" + i, null));
+        }
+        return rows;
+    }
+
+    private void fill(BatchedStatement instance) throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            PreparedStatement pstmt = instance.getPreparedStatement();
+            pstmt.setInt(1, i);
+            pstmt.setString(2, "tag-" + i);
+            pstmt.setNull(3, java.sql.Types.VARCHAR);
+            instance.batch();
+        }
+    }
+
+    /**
+     * Test that the statement writes batches synchronously by default.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testSync() throws Exception {
+        StandIn standIn = new StandIn();
+        try (BatchedStatement instance = new BatchedStatement(SQL, standIn.getConnection())) {
+            assertFalse(instance.isAsync());
+            fill(instance);
+            instance.execute();
+        }
+        assertEquals(expected(), standIn.rows);
+        assertTrue(standIn.threads.stream().allMatch(thread -> thread == Thread.currentThread()));
+    }
+
+    /**
+     * Test that the statement limits synchronous batches by the estimated
+     * size of the parameters of the records.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testSyncBytes() throws Exception {
+        System.setProperty("importer.batch_bytes", "200");
+        StandIn standIn = new StandIn();
+        try (BatchedStatement instance = new BatchedStatement(SQL, standIn.getConnection())) {
+            fill(instance);
+            instance.execute();
+            assertTrue(instance.getSizer().getBytesPerRow() > 0.0);
+        }
+        assertEquals(expected(), standIn.rows);
+        assertTrue(standIn.threads.size() >= ROWS / 20);
+    }
+
+    /**
+     * Test that the statement writes batches with a background flusher
+     * and its own connection.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testAsync() throws Exception {
+        StandIn standIn = new StandIn();
+        StandIn flushStandIn = new StandIn();
+        try (BatchedStatement instance = new BatchedStatement(SQL, standIn.getConnection())) {
+            instance.setAsync(() -> flushStandIn.getConnection());
+            assertTrue(instance.isAsync());
+            fill(instance);
+            instance.execute();
+            assertEquals(expected(), flushStandIn.rows);
+        }
+        assertTrue(standIn.rows.isEmpty());
+        assertFalse(flushStandIn.threads.isEmpty());
+        assertTrue(flushStandIn.threads.stream().noneMatch(thread -> thread == Thread.currentThread()));
+    }
+
+    /**
+     * Test that errors of the background flusher are thrown to the caller.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test(expected = SQLException.class)
+    public void testAsyncError() throws Exception {
+        StandIn standIn = new StandIn();
+        StandIn flushStandIn = new StandIn();
+        flushStandIn.failBatch = true;
+        try (BatchedStatement instance = new BatchedStatement(SQL, standIn.getConnection())) {
+            instance.setAsync(() -> flushStandIn.getConnection());
+            fill(instance);
+            instance.execute();
+        }
+    }
+
+    /**
+     * Test that the asynchronous mode is selected by property.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testAsyncSelected() throws Exception {
+        System.setProperty("importer.async_tables", "tag");
+        try (BatchedStatement instance = new BatchedStatement(SQL, new StandIn().getConnection())) {
+            assertTrue(instance.isAsync());
+            instance.setAsync(false);
+            assertFalse(instance.isAsync());
+        }
+        try (BatchedStatement instance = new BatchedStatement("update gros.commits set sprint_id = ? where version_id = ?", new StandIn().getConnection())) {
+            assertFalse(instance.isAsync());
+        }
+    }
+
+    /**
+     * Test that a filter discards records from the batch.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testFilter() throws Exception {
+        StandIn standIn = new StandIn();
+        try (BatchedStatement instance = new BatchedStatement(SQL, standIn.getConnection())) {
+            instance.setFilter(row -> (Integer)row[0] % 2 == 0);
+            fill(instance);
+            instance.execute();
+        }
+        List<List<String>> rows = expected();
+        rows.removeIf(row -> Integer.parseInt(row.get(0)) % 2 != 0);
+        assertEquals(rows, standIn.rows);
+    }
+
+}
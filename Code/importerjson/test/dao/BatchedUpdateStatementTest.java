@@ -0,0 +1,88 @@
+/**
+ * Batched update statement test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for BatchedUpdateStatement methods.
+ * @author Leon Helwerda
+ */
+public class BatchedUpdateStatementTest {
+
+    public BatchedUpdateStatementTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of parseFields method, of class BatchedUpdateStatement.
+     */
+    @Test
+    public void testParseFields() {
+        assertArrayEquals(new String[]{"key", "title", "encryption"},
+                BatchedUpdateStatement.parseFields("update gros.issue set key=?, title=?, encryption=? where issue_id=? and changelog_id=?;"));
+        assertArrayEquals(new String[]{"name"},
+                BatchedUpdateStatement.parseFields("UPDATE gros.repo SET name = ? WHERE id = ?"));
+        assertArrayEquals(new String[0],
+                BatchedUpdateStatement.parseFields("update gros.issue set changelog_id = changelog_id - 1 where issue_id = ?"));
+        assertArrayEquals(new String[0],
+                BatchedUpdateStatement.parseFields("update gros.issue set title=?"));
+    }
+
+    /**
+     * Test of isSame method, of class BatchedUpdateStatement.
+     */
+    @Test
+    public void testIsSame() {
+        assertTrue(BatchedUpdateStatement.isSame(null, null));
+        assertFalse(BatchedUpdateStatement.isSame(null, "a"));
+        assertFalse(BatchedUpdateStatement.isSame("a", null));
+        assertTrue(BatchedUpdateStatement.isSame("a", "a"));
+        assertFalse(BatchedUpdateStatement.isSame("a", "b"));
+        assertTrue(BatchedUpdateStatement.isSame(new BigDecimal("3.50"), 3.5));
+        assertTrue(BatchedUpdateStatement.isSame(42L, 42));
+        assertFalse(BatchedUpdateStatement.isSame(new BigDecimal("3.6"), 3.55));
+        assertTrue(BatchedUpdateStatement.isSame(Timestamp.valueOf("2017-01-01 10:00:00"), Timestamp.valueOf("2017-01-01 10:00:00")));
+        assertFalse(BatchedUpdateStatement.isSame(true, 1));
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Connection scope test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ConnectionScope methods, using a stand-in database
+ * connection.
+ * @author Leon Helwerda
+ */
+public class ConnectionScopeTest {
+
+    public ConnectionScopeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        System.clearProperty("importer.shared_connection");
+        System.clearProperty("importer.workers");
+        System.clearProperty("importer.pool_size");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("importer.shared_connection");
+        System.clearProperty("importer.workers");
+        System.clearProperty("importer.pool_size");
+    }
+
+    /**
+     * Test that joined scopes share the connection until the last one closes.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testOpen() throws Exception {
+        StandIn standIn = new StandIn();
+        assertNull(ConnectionScope.getCurrent());
+        try (ConnectionScope instance = ConnectionScope.open()) {
+            assertSame(instance, ConnectionScope.getCurrent());
+            Connection con = instance.getConnection(standIn::getConnection);
+            try (ConnectionScope inner = ConnectionScope.open()) {
+                assertSame(instance, inner);
+                assertSame(con, inner.getConnection(() -> null));
+            }
+            assertSame(instance, ConnectionScope.getCurrent());
+            con.close();
+            assertFalse(con.isClosed());
+            assertTrue(standIn.transactions.isEmpty());
+            assertNull(ImportTransaction.getCurrent());
+            try {
+                ImportTransaction.begin();
+                fail("Transaction should not be started within a connection scope");
+            }
+            catch (IllegalStateException ex) {
+                assertSame(instance, ConnectionScope.getCurrent());
+            }
+        }
+        assertNull(ConnectionScope.getCurrent());
+        assertEquals(Collections.singletonList("close"), standIn.transactions);
+    }
+
+    /**
+     * Test that a transaction is a scope that other parties can join.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testTransaction() throws Exception {
+        StandIn standIn = new StandIn();
+        try (ImportTransaction transaction = ImportTransaction.begin(0, 0)) {
+            try (ConnectionScope scope = ConnectionScope.open()) {
+                assertSame(transaction, scope);
+                scope.getConnection(standIn::getConnection);
+                assertFalse(standIn.autoCommit);
+            }
+            transaction.commit();
+        }
+        assertTrue(standIn.autoCommit);
+        assertEquals(Arrays.asList("commit", "close"), standIn.transactions);
+    }
+
+    /**
+     * Test that a task which holds a limited connection for its scope can
+     * check out further connections without waiting for another permit,
+     * while other threads wait until the task releases its connections.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testLimitedConnection() throws Exception {
+        StandIn standIn = new StandIn();
+        Semaphore permits = new Semaphore(1, true);
+        try (ConnectionScope scope = ConnectionScope.open()) {
+            scope.getConnection(() -> LimitedConnection.acquire(permits, standIn::getConnection));
+            assertEquals(0, permits.availablePermits());
+            try (Connection side = LimitedConnection.acquire(permits, standIn::getConnection)) {
+                assertEquals(0, permits.availablePermits());
+            }
+            assertEquals(0, permits.availablePermits());
+
+            Semaphore acquired = new Semaphore(0);
+            Thread other = new Thread(() -> {
+                try (Connection con = LimitedConnection.acquire(permits, standIn::getConnection)) {
+                    acquired.release();
+                }
+                catch (Exception ex) {
+                    fail(ex.getMessage());
+                }
+            });
+            other.start();
+            assertFalse(acquired.tryAcquire(50, TimeUnit.MILLISECONDS));
+            scope.close();
+            assertTrue(acquired.tryAcquire(5, TimeUnit.SECONDS));
+            other.join();
+        }
+        assertEquals(1, permits.availablePermits());
+    }
+
+    /**
+     * Test of getPoolSize method, of class DataSource.
+     */
+    @Test
+    public void testPoolSize() {
+        assertEquals(50, DataSource.getPoolSize());
+        System.setProperty("importer.workers", "4");
+        assertEquals(50, DataSource.getPoolSize());
+        System.setProperty("importer.workers", "16");
+        assertEquals(66, DataSource.getPoolSize());
+        System.setProperty("importer.shared_connection", "false");
+        assertEquals(50, DataSource.getPoolSize());
+        System.setProperty("importer.pool_size", "10");
+        assertEquals(10, DataSource.getPoolSize());
+    }
+
+}
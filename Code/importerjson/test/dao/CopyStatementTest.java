@@ -0,0 +1,160 @@
+/**
+ * Bulk load statement test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for CopyStatement methods, using a stand-in database connection
+ * that parses the bulk load data and records batched rows.
+ * @author Leon Helwerda
+ */
+public class CopyStatementTest {
+    private static final String SQL = "insert into gros.metric_value(metric_id,value,category,date,sprint_id,since_date,project_id) values (?,?,?,?,?,?,?);";
+    private static final Object[][] ROWS = new Object[][]{
+        {1, 0.5f, "green", Timestamp.valueOf("2017-01-01 10:00:00"), 3, null, 1},
+        {2, 12.0f, "red, \"very\" bad", Timestamp.valueOf("2017-02-01 10:00:00"), 0, Timestamp.valueOf("2017-01-31 12:34:56"), 1},
+        {3, -1.25f, "multi\nline\\text", Timestamp.valueOf("2017-03-01 10:00:00"), 4, null, 2}
+    };
+
+    public CopyStatementTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        System.clearProperty("importer.copy_tables");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("importer.copy_tables");
+    }
+
+    private List<List<String>> insert(BatchedStatement stmt, StandIn standIn) throws Exception {
+        for (Object[] row : ROWS) {
+            PreparedStatement pstmt = stmt.getPreparedStatement();
+            pstmt.setInt(1, (Integer)row[0]);
+            pstmt.setFloat(2, (Float)row[1]);
+            pstmt.setString(3, (String)row[2]);
+            pstmt.setTimestamp(4, (Timestamp)row[3]);
+            pstmt.setInt(5, (Integer)row[4]);
+            if (row[5] == null) {
+                pstmt.setNull(6, java.sql.Types.TIMESTAMP);
+            }
+            else {
+                pstmt.setTimestamp(6, (Timestamp)row[5]);
+            }
+            pstmt.setInt(7, (Integer)row[6]);
+            stmt.batch();
+        }
+        stmt.execute();
+        stmt.close();
+        return standIn.rows;
+    }
+
+    /**
+     * Test of isSelected method, of class CopyStatement.
+     */
+    @Test
+    public void testIsSelected() {
+        assertFalse(CopyStatement.isSelected("gros.metric_value"));
+        System.setProperty("importer.copy_tables", "commits, metric_value");
+        assertTrue(CopyStatement.isSelected("gros.metric_value"));
+        assertTrue(CopyStatement.isSelected("gros.commits"));
+        assertFalse(CopyStatement.isSelected("gros.change_path"));
+        System.setProperty("importer.copy_tables", "all");
+        assertTrue(CopyStatement.isSelected("gros.change_path"));
+    }
+
+    /**
+     * Test that bulk loads produce the same rows as batched inserts.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testCopy() throws Exception {
+        StandIn batchStandIn = new StandIn();
+        List<List<String>> expected = insert(new BatchedStatement(SQL, batchStandIn.getConnection()), batchStandIn);
+        assertEquals(ROWS.length, expected.size());
+
+        System.setProperty("importer.copy_tables", "metric_value");
+        StandIn copyStandIn = new StandIn();
+        CopyStatement instance = new CopyStatement(SQL, copyStandIn.getConnection());
+        assertTrue(instance.isCopy());
+        List<List<String>> result = insert(instance, copyStandIn);
+        assertEquals(1, copyStandIn.queries.size());
+        assertTrue(copyStandIn.queries.get(0).startsWith("COPY 3 RECORDS INTO gros.metric_value (metric_id,value,category,date,sprint_id,since_date,project_id) FROM STDIN"));
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Test that failing bulk loads fall back to batched inserts.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testFallback() throws Exception {
+        StandIn batchStandIn = new StandIn();
+        List<List<String>> expected = insert(new BatchedStatement(SQL, batchStandIn.getConnection()), batchStandIn);
+
+        StandIn disabledStandIn = new StandIn();
+        CopyStatement disabled = new CopyStatement(SQL, disabledStandIn.getConnection());
+        assertFalse(disabled.isCopy());
+        assertEquals(expected, insert(disabled, disabledStandIn));
+        assertTrue(disabledStandIn.queries.isEmpty());
+
+        System.setProperty("importer.copy_tables", "metric_value");
+        StandIn failStandIn = new StandIn();
+        failStandIn.failCopy = true;
+        CopyStatement instance = new CopyStatement(SQL, failStandIn.getConnection());
+        List<List<String>> result = insert(instance, failStandIn);
+        assertFalse(instance.isCopy());
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Test of formatValue method, of class CopyStatement.
+     */
+    @Test
+    public void testFormatValue() {
+        StringBuilder sb = new StringBuilder();
+        for (Object value : Arrays.asList(null, 42, 1.5f, true, "a \"b\"\\c\nd")) {
+            CopyStatement.formatValue(sb, value);
+            sb.append('|');
+        }
+        assertEquals("|42|1.5|true|\"a \\\"b\\\"\\\\c\\nd\"|", sb.toString());
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Import transaction test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ImportTransaction methods, using a stand-in database
+ * connection that records commits and rollbacks.
+ * @author Leon Helwerda
+ */
+public class ImportTransactionTest {
+
+    public ImportTransactionTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+        ImportTransaction transaction = ImportTransaction.getCurrent();
+        if (transaction != null) {
+            try {
+                transaction.close();
+            }
+            catch (Exception ex) {
+                fail(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Test that the transaction shares one connection and commits in between.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testCommit() throws Exception {
+        StandIn standIn = new StandIn();
+        try (ImportTransaction instance = ImportTransaction.begin(100, 0)) {
+            assertSame(instance, ImportTransaction.getCurrent());
+            Connection con = instance.getConnection(standIn::getConnection);
+            assertSame(con, instance.getConnection(() -> null));
+            assertFalse(standIn.autoCommit);
+            con.close();
+            assertFalse(con.isClosed());
+
+            ImportTransaction.count(60);
+            assertTrue(standIn.transactions.isEmpty());
+            ImportTransaction.count(60);
+            assertEquals(Arrays.asList("commit"), standIn.transactions);
+            ImportTransaction.count(10);
+            instance.commit();
+            assertEquals(2, instance.getCommits());
+        }
+        assertNull(ImportTransaction.getCurrent());
+        assertTrue(standIn.autoCommit);
+        assertEquals(Arrays.asList("commit", "commit", "close"), standIn.transactions);
+    }
+
+    /**
+     * Test that the transaction rolls back uncommitted rows when it is closed.
+     * @throws Exception If the stand-in connection fails
+     */
+    @Test
+    public void testRollback() throws Exception {
+        StandIn standIn = new StandIn();
+        try (ImportTransaction instance = ImportTransaction.begin(0, 0)) {
+            instance.getConnection(standIn::getConnection);
+            ImportTransaction.count(1000000);
+            assertTrue(standIn.transactions.isEmpty());
+            try {
+                ImportTransaction.begin();
+                fail("Nested transaction should not be started");
+            }
+            catch (IllegalStateException ex) {
+                assertSame(instance, ImportTransaction.getCurrent());
+            }
+        }
+        assertEquals(Arrays.asList("rollback", "close"), standIn.transactions);
+        // Without a transaction, counting rows has no effect
+        ImportTransaction.count(1);
+    }
+
+}
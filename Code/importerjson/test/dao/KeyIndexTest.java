@@ -0,0 +1,109 @@
+/**
+ * Preloaded key index test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.Types;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for KeyIndex methods.
+ * @author Leon Helwerda
+ */
+public class KeyIndexTest {
+
+    public KeyIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static final Key.Factory FACTORY = Key.forTypes(new int[]{Types.VARCHAR, Types.INTEGER});
+
+    private static Key key(String version, int repo) {
+        return FACTORY.of(new Object[]{version, repo});
+    }
+
+    private static Key key(int i) {
+        return key("abcdef" + i, i % 7);
+    }
+
+    /**
+     * Test of an exact index.
+     */
+    @Test
+    public void testExact() {
+        KeyIndex instance = new KeyIndex();
+        assertTrue(instance.isExact());
+        for (int i = 0; i < 100; i++) {
+            instance.add(key(i));
+        }
+        instance.add(key(0));
+        assertEquals(100, instance.getSize());
+        assertEquals(KeyIndex.Result.PRESENT, instance.check(key(42)));
+        assertEquals(KeyIndex.Result.PRESENT, instance.check(key("abcdef42", 0)));
+        assertEquals(KeyIndex.Result.ABSENT, instance.check(key(100)));
+        assertEquals(KeyIndex.Result.ABSENT, instance.check(key("abcdef42", 1)));
+        assertEquals(2, instance.getPresent());
+        assertEquals(2, instance.getAbsent());
+        assertEquals(0, instance.getUnknown());
+    }
+
+    /**
+     * Test of an index backed by a Bloom filter.
+     */
+    @Test
+    public void testFilter() {
+        int count = 10000;
+        KeyIndex instance = new KeyIndex(count, 0.01);
+        assertFalse(instance.isExact());
+        for (int i = 0; i < count; i++) {
+            instance.add(key(i));
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(KeyIndex.Result.UNKNOWN, instance.check(key(i)));
+        }
+        for (int i = count; i < 2 * count; i++) {
+            assertNotEquals(KeyIndex.Result.PRESENT, instance.check(key(i)));
+        }
+        assertEquals(0, instance.getPresent());
+        // Allow some leeway over the configured false positive rate
+        assertTrue(instance.getUnknown() - count < count * 0.02);
+        assertTrue(instance.getAbsent() > count * 0.98);
+    }
+
+}
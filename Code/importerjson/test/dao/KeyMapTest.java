@@ -0,0 +1,135 @@
+/**
+ * Map of key tuples test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for Key and KeyMap methods.
+ * @author Leon Helwerda
+ */
+public class KeyMapTest {
+
+    public KeyMapTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of key tuples of the specialized and generic shapes.
+     */
+    @Test
+    public void testKey() {
+        int[][] shapes = {
+            {Types.INTEGER},
+            {Types.INTEGER, Types.INTEGER},
+            {Types.INTEGER, Types.VARCHAR},
+            {Types.VARCHAR, Types.INTEGER},
+            {Types.INTEGER, Types.VARCHAR, Types.VARCHAR}
+        };
+        Object[][] values = {
+            {42},
+            {42, 7},
+            {42, "abc"},
+            {"abc", 42},
+            {42, "abc", "def"}
+        };
+        for (int i = 0; i < shapes.length; i++) {
+            Key.Factory factory = Key.forTypes(shapes[i]);
+            Key key = factory.of(values[i]);
+            Key same = factory.of(values[i].clone());
+            assertEquals(key, same);
+            assertEquals(key.hashCode(), same.hashCode());
+            assertEquals(key.longHash(), same.longHash());
+            assertEquals(values[i].length, key.size());
+            assertArrayEquals(values[i], key.toArray());
+        }
+
+        Key.Factory factory = Key.forTypes(new int[]{Types.INTEGER, Types.INTEGER});
+        assertNotEquals(factory.of(new Object[]{1, 2}), factory.of(new Object[]{2, 1}));
+    }
+
+    /**
+     * Test of adding, replacing, looking up and removing entries, compared
+     * with a HashMap.
+     */
+    @Test
+    public void testMap() {
+        Key.Factory factory = Key.forTypes(new int[]{Types.INTEGER, Types.VARCHAR});
+        KeyMap<Integer> instance = new KeyMap<>();
+        Map<Key, Integer> expected = new HashMap<>();
+        Random random = new Random(1234);
+        for (int i = 0; i < 20000; i++) {
+            Key key = factory.of(new Object[]{random.nextInt(500), "file-" + random.nextInt(20)});
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), instance.remove(key));
+            }
+            else {
+                expected.put(key, i);
+                instance.put(key, i);
+            }
+            assertEquals(expected.size(), instance.size());
+        }
+        for (Map.Entry<Key, Integer> entry : expected.entrySet()) {
+            assertTrue(instance.containsKey(entry.getKey()));
+            assertEquals(entry.getValue(), instance.get(entry.getKey()));
+        }
+
+        int count = 0;
+        for (int slot = instance.next(-1); slot >= 0; slot = instance.next(slot)) {
+            assertEquals(expected.get(instance.keyAt(slot)), instance.valueAt(slot));
+            count++;
+        }
+        assertEquals(expected.size(), count);
+
+        KeyMap<Integer> copy = new KeyMap<>(count);
+        copy.putAll(instance);
+        assertEquals(count, copy.size());
+
+        instance.clear();
+        assertTrue(instance.isEmpty());
+        assertEquals(-1, instance.next(-1));
+        assertNull(instance.get(factory.of(new Object[]{1, "file-1"})));
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Encryption salt management test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SaltDb methods.
+ * @author Leon Helwerda
+ */
+public class SaltDbTest {
+    private static final String EXPECTED = "0f9f9349f9c8863ac3096d40d8d53fd928ae51c001ab0f0680cc93b019410b66";
+
+    public SaltDbTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        SaltDb.reset();
+    }
+
+    @After
+    public void tearDown() {
+        SaltDb.reset();
+    }
+
+    /**
+     * Test of hash method, of class SaltDb.
+     * @throws Exception If the salt management object cannot be closed
+     */
+    @Test
+    public void testHash() throws Exception {
+        SaltDb.SaltPair pair = new SaltDb.SaltPair("salt", "pepper");
+        try (SaltDb instance = new SaltDb()) {
+            assertNull(instance.hash(null, pair));
+            assertEquals(EXPECTED, instance.hash("John Doe", pair));
+            // Cached result
+            assertEquals(EXPECTED, instance.hash("John Doe", pair));
+            assertNotEquals(EXPECTED, instance.hash("John Doe", new SaltDb.SaltPair("salt", "other")));
+        }
+    }
+
+    /**
+     * Test that hashes are the same when they are computed by multiple threads.
+     * @throws Exception If a thread fails
+     */
+    @Test
+    public void testHashThreads() throws Exception {
+        SaltDb.SaltPair pair = new SaltDb.SaltPair("salt", "pepper");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String value = i % 2 == 0 ? "John Doe" : "Jane Doe " + i;
+                results.add(executor.submit(() -> new SaltDb().hash(value, pair)));
+            }
+            for (int i = 0; i < results.size(); i += 2) {
+                assertEquals(EXPECTED, results.get(i).get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Unit tests for shared caches of global tables.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SharedCache methods.
+ * @author Leon Helwerda
+ */
+public class SharedCacheTest {
+    private boolean enabled;
+    
+    public SharedCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        enabled = SharedCache.isEnabled();
+    }
+
+    @After
+    public void tearDown() {
+        SharedCache.setEnabled(enabled);
+        SharedCache.clear();
+    }
+
+    /**
+     * Test that a shared cache is filled once and returned to later callers.
+     * @throws Exception If the cache cannot be filled
+     */
+    @Test
+    public void testGet() throws Exception {
+        SharedCache.setEnabled(true);
+        AtomicInteger loads = new AtomicInteger();
+        SharedCache.Loader<Map<String, Integer>> loader = () -> {
+            loads.incrementAndGet();
+            return new HashMap<>();
+        };
+        assertNull(SharedCache.peek("test"));
+        Map<String, Integer> cache = SharedCache.get("test", loader);
+        cache.put("a", 1);
+        assertSame(cache, SharedCache.get("test", loader));
+        assertSame(cache, SharedCache.peek("test"));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Test that caches are filled again after they are dropped.
+     * @throws Exception If the cache cannot be filled
+     */
+    @Test
+    public void testClear() throws Exception {
+        SharedCache.setEnabled(true);
+        Map<String, Integer> cache = SharedCache.get("test", HashMap::new);
+        SharedCache.clear();
+        assertNull(SharedCache.peek("test"));
+        assertNotSame(cache, SharedCache.get("test", HashMap::new));
+    }
+
+    /**
+     * Test that each caller fills its own cache when sharing is disabled.
+     * @throws Exception If the cache cannot be filled
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        SharedCache.setEnabled(true);
+        SharedCache.get("test", HashMap::new);
+        SharedCache.setEnabled(false);
+        assertNull(SharedCache.peek("test"));
+        Map<String, Integer> cache = SharedCache.get("test", HashMap::new);
+        assertNotSame(cache, SharedCache.get("test", HashMap::new));
+        assertNull(SharedCache.peek("test"));
+    }
+}
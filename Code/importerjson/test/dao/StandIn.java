@@ -0,0 +1,141 @@
+/**
+ * Stand-in database connection for tests.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dao;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A stand-in for a database connection that records inserted rows, either
+ * from batches of prepared statements or from parsing bulk load data.
+ * @author Leon Helwerda
+ */
+class StandIn {
+    final List<List<String>> rows = Collections.synchronizedList(new ArrayList<>());
+    final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+    volatile boolean failCopy = false;
+    volatile boolean failBatch = false;
+    volatile boolean autoCommit = true;
+    final List<String> transactions = Collections.synchronizedList(new ArrayList<>());
+    final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> params = new ArrayList<>();
+
+    Connection getConnection() {
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> prepareStatement();
+                case "createStatement" -> createStatement();
+                case "getAutoCommit" -> autoCommit;
+                case "setAutoCommit" -> {
+                    autoCommit = (Boolean)args[0];
+                    yield null;
+                }
+                case "commit", "rollback", "close" -> {
+                    transactions.add(method.getName());
+                    yield null;
+                }
+                default -> null;
+            }
+        );
+    }
+
+    private PreparedStatement prepareStatement() {
+        return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+            new Class<?>[]{PreparedStatement.class},
+            (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("set")) {
+                    int index = (Integer)args[0];
+                    while (params.size() < index) {
+                        params.add(null);
+                    }
+                    params.set(index - 1, name.equals("setNull") ? null : String.valueOf(args[1]));
+                }
+                else if (name.equals("addBatch")) {
+                    rows.add(new ArrayList<>(params));
+                    params.clear();
+                }
+                else if (name.equals("executeBatch")) {
+                    threads.add(Thread.currentThread());
+                    if (failBatch) {
+                        throw new SQLException("Batch failed");
+                    }
+                    return new int[0];
+                }
+                return null;
+            }
+        );
+    }
+
+    private Statement createStatement() {
+        return (Statement)Proxy.newProxyInstance(Statement.class.getClassLoader(),
+            new Class<?>[]{Statement.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("execute")) {
+                    if (failCopy) {
+                        throw new SQLException("COPY INTO is not supported");
+                    }
+                    copy((String)args[0]);
+                    return false;
+                }
+                return null;
+            }
+        );
+    }
+
+    private void copy(String sql) {
+        queries.add(sql);
+        String data = sql.substring(sql.indexOf(";\n") + 2);
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (quoted && c == '\\') {
+                char next = data.charAt(++i);
+                field.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next == 't' ? '\t' : next);
+            }
+            else if (c == '"') {
+                quoted = !quoted;
+                wasQuoted = true;
+            }
+            else if (!quoted && (c == ',' || c == '\n')) {
+                fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+                if (c == '\n') {
+                    rows.add(fields);
+                    fields = new ArrayList<>();
+                }
+            }
+            else {
+                field.append(c);
+            }
+        }
+    }
+}
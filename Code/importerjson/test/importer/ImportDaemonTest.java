@@ -0,0 +1,183 @@
+/**
+ * Unit tests for the import daemon.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package importer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ImportDaemon methods.
+ * @author Leon Helwerda
+ */
+public class ImportDaemonTest {
+    private File directory;
+    private Path socketPath;
+    private final List<String> imported = Collections.synchronizedList(new ArrayList<>());
+    private ImportDaemon instance;
+    private Thread thread;
+
+    public ImportDaemonTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("daemon").toFile();
+        File root = new File(directory, "export");
+        new File(root, "OLD").mkdirs();
+        socketPath = directory.toPath().resolve("importer.sock");
+        instance = new ImportDaemon(root.toPath(), 100, socketPath, project -> {
+            imported.add(project);
+            return !project.equals("BAD");
+        });
+        thread = new Thread(() -> {
+            try {
+                instance.run();
+            }
+            catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        for (int i = 0; i < 100 && !Files.exists(socketPath); i++) {
+            sleep(20);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        instance.stop();
+        thread.join(5000);
+        instance.close();
+        delete(directory);
+    }
+    
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void awaitImports(int count) {
+        for (int i = 0; i < 250 && imported.size() < count; i++) {
+            sleep(20);
+        }
+        assertEquals(count, imported.size());
+    }
+    
+    private String send(String command) throws IOException {
+        try (SocketChannel client = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            Writer writer = new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8);
+            writer.write(command + "\n");
+            writer.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+            return reader.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    /**
+     * Test that a project is imported after changes to its export directory.
+     * @throws Exception If the export cannot be written
+     */
+    @Test
+    public void testWatch() throws Exception {
+        File project = new File(directory, "export/NEW");
+        project.mkdir();
+        Files.writeString(new File(project, "data.json").toPath(), "[]");
+        awaitImports(1);
+        assertEquals("NEW", imported.get(0));
+        
+        Files.writeString(new File(directory, "export/OLD/data.json").toPath(), "[]");
+        awaitImports(2);
+        assertEquals("OLD", imported.get(1));
+    }
+
+    /**
+     * Test of control commands through the socket.
+     * @throws Exception If the control socket cannot be used
+     */
+    @Test
+    public void testControl() throws Exception {
+        assertEquals("Queued BAD", send("import BAD"));
+        awaitImports(1);
+        String status = send("status");
+        for (int i = 0; i < 250 && !status.contains("BAD: "); i++) {
+            sleep(20);
+            status = send("status");
+        }
+        assertTrue(status, status.startsWith("Idle\nQueued: \n"));
+        assertTrue(status, status.contains("BAD: finished with problems at "));
+        assertEquals("Stopping", send("stop"));
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+
+    /**
+     * Test of command method with an unknown command.
+     */
+    @Test
+    public void testUnknownCommand() {
+        assertTrue(instance.command("restart").startsWith("Unknown command"));
+        assertEquals("Usage: import PROJECT[,PROJECT]\n", instance.command("import"));
+    }
+}
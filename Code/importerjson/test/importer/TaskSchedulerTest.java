@@ -0,0 +1,205 @@
+/**
+ * Unit tests for the import task scheduler.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package importer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TaskScheduler methods.
+ * @author Leon Helwerda
+ */
+public class TaskSchedulerTest {
+    private static final List<String> ORDER = Arrays.asList("project", "issue", "issuelink", "sprint", "commit", "metric_value", "update");
+    private TaskScheduler instance;
+
+    public TaskSchedulerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("issue", Arrays.asList("project"));
+        dependencies.put("issuelink", Arrays.asList("issue"));
+        dependencies.put("sprint", Arrays.asList("project"));
+        dependencies.put("commit", Arrays.asList("sprint"));
+        dependencies.put("metric_value", Arrays.asList("sprint"));
+        dependencies.put("update", Arrays.asList(TaskScheduler.ALL));
+        instance = new TaskScheduler(ORDER, dependencies);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("importer.virtual_threads");
+    }
+
+    /**
+     * Test of resolve method, with dependencies through unselected tasks.
+     */
+    @Test
+    public void testResolve() {
+        Map<String, Set<String>> resolved = instance.resolve(Arrays.asList("update", "commit", "issuelink", "project", "unknown"));
+        assertEquals(Arrays.asList("project", "issuelink", "commit", "update"), new ArrayList<>(resolved.keySet()));
+        assertEquals(Collections.emptySet(), resolved.get("project"));
+        assertEquals(Collections.singleton("project"), resolved.get("issuelink"));
+        assertEquals(Collections.singleton("project"), resolved.get("commit"));
+        assertEquals(new HashSet<>(Arrays.asList("project", "issuelink", "commit")), resolved.get("update"));
+    }
+
+    /**
+     * Test of run method with one worker.
+     * @throws Exception If the tasks are interrupted
+     */
+    @Test
+    public void testRunSequential() throws Exception {
+        List<String> performed = new ArrayList<>();
+        instance.run(ORDER, 1, performed::add);
+        assertEquals(ORDER, performed);
+    }
+
+    /**
+     * Test of run method with multiple workers.
+     * @throws Exception If the tasks are interrupted
+     */
+    @Test
+    public void testRunConcurrent() throws Exception {
+        // Independent tasks wait for each other, which only works concurrently
+        CountDownLatch independent = new CountDownLatch(3);
+        List<String> performed = Collections.synchronizedList(new ArrayList<>());
+        instance.run(ORDER, 3, task -> {
+            if (task.equals("issue") || task.equals("commit") || task.equals("metric_value")) {
+                independent.countDown();
+                try {
+                    assertTrue(independent.await(10, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            performed.add(task);
+        });
+        assertEquals(0, independent.getCount());
+        assertEquals(ORDER.size(), performed.size());
+        for (String task : ORDER) {
+            for (String prerequisite : instance.resolve(ORDER).get(task)) {
+                assertTrue(task + " after " + prerequisite, performed.indexOf(prerequisite) < performed.indexOf(task));
+            }
+        }
+        assertEquals("update", performed.get(ORDER.size() - 1));
+    }
+
+    /**
+     * Test of run method with a task that fails.
+     * @throws Exception If the tasks are interrupted
+     */
+    @Test
+    public void testRunFailure() throws Exception {
+        List<String> performed = Collections.synchronizedList(new ArrayList<>());
+        try {
+            instance.run(ORDER, 2, task -> {
+                if (task.equals("sprint")) {
+                    throw new ImporterException("Failed");
+                }
+                performed.add(task);
+            });
+            fail("Expected exception");
+        }
+        catch (ImporterException ex) {
+            assertEquals("Failed", ex.getMessage());
+        }
+        assertFalse(performed.contains("commit"));
+        assertFalse(performed.contains("update"));
+    }
+
+    /**
+     * Test of run method on virtual threads, which still limits the number
+     * of concurrent tasks to the number of workers.
+     * @throws Exception If the tasks are interrupted
+     */
+    @Test
+    public void testRunVirtual() throws Exception {
+        System.setProperty("importer.virtual_threads", "true");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maximum = new AtomicInteger();
+        Set<Boolean> virtual = Collections.synchronizedSet(new HashSet<>());
+        List<String> performed = Collections.synchronizedList(new ArrayList<>());
+        instance.run(ORDER, 2, task -> {
+            maximum.accumulateAndGet(running.incrementAndGet(), Math::max);
+            virtual.add(Thread.currentThread().isVirtual());
+            try {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            performed.add(task);
+            running.decrementAndGet();
+        });
+        assertEquals(ORDER.size(), performed.size());
+        assertTrue(maximum.get() <= 2);
+        assertEquals(Collections.singleton(true), virtual);
+    }
+
+    /**
+     * Test that the import tasks that insert repositories from their metadata
+     * only depend on the commits, such that they may run at the same time.
+     */
+    @Test
+    public void testRepositoryTasks() {
+        Map<String, Set<String>> resolved = Importerjson.SCHEDULER.resolve(Importerjson.DEFAULT_TASKS);
+        for (String task : Arrays.asList("gitlab_repo", "github_repo", "tfs_team")) {
+            assertEquals(task, Collections.singleton("commit"), resolved.get(task));
+        }
+    }
+
+    /**
+     * Test of constructor with a dependency on a later task.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testLaterDependency() {
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("issue", Arrays.asList("commit"));
+        new TaskScheduler(ORDER, dependencies);
+    }
+
+}
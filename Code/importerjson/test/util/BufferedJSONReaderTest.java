@@ -24,7 +24,9 @@ import java.io.StringReader;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -47,12 +49,26 @@ public class BufferedJSONReaderTest {
     Object expected;
     
     @Parameters
+    @SuppressWarnings("unchecked")
     public static Collection<Object[]> data() {
         HashMap<String, Object> map1 = new HashMap<>();
         map1.put("foo", 1);
         map1.put("bar", 2);
         
         Object result1 = new JSONObject(map1);
+
+        HashMap<String, Object> map2 = new HashMap<>();
+        map2.put("foo", "a\"b\u00e9\n");
+        Object result2 = new JSONObject(map2);
+
+        HashMap<String, Object> nested = new HashMap<>();
+        nested.put("baz", -3);
+        JSONArray list = new JSONArray();
+        list.addAll(Arrays.asList(1, 2.5, true, null));
+        HashMap<String, Object> map3 = new HashMap<>();
+        map3.put("foo", list);
+        map3.put("bar", new JSONObject(nested));
+        Object result3 = new JSONObject(map3);
         return Arrays.asList(new Object[][] {
             { "", null },
             { "[]", null },
@@ -60,7 +76,16 @@ public class BufferedJSONReaderTest {
             { "[\n{\n\"foo\": 1,\n\"bar\": 2\n}\n]", result1 },
             { "\n", EOFException.class },
             { "[", EOFException.class },
-            { "[\n{\n\"foo\": 1,\n\"bar\": 2\n},\n{\"foo\": 3,\n\"bar\": 4}\n]", result1 }
+            { "[\n{\n\"foo\": 1,\n\"bar\": 2\n},\n{\"foo\": 3,\n\"bar\": 4}\n]", result1 },
+            { "[{\"foo\":1,\"bar\":2},{\"foo\":3,\"bar\":4}]", result1 },
+            { "  [\n  {\n    \"foo\": 1,\n    \"bar\": 2\n  }\n]\n", result1 },
+            { "[{\"foo\": \"a\\\"b\\u00e9\\n\"}]", result2 },
+            { "[{\"foo\": [1, 2.5, true, null], \"bar\": {\"baz\": -3}}]", result3 },
+            { "[{\"foo\" 1}]", ParseException.class },
+            { "[{\"foo\": 1", EOFException.class },
+            { "{\"foo\": 1, \"bar\": 2}\n{\"foo\": 3, \"bar\": 4}\n", result1 },
+            { "{\"foo\":1,\"bar\":2}{\"foo\":3,\"bar\":4}", result1 },
+            { "{\"foo\": 1,", EOFException.class }
         });   
     }
     
@@ -95,17 +120,33 @@ public class BufferedJSONReaderTest {
     @Test
     public void testReadObject() throws Exception {
         try (BufferedJSONReader instance = new BufferedJSONReader(new StringReader(jsonInput))) {
-            if (expected instanceof Class && Throwable.class.isAssignableFrom((Class)expected)) {
-                Class<?> expectedClass = (Class<?>)expected;
-                exception.expect(expectedClass.asSubclass(Throwable.class));
-            }
-            Object result = instance.readObject();
-            if (expected instanceof JSONObject) {
-                assertEquals(expected.toString(), result.toString());
-            }
-            else {
-                assertEquals(expected, result);
-            }
+            check(instance);
+        }
+    }
+
+    /**
+     * Test of readObject method, of class BufferedJSONReader, with a buffer
+     * that is smaller than the tokens.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadObjectSmallBuffer() throws Exception {
+        try (BufferedJSONReader instance = new BufferedJSONReader(new StringReader(jsonInput), 3)) {
+            check(instance);
+        }
+    }
+
+    private void check(BufferedJSONReader instance) throws Exception {
+        if (expected instanceof Class && Throwable.class.isAssignableFrom((Class)expected)) {
+            Class<?> expectedClass = (Class<?>)expected;
+            exception.expect(expectedClass.asSubclass(Throwable.class));
+        }
+        Object result = instance.readObject();
+        if (expected instanceof JSONObject) {
+            assertEquals(expected.toString(), result.toString());
+        }
+        else {
+            assertEquals(expected, result);
         }
     }
     
@@ -0,0 +1,166 @@
+/**
+ * Compressed export input test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ExportInput and ReadAheadInputStream methods.
+ * @author Leon Helwerda
+ */
+public class ExportInputTest {
+    private static final int COUNT = 10000;
+    private File directory;
+
+    public ExportInputTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("export").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private void writeExport(Writer writer) throws IOException {
+        writer.write("[\n");
+        for (int i = 0; i < COUNT; i++) {
+            if (i > 0) {
+                writer.write(",\n");
+            }
+            writer.write("{\"id\": " + i + ", \"name\": \"ïssue-" + i + "\"}");
+        }
+        writer.write("\n]\n");
+    }
+
+    /**
+     * Test of reading a compressed export file in place of the uncompressed file.
+     * @throws Exception If the file cannot be read
+     */
+    @Test
+    public void testCompressed() throws Exception {
+        File compressed = new File(directory, "data.json.gz");
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(compressed)), StandardCharsets.UTF_8)) {
+            writeExport(writer);
+        }
+
+        File file = new File(directory, "data.json");
+        assertEquals(compressed, ExportInput.resolve(file));
+        assertEquals("data.json.gz", ExportInput.resolveName(directory, "data.json"));
+        try (JSONReader reader = JSONReader.open(file.getPath())) {
+            for (int i = 0; i < COUNT; i++) {
+                JSONObject object = (JSONObject)reader.readObject();
+                assertEquals(Long.valueOf(i), object.get("id"));
+                assertEquals("ïssue-" + i, object.get("name"));
+            }
+            assertNull(reader.readObject());
+        }
+
+        // The uncompressed file is preferred when it exists
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writeExport(writer);
+        }
+        assertEquals(file, ExportInput.resolve(file));
+        assertEquals("data.json", ExportInput.resolveName(directory, "data.json"));
+    }
+
+    /**
+     * Test of opening an export file that does not exist.
+     * @throws Exception If the file cannot be read
+     */
+    @Test(expected = FileNotFoundException.class)
+    public void testMissing() throws Exception {
+        File file = new File(directory, "data_missing.json");
+        assertEquals("data_missing.json", ExportInput.resolveName(directory, "data_missing.json"));
+        ExportInput.open(file).close();
+    }
+
+    /**
+     * Test of reading a stream ahead in small blocks.
+     * @throws Exception If the stream cannot be read
+     */
+    @Test
+    public void testReadAhead() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 31);
+        }
+        byte[] result = new byte[data.length];
+        try (InputStream instance = new ReadAheadInputStream(new ByteArrayInputStream(data), "test", 1000, 2)) {
+            int offset = 0;
+            int count;
+            while ((count = instance.read(result, offset, Math.min(777, result.length - offset))) > 0) {
+                offset += count;
+            }
+            assertEquals(data.length, offset);
+            assertEquals(-1, instance.read());
+        }
+        assertArrayEquals(data, result);
+    }
+
+    /**
+     * Test of an exception of the stream that is read ahead.
+     * @throws Exception If the stream cannot be read
+     */
+    @Test(expected = IOException.class)
+    public void testReadAheadFailure() throws Exception {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Corrupt input");
+            }
+        };
+        try (InputStream instance = new ReadAheadInputStream(failing, "test")) {
+            instance.read();
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Typed export record test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Date;
+import java.sql.Timestamp;
+import org.json.simple.parser.ParseException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ExportRecord and RecordSpec methods.
+ * @author Leon Helwerda
+ */
+public class ExportRecordTest {
+    private static final String INPUT = "[\n" +
+        "{\"id\": \"12\", \"points\": 2.5, \"created\": \"2018-01-02 03:04:05\", \"due\": \"0\", \"flag\": \"-1\", \"name\": \"abc\", \"extra\": {\"a\": [1, 2]}},\n" +
+        "{\"id\": 13, \"points\": \"0\", \"created\": \"0\", \"due\": \"2018-02-03\", \"flag\": \"1\", \"name\": \"0\"},\n" +
+        "{}\n" +
+        "]";
+
+    private static final RecordSpec SPEC = new RecordSpec();
+    private static final RecordSpec.Field ID = SPEC.add("id", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field POINTS = SPEC.add("points", RecordSpec.Type.DOUBLE, true);
+    private static final RecordSpec.Field CREATED = SPEC.add("created", RecordSpec.Type.TIMESTAMP, true);
+    private static final RecordSpec.Field DUE = SPEC.add("due", RecordSpec.Type.DATE, true);
+    private static final RecordSpec.Field FLAG = SPEC.add("flag", RecordSpec.Type.FLAG);
+    private static final RecordSpec.Field NAME = SPEC.add("name", RecordSpec.Type.STRING);
+
+    public ExportRecordTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private void check(JSONReader reader) throws IOException, ParseException {
+        ExportRecord record = new ExportRecord(SPEC);
+        assertTrue(reader.readRecord(record));
+        assertEquals(12, record.getInt(ID));
+        assertEquals(2.5, record.getDouble(POINTS), 0.0);
+        assertEquals(Timestamp.valueOf("2018-01-02 03:04:05"), record.getTimestamp(CREATED));
+        assertTrue(record.isNull(DUE));
+        assertFalse(record.getFlag(FLAG));
+        assertEquals("abc", record.getString(NAME));
+
+        assertTrue(reader.readRecord(record));
+        assertEquals(13, record.getInt(ID));
+        assertTrue(record.isNull(POINTS));
+        assertNull(record.getTimestamp(CREATED));
+        assertEquals(Date.valueOf("2018-02-03"), record.getDate(DUE));
+        assertTrue(record.getFlag(FLAG));
+        assertEquals("0", record.getString(NAME));
+
+        assertTrue(reader.readRecord(record));
+        for (RecordSpec.Field field : SPEC.getFields()) {
+            assertTrue(record.isNull(field));
+        }
+        assertEquals(SPEC.size(), record.estimateSize());
+
+        assertFalse(reader.readRecord(record));
+    }
+
+    /**
+     * Test of readRecord method of the tokenizer.
+     * @throws Exception If the input cannot be read
+     */
+    @Test
+    public void testReadRecord() throws Exception {
+        try (BufferedJSONReader reader = new BufferedJSONReader(new StringReader(INPUT))) {
+            check(reader);
+        }
+    }
+
+    /**
+     * Test of the readRecord method that fills records from parsed objects.
+     * @throws Exception If the input cannot be read
+     */
+    @Test
+    public void testFill() throws Exception {
+        final BufferedJSONReader parser = new BufferedJSONReader(new StringReader(INPUT));
+        JSONReader reader = new JSONReader() {
+            @Override
+            public Object readObject() throws IOException, ParseException {
+                return parser.readObject();
+            }
+
+            @Override
+            public void close() throws IOException {
+                parser.close();
+            }
+        };
+        try {
+            check(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Test of readRecord method with a value that is not an object.
+     * @throws Exception If the input cannot be read
+     */
+    @Test(expected = ParseException.class)
+    public void testReadRecordArray() throws Exception {
+        try (BufferedJSONReader reader = new BufferedJSONReader(new StringReader("[[1]]"))) {
+            reader.readRecord(new ExportRecord(SPEC));
+        }
+    }
+
+    private static void set(ExportRecord record, RecordSpec.Field field, String value) {
+        char[] chars = ("\"" + value + "\"").toCharArray();
+        record.set(field, chars, 1, value.length());
+    }
+
+    /**
+     * Test of set method with values from a character buffer.
+     */
+    @Test
+    public void testSetChars() {
+        RecordSpec spec = new RecordSpec();
+        RecordSpec.Field number = spec.add("number", RecordSpec.Type.INTEGER, true);
+        RecordSpec.Field real = spec.add("real", RecordSpec.Type.DOUBLE);
+        RecordSpec.Field single = spec.add("single", RecordSpec.Type.FLOAT);
+        RecordSpec.Field flag = spec.add("flag", RecordSpec.Type.FLAG);
+        RecordSpec.Field time = spec.add("time", RecordSpec.Type.TIMESTAMP);
+        RecordSpec.Field day = spec.add("day", RecordSpec.Type.DATE);
+        RecordSpec.Field text = spec.add("text", RecordSpec.Type.STRING);
+        ExportRecord record = new ExportRecord(spec);
+
+        String[] integers = {"7", "-123456789", "2147483647", "-2147483648", "+5"};
+        for (String value : integers) {
+            set(record, number, value);
+            assertEquals(Integer.parseInt(value), record.getInt(number));
+        }
+        set(record, number, "0");
+        assertTrue(record.isNull(number));
+
+        String[] decimals = {"0", "-0", "2.5", "85.7", "0.1", ".5", "5.", "123456.789", "3.14159265358979", "1e3", "-2.5E-3", "12345678901234567890.5"};
+        for (String value : decimals) {
+            set(record, real, value);
+            assertEquals(value, Double.doubleToRawLongBits(Double.parseDouble(value)), Double.doubleToRawLongBits(record.getDouble(real)));
+            set(record, single, value);
+            assertEquals(value, Float.floatToRawIntBits(Float.parseFloat(value)), Float.floatToRawIntBits(record.getFloat(single)));
+        }
+
+        set(record, flag, "1");
+        assertTrue(record.getFlag(flag));
+        set(record, flag, "-1");
+        assertFalse(record.getFlag(flag));
+        set(record, flag, "0");
+        assertTrue(record.isNull(flag));
+
+        String[] timestamps = {"2018-01-02 03:04:05", "2024-02-29 23:59:59", "2018-02-30 10:00:00", "2018-01-02 03:04:05.5", "2018-1-2 3:4:5"};
+        for (String value : timestamps) {
+            set(record, time, value);
+            assertEquals(value, Timestamp.valueOf(value), record.getTimestamp(time));
+        }
+
+        String[] dates = {"2018-02-03", "2018-02-31", "2018-2-3"};
+        for (String value : dates) {
+            set(record, day, value);
+            assertEquals(value, Date.valueOf(value), record.getDate(day));
+        }
+
+        set(record, text, "abc");
+        assertEquals("abc", record.getString(text));
+    }
+
+    /**
+     * Test of set method with an invalid integer in a character buffer.
+     */
+    @Test(expected = NumberFormatException.class)
+    public void testSetCharsInvalid() {
+        RecordSpec spec = new RecordSpec();
+        RecordSpec.Field number = spec.add("number", RecordSpec.Type.INTEGER);
+        set(new ExportRecord(spec), number, "12a");
+    }
+
+    /**
+     * Test of adding a field that is already specified.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateField() {
+        SPEC.add("id", RecordSpec.Type.STRING);
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Unit tests for fingerprints of export files.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for FileFingerprint methods.
+ * @author Leon Helwerda
+ */
+public class FileFingerprintTest {
+    private File directory;
+    private File file;
+
+    public FileFingerprintTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fingerprint").toFile();
+        file = new File(directory, "data.json");
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : directory.listFiles()) {
+            child.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Test that a file written again with the same contents matches.
+     * @throws Exception If the file cannot be written or read
+     */
+    @Test
+    public void testUnchanged() throws Exception {
+        Files.writeString(file.toPath(), "[{\"id\": 1}]");
+        FileFingerprint before = FileFingerprint.of(file);
+        FileFingerprint stored = new FileFingerprint(before.getSize(), before.getModified(), before.getHash());
+        Files.writeString(file.toPath(), "[{\"id\": 1}]");
+        file.setLastModified(before.getModified() + 60000);
+        FileFingerprint after = FileFingerprint.of(file);
+        assertEquals(11, after.getSize());
+        assertEquals(before.getModified() + 60000, after.getModified());
+        assertTrue(after.matches(stored));
+    }
+
+    /**
+     * Test that files with other contents do not match.
+     * @throws Exception If the file cannot be written or read
+     */
+    @Test
+    public void testChanged() throws Exception {
+        Files.writeString(file.toPath(), "[{\"id\": 1}]");
+        FileFingerprint before = FileFingerprint.of(file);
+        Files.writeString(file.toPath(), "[{\"id\": 2}]");
+        file.setLastModified(before.getModified() + 60000);
+        assertFalse(FileFingerprint.of(file).matches(before));
+        Files.writeString(file.toPath(), "[{\"id\": 10}]");
+        assertFalse(FileFingerprint.of(file).matches(before));
+    }
+
+    /**
+     * Test that the hash of a stored fingerprint is reused without reading
+     * the file if its size and modification time are unchanged.
+     * @throws Exception If the file cannot be written or read
+     */
+    @Test
+    public void testPrevious() throws Exception {
+        Files.writeString(file.toPath(), "[{\"id\": 1}]");
+        long modified = file.lastModified();
+        FileFingerprint stored = new FileFingerprint(11, modified, 12345);
+        assertSame(stored, FileFingerprint.of(file, stored));
+        file.setLastModified(modified + 60000);
+        FileFingerprint after = FileFingerprint.of(file, stored);
+        assertNotEquals(12345, after.getHash());
+        assertFalse(after.matches(stored));
+        assertEquals(after.getHash(), FileFingerprint.computeHash(file));
+    }
+
+    /**
+     * Test of fingerprints of missing files.
+     * @throws Exception If the file cannot be written or read
+     */
+    @Test
+    public void testMissing() throws Exception {
+        FileFingerprint missing = FileFingerprint.of(file);
+        assertEquals(-1, missing.getSize());
+        assertEquals(0, missing.getModified());
+        assertTrue(missing.matches(new FileFingerprint(-1, 0, 0)));
+        Files.writeString(file.toPath(), "");
+        assertFalse(FileFingerprint.of(file).matches(missing));
+    }
+}
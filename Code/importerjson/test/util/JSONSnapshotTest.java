@@ -0,0 +1,142 @@
+/**
+ * JSON snapshot test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for JSONSnapshot methods.
+ * @author Leon Helwerda
+ */
+public class JSONSnapshotTest {
+    private static final int COUNT = 10000;
+    private File directory;
+    private File file;
+
+    public JSONSnapshotTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot").toFile();
+        file = new File(directory, "data.json");
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : directory.listFiles()) {
+            child.delete();
+        }
+        directory.delete();
+    }
+
+    private String writeExport(int count) throws IOException {
+        StringBuilder text = new StringBuilder("[\n");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(",\n");
+            }
+            text.append("{\"id\": ").append(i - 5000)
+                .append(", \"name\": \"repo-").append(i % 7).append("\"")
+                .append(", \"value\": ").append(i * 0.25)
+                .append(", \"flag\": ").append(i % 2 == 0);
+            if (i % 3 == 0) {
+                text.append(", \"note\": null, \"nested\": {\"list\": [1, \"é\", {\"x\": false}]}");
+            }
+            text.append("}");
+        }
+        text.append("\n]\n");
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            writer.print(text);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Test of writing a snapshot and reading the same objects from it.
+     * @throws Exception If the file or snapshot cannot be read
+     */
+    @Test
+    public void testSnapshot() throws Exception {
+        String text = writeExport(COUNT);
+        JSONSnapshot instance = JSONSnapshot.find(file, directory);
+        assertFalse(instance.exists());
+        try (JSONReader reader = instance.record(new BufferedJSONReader(new StringReader(text)))) {
+            while (reader.readObject() != null) {
+                // Read all objects
+            }
+        }
+        assertTrue(instance.exists());
+        assertTrue(instance.getFile().length() < file.length());
+
+        try (
+            JSONReader expected = new BufferedJSONReader(new StringReader(text));
+            JSONReader actual = JSONSnapshot.find(file, directory).open(null)
+        ) {
+            Object object;
+            int count = 0;
+            while ((object = expected.readObject()) != null) {
+                assertEquals(object, actual.readObject());
+                count++;
+            }
+            assertNull(actual.readObject());
+            assertEquals(COUNT, count);
+        }
+
+        // A changed file does not use the snapshot
+        writeExport(COUNT + 1);
+        assertFalse(JSONSnapshot.find(file, directory).exists());
+    }
+
+    /**
+     * Test of reading a file partially, which does not write a snapshot.
+     * @throws Exception If the file cannot be read
+     */
+    @Test
+    public void testIncomplete() throws Exception {
+        String text = writeExport(COUNT);
+        JSONSnapshot instance = JSONSnapshot.find(file, directory);
+        try (JSONReader reader = instance.record(new BufferedJSONReader(new StringReader(text)))) {
+            assertNotNull(reader.readObject());
+        }
+        assertFalse(instance.exists());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Parallel reader of memory-mapped JSON export files test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MappedJSONReader methods.
+ * @author Leon Helwerda
+ */
+public class MappedJSONReaderTest {
+    private static final int COUNT = 30000;
+    private File file;
+
+    public MappedJSONReaderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("data_metrics", ".json");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void writeExport(boolean compact) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            writer.print(compact ? "[" : "[\n");
+            for (int i = 0; i < COUNT; i++) {
+                if (i > 0) {
+                    writer.print(compact ? "," : ",\n");
+                }
+                writer.print("{\"id\": " + i + ", \"name\": \"métric-" + i + "\", \"value\": \"" + (i * 0.5) + "\", \"date\": \"2024-01-01 00:00:00\"}");
+            }
+            writer.print(compact ? "]" : "\n]\n");
+        }
+    }
+
+    private void writeSequence() throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < COUNT; i++) {
+                writer.print("{\"id\": " + i + ", \"name\": \"métric-" + i + "\", \"value\": \"" + (i * 0.5) + "\", \"date\": \"2024-01-01 00:00:00\"}\n");
+            }
+        }
+    }
+
+    /**
+     * Test of reading objects in the order of the file.
+     * @throws Exception If the file cannot be read
+     */
+    @Test
+    public void testOrdered() throws Exception {
+        writeExport(false);
+        try (MappedJSONReader instance = new MappedJSONReader(file, 4, true)) {
+            assertTrue(instance.getChunks() > 1);
+            for (int i = 0; i < COUNT; i++) {
+                JSONObject object = (JSONObject)instance.readObject();
+                assertEquals(Long.valueOf(i), object.get("id"));
+                assertEquals("métric-" + i, object.get("name"));
+            }
+            assertNull(instance.readObject());
+        }
+    }
+
+    /**
+     * Test of reading objects in the order that the workers parse them.
+     * @throws Exception If the file cannot be read
+     */
+    @Test
+    public void testUnordered() throws Exception {
+        writeExport(false);
+        Set<Object> ids = new HashSet<>();
+        try (MappedJSONReader instance = new MappedJSONReader(file, 4, false)) {
+            Object object;
+            while ((object = instance.readObject()) != null) {
+                assertTrue(ids.add(((JSONObject)object).get("id")));
+            }
+        }
+        assertEquals(COUNT, ids.size());
+    }
+
+    /**
+     * Test of reading a file without line boundaries.
+     * @throws Exception If the file cannot be read
+     */
+    @Test
+    public void testCompact() throws Exception {
+        writeExport(true);
+        try (MappedJSONReader instance = new MappedJSONReader(file, 4, true)) {
+            assertEquals(1, instance.getChunks());
+            int count = 0;
+            while (instance.readObject() != null) {
+                count++;
+            }
+            assertEquals(COUNT, count);
+        }
+    }
+
+    /**
+     * Test of reading a newline-delimited file in the order of the file.
+     * @throws Exception If the file cannot be read
+     */
+    @Test
+    public void testSequence() throws Exception {
+        writeSequence();
+        try (MappedJSONReader instance = new MappedJSONReader(file, 4, true)) {
+            assertTrue(instance.getChunks() > 1);
+            for (int i = 0; i < COUNT; i++) {
+                JSONObject object = (JSONObject)instance.readObject();
+                assertEquals(Long.valueOf(i), object.get("id"));
+                assertEquals("métric-" + i, object.get("name"));
+            }
+            assertNull(instance.readObject());
+        }
+    }
+
+}
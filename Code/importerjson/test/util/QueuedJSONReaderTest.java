@@ -0,0 +1,150 @@
+/**
+ * Queued JSON reader test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.StringReader;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for QueuedJSONReader methods.
+ * @author Leon Helwerda
+ */
+public class QueuedJSONReaderTest {
+    private static final int COUNT = 5000;
+    private static final RecordSpec SPEC = new RecordSpec();
+    private static final RecordSpec.Field ID = SPEC.add("id", RecordSpec.Type.INTEGER);
+    private static final RecordSpec.Field NAME = SPEC.add("name", RecordSpec.Type.STRING);
+
+    public QueuedJSONReaderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static BufferedJSONReader createSource(String end) {
+        StringBuilder input = new StringBuilder("[");
+        for (int i = 0; i < COUNT; i++) {
+            if (i > 0) {
+                input.append(",\n");
+            }
+            input.append("{\"id\": \"").append(i).append("\", \"name\": \"name-").append(i).append("\"}");
+        }
+        input.append(end);
+        return new BufferedJSONReader(new StringReader(input.toString()));
+    }
+
+    /**
+     * Test of readObject method.
+     * @throws Exception If the objects cannot be read
+     */
+    @Test
+    public void testReadObject() throws Exception {
+        try (QueuedJSONReader instance = new QueuedJSONReader(createSource("]"), 16)) {
+            for (int i = 0; i < COUNT; i++) {
+                JSONObject object = (JSONObject)instance.readObject();
+                assertEquals(String.valueOf(i), object.get("id"));
+            }
+            assertNull(instance.readObject());
+            assertNull(instance.readObject());
+        }
+    }
+
+    /**
+     * Test of readRecord method.
+     * @throws Exception If the records cannot be read
+     */
+    @Test
+    public void testReadRecord() throws Exception {
+        try (QueuedJSONReader instance = new QueuedJSONReader(createSource("]"), 16)) {
+            ExportRecord record = new ExportRecord(SPEC);
+            for (int i = 0; i < COUNT; i++) {
+                assertTrue(instance.readRecord(record));
+                assertEquals(i, record.getInt(ID));
+                assertEquals("name-" + i, record.getString(NAME));
+            }
+            assertFalse(instance.readRecord(record));
+        }
+    }
+
+    /**
+     * Test of an error at the end of the source.
+     * @throws Exception If the objects cannot be read
+     */
+    @Test
+    public void testFailure() throws Exception {
+        try (QueuedJSONReader instance = new QueuedJSONReader(createSource(",}]"), 16)) {
+            for (int i = 0; i < COUNT; i++) {
+                assertNotNull(instance.readObject());
+            }
+            try {
+                instance.readObject();
+                fail("Expected a ParseException");
+            }
+            catch (ParseException ex) {
+                assertEquals(ParseException.ERROR_UNEXPECTED_CHAR, ex.getErrorType());
+            }
+        }
+    }
+
+    /**
+     * Test of reading records from a reader that was used for objects.
+     * @throws Exception If the objects cannot be read
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testMixed() throws Exception {
+        try (QueuedJSONReader instance = new QueuedJSONReader(createSource("]"))) {
+            assertNotNull(instance.readObject());
+            instance.readRecord(new ExportRecord(SPEC));
+        }
+    }
+
+    /**
+     * Test of closing the reader while the producer is waiting for space.
+     * @throws Exception If the reader cannot be closed
+     */
+    @Test
+    public void testClose() throws Exception {
+        QueuedJSONReader instance = new QueuedJSONReader(createSource("]"), 1);
+        assertNotNull(instance.readObject());
+        instance.close();
+        assertNull(instance.readObject());
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * String pool test.
+ *
+ * Copyright 2017-2020 ICTU
+ * Copyright 2017-2022 Leiden University
+ * Copyright 2017-2024 Leon Helwerda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package util;
+
+import java.io.StringReader;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StringPool methods.
+ * @author Leon Helwerda
+ */
+public class StringPoolTest {
+
+    public StringPoolTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of intern methods.
+     */
+    @Test
+    public void testIntern() {
+        StringPool instance = new StringPool(16, "name");
+        assertTrue(instance.isPooled("name"));
+        assertFalse(instance.isPooled("id"));
+
+        char[] chars = "xxrepoxx".toCharArray();
+        String first = instance.intern(chars, 2, 4);
+        assertEquals("repo", first);
+        assertSame(first, instance.intern(chars, 2, 4));
+        assertSame(first, instance.intern(new String("repo")));
+        assertNull(instance.intern(null));
+        assertEquals(3, instance.getLookups());
+        assertEquals(2, instance.getHits());
+        assertTrue(instance.getSavedBytes() >= 8);
+
+        // The pool is bounded, so values replace each other
+        for (int i = 0; i < 100; i++) {
+            instance.intern("value-" + i);
+        }
+        assertEquals(103, instance.getLookups());
+    }
+
+    /**
+     * Test of a disabled pool.
+     */
+    @Test
+    public void testDisabled() {
+        StringPool instance = new StringPool(0, "name");
+        assertFalse(instance.isPooled("name"));
+        String value = new String("repo");
+        assertSame(value, instance.intern(value));
+        assertEquals(0, instance.getLookups());
+    }
+
+    /**
+     * Test of reading objects and records with pooled field values.
+     * @throws Exception If the input cannot be read
+     */
+    @Test
+    public void testReader() throws Exception {
+        String input = "[{\"name\": \"repo\", \"id\": \"1\"}, {\"name\": \"repo\", \"id\": \"1\"}, {\"name\": \"re\\u0070o\", \"id\": \"1\"}]";
+        StringPool pool = new StringPool(16, "name");
+        try (BufferedJSONReader reader = new BufferedJSONReader(new StringReader(input))) {
+            reader.setStringPool(pool);
+            JSONObject first = (JSONObject)reader.readObject();
+            JSONObject second = (JSONObject)reader.readObject();
+            JSONObject third = (JSONObject)reader.readObject();
+            assertSame(first.get("name"), second.get("name"));
+            assertSame(first.get("name"), third.get("name"));
+            assertNotSame(first.get("id"), second.get("id"));
+        }
+        assertEquals(2, pool.getHits());
+
+        RecordSpec spec = new RecordSpec();
+        RecordSpec.Field name = spec.add("name", RecordSpec.Type.STRING);
+        try (BufferedJSONReader reader = new BufferedJSONReader(new StringReader(input))) {
+            reader.setStringPool(pool);
+            ExportRecord record = new ExportRecord(spec);
+            assertTrue(reader.readRecord(record));
+            String value = record.getString(name);
+            assertTrue(reader.readRecord(record));
+            assertSame(value, record.getString(name));
+        }
+        assertEquals(4, pool.getHits());
+    }
+
+}
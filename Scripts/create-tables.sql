@@ -582,6 +582,16 @@ CREATE TABLE "gros"."update_tracker" (
 		CONSTRAINT "pk_update_tracker_id" PRIMARY KEY ("project_id", "filename")
 );
 
+CREATE TABLE "gros"."import_fingerprint" (
+	"project_id" INTEGER NOT NULL,
+	"import_name" VARCHAR(100) NOT NULL,
+	"filename" VARCHAR(255) NOT NULL,
+	"size" BIGINT NOT NULL,
+	"update_date" TIMESTAMP NULL,
+	"hash" BIGINT NOT NULL,
+		CONSTRAINT "pk_import_fingerprint_id" PRIMARY KEY ("project_id", "import_name", "filename")
+);
+
 CREATE TABLE "gros"."sprint_features" (
     "project_id" INTEGER NOT NULL,
     "sprint_id" INTEGER NOT NULL,
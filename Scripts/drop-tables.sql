@@ -50,4 +50,5 @@ DROP TABLE "gros"."bigboat_status";
 DROP TABLE "gros"."reservation";
 DROP TABLE "gros"."seats";
 DROP TABLE "gros"."update_tracker";
+DROP TABLE "gros"."import_fingerprint";
 DROP TABLE "gros"."sprint_features";
@@ -0,0 +1,15 @@
+-- %%
+-- schema: gros
+-- table: import_fingerprint
+-- action: create
+-- %%
+
+CREATE TABLE "gros"."import_fingerprint" (
+	"project_id" INTEGER NOT NULL,
+	"import_name" VARCHAR(100) NOT NULL,
+	"filename" VARCHAR(255) NOT NULL,
+	"size" BIGINT NOT NULL,
+	"update_date" TIMESTAMP NULL,
+	"hash" BIGINT NOT NULL,
+		CONSTRAINT "pk_import_fingerprint_id" PRIMARY KEY ("project_id", "import_name", "filename")
+);